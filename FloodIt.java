@@ -1,8 +1,21 @@
 import java.awt.Color;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import javalib.impworld.*;
 import javalib.worldimages.AboveImage;
 import javalib.worldimages.BesideImage;
+import javalib.worldimages.ComputedPixelImage;
 import javalib.worldimages.EmptyImage;
 import javalib.worldimages.OutlineMode;
 import javalib.worldimages.OverlayImage;
@@ -10,11 +23,19 @@ import javalib.worldimages.Posn;
 import javalib.worldimages.RectangleImage;
 import javalib.worldimages.TextImage;
 import javalib.worldimages.WorldImage;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 import tester.Tester;
 
 // Utils class that initializes cellSize
 class Utils {
   int cellSize = 40;
+  // boards with more cells per row than this are not given Cell objects
+  int maxViewSize = 100;
+  // the most pixels the board takes on the screen in each direction
+  int maxScreenSize = 800;
 }
 
 //interface ICell that can be implemented by EmptyCell or Cell
@@ -34,14 +55,14 @@ interface ICell {
   // draws the grid of cells starting at this cell as the origin
   public WorldImage drawGrid();
 
-  // determines if the color of this cell equals the given color
-  public boolean colorEquals(Color color);
+  // determines if the color of this cell is the given palette index
+  public boolean colorEquals(int colorIndex);
 
   // floods the cells with a new color starting at this cell as the origin
-  public ArrayList<Cell> flood(Color originalColor);
+  public ArrayList<Cell> flood(int originalColor);
 
-  // flood helper - checks cells to the top, bottom, left, and right, and possibly floods
-  public void floodHelp(Color originalColor, ArrayList<Cell> list);
+  // flood helper - adds the cells connected to this one with the given color to the list
+  public void floodHelp(int originalColor, ArrayList<Cell> list);
 
   // returns the color of this cell
   public Color getColor();
@@ -75,49 +96,56 @@ class EmptyCell implements ICell {
     throw new IllegalArgumentException("Cannot get color of empty cell");
   }
 
-  public boolean colorEquals(Color color) {
+  public boolean colorEquals(int colorIndex) {
     return false;
   }
 
-  public void floodHelp(Color originalColor, ArrayList<Cell> list) {
+  public void floodHelp(int originalColor, ArrayList<Cell> list) {
     throw new IllegalArgumentException("Empty cell cannot be part of flooded area.");
   }
 
-  public ArrayList<Cell> flood(Color originalColor) {
+  public ArrayList<Cell> flood(int originalColor) {
     throw new IllegalArgumentException("Empty cell cannot be part of flooded area.");
   }
 }
 
-// Represents a single square of the game area
+// Represents a single square of the game area. The colors of a game's board live in its
+// FloodBoard; a Cell reads its color from there, for code that works with linked cells.
 class Cell implements ICell {
-  Utils utils = new Utils();
+  // shared by every cell at the edge of the board
+  static final ICell EMPTY = new EmptyCell();
   int cellSize;
   // In logical coordinates, with the origin at the top-left corner of the screen
   int x;
   int y;
-  Color color;
+  // the board holding the color of this cell, the index of this cell on it, and the
+  // palette shared by the board
+  FloodBoard grid;
+  int index;
+  Palette palette;
   // the four adjacent cells to this one
   ICell left;
   ICell top;
   ICell right;
   ICell bottom;
 
-  ArrayList<Cell> filled = new ArrayList<Cell>();
-
-  Cell(int x, int y, Color color) {
+  Cell(int x, int y, FloodBoard grid, int index, Palette palette) {
     this.cellSize = 40;
     this.x = x;
     this.y = y;
-    this.color = color;
-
-    this.left = new EmptyCell();
-    this.top = new EmptyCell();
-    this.right = new EmptyCell();
-    this.bottom = new EmptyCell();
+    this.grid = grid;
+    this.index = index;
+    this.palette = palette;
+
+    this.left = EMPTY;
+    this.top = EMPTY;
+    this.right = EMPTY;
+    this.bottom = EMPTY;
   }
 
   public WorldImage drawCell() {
-    return new RectangleImage(this.cellSize, this.cellSize, OutlineMode.SOLID, this.color);
+    return new RectangleImage(this.cellSize, this.cellSize, OutlineMode.SOLID, 
+        this.getColor());
   }
 
   public void linkBoard(ArrayList<ArrayList<Cell>> board, int col, int row) {
@@ -126,88 +154,3057 @@ class Cell implements ICell {
       this.left = board.get(col - 1).get(row);
     }
     else {
-      this.left = new EmptyCell();
+      this.left = EMPTY;
     }
     if (col != boardSize - 1) {
       this.right = board.get(col + 1).get(row);
     }
     else {
-      this.right = new EmptyCell();
+      this.right = EMPTY;
     }
     if (row != 0) {
       this.top = board.get(col).get(row - 1);
     }
     else {
-      this.top = new EmptyCell();
+      this.top = EMPTY;
     }
     if (row != boardSize - 1) {
       this.bottom = board.get(col).get(row + 1);
     }
-    else {
-      this.bottom = new EmptyCell();
+    else {
+      this.bottom = EMPTY;
+    }
+  }
+
+  public boolean cellClicked(Posn p) {
+    int halfSize = this.cellSize / 2;
+    return p.x > this.x - halfSize 
+        && p.x < this.x + halfSize 
+        && p.y > this.y - halfSize 
+        && p.y < this.y + halfSize;
+  }
+
+  public WorldImage drawGrid() {
+    return new BesideImage(this.drawColumn(), this.right.drawGrid());
+  }
+
+  public WorldImage drawColumn() {
+    return new AboveImage(this.drawCell(), this.bottom.drawColumn());
+  }
+
+  public Color getColor() {
+    return this.palette.get(this.colorIndex());
+  }
+
+  // returns the palette index of the color of this cell
+  int colorIndex() {
+    return this.grid.colorAt(this.index);
+  }
+
+  public boolean colorEquals(int other) {
+    return this.colorIndex() == other;
+  }
+
+  public ArrayList<Cell> flood(int originalColor) {
+    ArrayList<Cell> filled = new ArrayList<Cell>();
+    this.floodHelp(originalColor, filled);
+    return filled;
+  }
+
+  // adds this cell and the cells of the given color connected to it to the given list,
+  // in the order a FloodEngine reaches them on the board, without recursion. Each cell
+  // reached is found through the link from a neighbour the engine reached before it.
+  public void floodHelp(int originalColor, ArrayList<Cell> list) {
+    FloodEngine engine = new FloodEngine(grid);
+    int reached = engine.fill(index, originalColor);
+    // the cells found so far, by index
+    Cell[] found = new Cell[grid.colors.length];
+    found[index] = this;
+    list.add(this);
+    for (int i = 1; i < reached; i++) {
+      int next = engine.queue[i];
+      ICell cell;
+      if (grid.hasLeft(next) && found[next - 1] != null) {
+        cell = found[next - 1].right;
+      }
+      else if (grid.hasTop(next) && found[next - grid.size] != null) {
+        cell = found[next - grid.size].bottom;
+      }
+      else if (grid.hasRight(next) && found[next + 1] != null) {
+        cell = found[next + 1].left;
+      }
+      else {
+        cell = found[next + grid.size].top;
+      }
+      found[next] = (Cell) cell;
+      list.add(found[next]);
+    }
+  }
+}
+
+// The colors of a game, shared by the Cells and the renderer, which only keep palette
+// indices into it
+class Palette {
+  // random colors closer than this to a color already in the palette are drawn again
+  static final int MIN_DISTANCE = 64;
+  // the most times a random color is drawn before settling for the most distinct one
+  static final int MAX_TRIES = 50;
+  // the color of each palette index
+  ArrayList<Color> colors;
+
+  Palette() {
+    this.colors = new ArrayList<Color>();
+  }
+
+  Palette(ArrayList<Color> colors) {
+    this.colors = colors;
+  }
+
+  // returns the number of colors
+  int size() {
+    return colors.size();
+  }
+
+  // returns the color of the given palette index
+  Color get(int colorIndex) {
+    return colors.get(colorIndex);
+  }
+
+  // adds a random color, drawing it again while it is too close to a color already here
+  void addRandom(Random rand) {
+    Color best = null;
+    int bestDistance = -1;
+    for (int tries = 0; tries < MAX_TRIES && bestDistance < MIN_DISTANCE * MIN_DISTANCE; 
+        tries++) {
+      Color color = new Color(rand.nextInt(255), rand.nextInt(255), rand.nextInt(255));
+      int distance = this.closest(color);
+      if (distance > bestDistance) {
+        best = color;
+        bestDistance = distance;
+      }
+    }
+    colors.add(best);
+  }
+
+  // returns the squared distance in RGB space from the given color to the closest color
+  // of the palette, or Integer.MAX_VALUE if the palette is empty
+  int closest(Color color) {
+    int closest = Integer.MAX_VALUE;
+    for (Color other : colors) {
+      int red = color.getRed() - other.getRed();
+      int green = color.getGreen() - other.getGreen();
+      int blue = color.getBlue() - other.getBlue();
+      closest = Math.min(closest, red * red + green * green + blue * blue);
+    }
+    return closest;
+  }
+}
+
+// Keys for Zobrist hashing: a board, or a set of flooded regions, hashes to the XOR of
+// the keys of its parts, so changing one part updates the hash with two XORs. Keys are
+// mixed from the number of the part instead of being stored, so they cost no memory.
+class Zobrist {
+  // returns the key of the cell at the given index having the given palette index; the
+  // key of palette index 0 is 0, so that a new board hashes to 0
+  static long cellKey(int index, int colorIndex) {
+    return colorIndex == 0 ? 0 : mix(((long) index << 8) | colorIndex);
+  }
+
+  // returns the key of the given region being flooded
+  static long regionKey(int r) {
+    return mix(-1L - r);
+  }
+
+  // returns the given number scrambled by the finalizer of SplitMix64
+  static long mix(long z) {
+    z += 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
+
+// A board stored as one flat array of palette indices, one byte per cell, in rows from
+// the top left corner (index = row * size + col). Neighbours are found by offsetting the
+// index instead of following links, so a board of millions of cells takes a few MB.
+class FloodBoard {
+  // The number of cells in each row or column
+  int size;
+  // the palette index of the color of each cell
+  byte[] colors;
+  // the number of cells of each palette index
+  int[] counts;
+  // the number of palette indices that at least one cell has
+  int colorsLeft;
+  // the Zobrist hash of the colors of all the cells
+  long hash;
+
+  FloodBoard(int size) {
+    this.size = size;
+    this.colors = new byte[size * size];
+    // every cell starts with palette index 0
+    this.counts = new int[256];
+    this.counts[0] = colors.length;
+    this.colorsLeft = colors.length > 0 ? 1 : 0;
+  }
+
+  // returns the index of the cell at (col, row)
+  int index(int col, int row) {
+    return row * size + col;
+  }
+
+  // returns the palette index of the color of the cell at the given index
+  int colorAt(int index) {
+    return colors[index] & 0xFF;
+  }
+
+  // sets the palette index of the color of the cell at the given index
+  void setColor(int index, int colorIndex) {
+    int old = colors[index] & 0xFF;
+    if (old != colorIndex) {
+      colors[index] = (byte) colorIndex;
+      hash ^= Zobrist.cellKey(index, old) ^ Zobrist.cellKey(index, colorIndex);
+      if (--counts[old] == 0) {
+        colorsLeft--;
+      }
+      if (counts[colorIndex]++ == 0) {
+        colorsLeft++;
+      }
+    }
+  }
+
+  // returns a board with the same colors as this one
+  FloodBoard copy() {
+    FloodBoard copy = new FloodBoard(size);
+    System.arraycopy(colors, 0, copy.colors, 0, colors.length);
+    System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+    copy.colorsLeft = colorsLeft;
+    copy.hash = hash;
+    return copy;
+  }
+
+  // replaces the counts and hash with the given ones, after the colors were written
+  // straight into the array
+  void recount(int[] counts, long hash) {
+    Arrays.fill(this.counts, 0);
+    System.arraycopy(counts, 0, this.counts, 0, counts.length);
+    this.colorsLeft = 0;
+    for (int count : this.counts) {
+      this.colorsLeft += count > 0 ? 1 : 0;
+    }
+    this.hash = hash;
+  }
+
+  // returns the number of cells with the given palette index
+  int count(int colorIndex) {
+    return counts[colorIndex];
+  }
+
+  // determines if every cell has the given palette index
+  boolean allColored(int colorIndex) {
+    return counts[colorIndex] == colors.length;
+  }
+
+  // determines if the cell at the given index has a cell to its right
+  boolean hasRight(int index) {
+    return index % size != size - 1;
+  }
+
+  // determines if the cell at the given index has a cell below it
+  boolean hasBottom(int index) {
+    return index + size < colors.length;
+  }
+
+  // determines if the cell at the given index has a cell above it
+  boolean hasTop(int index) {
+    return index >= size;
+  }
+
+  // determines if the cell at the given index has a cell to its left
+  boolean hasLeft(int index) {
+    return index % size != 0;
+  }
+}
+
+// Makes boards from a seed, giving the color of each cell from the seed and the index
+// of the cell alone: cell i gets the (i + 1)th number of a SplittableRandom made with
+// the seed. The board is filled in bands of rows, in parallel, without allocating
+// anything per cell, and is the same whatever the number of threads.
+class BoardGenerator {
+  // the number of rows filled by one task
+  static final int BAND_ROWS = 64;
+  // the seed of the board
+  long seed;
+  // Number of colors in the game
+  int numOfColors;
+
+  BoardGenerator(long seed, int numOfColors) {
+    this.seed = seed;
+    this.numOfColors = numOfColors;
+  }
+
+  // returns the palette index of the cell at the given index
+  int colorAt(int index) {
+    long random = Zobrist.mix(seed + index * 0x9E3779B97F4A7C15L);
+    return (int) (((random >>> 32) * numOfColors) >>> 32);
+  }
+
+  // fills the colors of the given board, using every core
+  void fill(FloodBoard grid) {
+    this.fill(grid, ForkJoinPool.commonPool());
+  }
+
+  // fills the colors of the given board on the given pool
+  void fill(FloodBoard grid, ForkJoinPool pool) {
+    int bands = Math.max(1, (grid.size + BAND_ROWS - 1) / BAND_ROWS);
+    int[][] counts = new int[bands][numOfColors];
+    long[] hashes = new long[bands];
+    if (bands == 1) {
+      this.fillBand(grid, 0, counts[0], hashes);
+    }
+    else {
+      pool.invoke(new FillBandsTask(this, grid, 0, bands, counts, hashes));
+    }
+    // the bands are added up in order, so the totals never depend on the threads
+    int[] total = new int[numOfColors];
+    long hash = 0;
+    for (int band = 0; band < bands; band++) {
+      for (int c = 0; c < numOfColors; c++) {
+        total[c] += counts[band][c];
+      }
+      hash ^= hashes[band];
+    }
+    grid.recount(total, hash);
+  }
+
+  // fills the rows of the given band, counting the cells of each color into the given
+  // counts and storing the hash of the band in the given hashes
+  void fillBand(FloodBoard grid, int band, int[] counts, long[] hashes) {
+    int from = band * BAND_ROWS * grid.size;
+    int to = Math.min(grid.colors.length, from + BAND_ROWS * grid.size);
+    long hash = 0;
+    for (int index = from; index < to; index++) {
+      int colorIndex = this.colorAt(index);
+      grid.colors[index] = (byte) colorIndex;
+      counts[colorIndex]++;
+      hash ^= Zobrist.cellKey(index, colorIndex);
+    }
+    hashes[band] = hash;
+  }
+}
+
+// Fills a range of bands of a board, splitting the range in half until it is one band.
+// Never serialized, though RecursiveAction is Serializable.
+@SuppressWarnings("serial")
+class FillBandsTask extends RecursiveAction {
+  BoardGenerator generator;
+  FloodBoard grid;
+  // the first band, and one past the last band, to fill
+  int from;
+  int to;
+  // the counts and hash of each band
+  int[][] counts;
+  long[] hashes;
+
+  FillBandsTask(BoardGenerator generator, FloodBoard grid, int from, int to, int[][] counts,
+      long[] hashes) {
+    this.generator = generator;
+    this.grid = grid;
+    this.from = from;
+    this.to = to;
+    this.counts = counts;
+    this.hashes = hashes;
+  }
+
+  protected void compute() {
+    if (to - from == 1) {
+      generator.fillBand(grid, from, counts[from], hashes);
+      return;
+    }
+    int middle = from + (to - from) / 2;
+    invokeAll(new FillBandsTask(generator, grid, from, middle, counts, hashes),
+        new FillBandsTask(generator, grid, middle, to, counts, hashes));
+  }
+}
+
+// The part of the board on the screen, which can be scrolled and zoomed, and the map
+// from positions on the screen to cells, so a click is resolved without looking at every
+// cell. Zoomed in, each cell is a square of cellSize pixels; zoomed out past one pixel
+// per cell, each pixel stands for a square of blockSize cells.
+class Viewport {
+  // the sizes a cell can be zoomed to, in pixels
+  static final int[] CELL_SIZES = {1, 2, 5, 10, 20, 40, 80};
+  // the position on the board, in pixels of the zoomed board, shown at the top left
+  // corner of the screen
+  int left;
+  int top;
+  // the size of the view on the screen, in pixels
+  int width;
+  int height;
+  // the zoom level: an index into CELL_SIZES, or below 0 for blocks of 2^-zoom cells
+  int zoom;
+  // The width & height of each cell on the screen, 1 when zoomed out past that
+  int cellSize;
+  // the number of cells in each row or column of the block one pixel stands for
+  int blockSize;
+
+  Viewport(int cellSize, int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.setZoom(this.levelOf(cellSize));
+  }
+
+  // returns the zoom level with cells of the given size
+  int levelOf(int cellSize) {
+    for (int level = 0; level < CELL_SIZES.length; level++) {
+      if (CELL_SIZES[level] == cellSize) {
+        return level;
+      }
+    }
+    throw new IllegalArgumentException("No zoom level with cells of " + cellSize + " pixels");
+  }
+
+  // changes the zoom level, without moving the view
+  void setZoom(int level) {
+    this.zoom = level;
+    this.cellSize = level >= 0 ? CELL_SIZES[level] : 1;
+    this.blockSize = level >= 0 ? 1 : 1 << -level;
+  }
+
+  // returns the width & height of the given board at the current zoom, in pixels
+  int boardPixels(FloodBoard grid) {
+    return blockSize > 1 ? (grid.size + blockSize - 1) / blockSize : grid.size * cellSize;
+  }
+
+  // zooms out until the given board fits in the view, if it does not already, and
+  // scrolls to its top left corner
+  void fit(FloodBoard grid) {
+    while (this.boardPixels(grid) > Math.min(width, height)) {
+      this.setZoom(zoom - 1);
+    }
+    this.left = 0;
+    this.top = 0;
+  }
+
+  // scrolls the view by the given pixels, keeping the board on the screen
+  void pan(FloodBoard grid, int dx, int dy) {
+    this.left = Math.max(0, Math.min(this.boardPixels(grid) - width, left + dx));
+    this.top = Math.max(0, Math.min(this.boardPixels(grid) - height, top + dy));
+  }
+
+  // zooms in by the given number of levels, or out if it is negative, keeping the point
+  // of the board under the given position where it is. The view zooms in no further than
+  // the biggest cells, and out no further than the whole board fitting on the screen.
+  void zoomAt(FloodBoard grid, int levels, Posn p) {
+    // the point under p, in cells
+    double x = (p.x + left) * this.cellsPerPixel();
+    double y = (p.y + top) * this.cellsPerPixel();
+    int level = Math.min(CELL_SIZES.length - 1, zoom + levels);
+    while (level < zoom && this.boardPixels(grid) > Math.min(width, height)) {
+      this.setZoom(zoom - 1);
+    }
+    if (level >= zoom) {
+      this.setZoom(level);
+    }
+    this.left = 0;
+    this.top = 0;
+    this.pan(grid, (int) Math.round(x / this.cellsPerPixel()) - p.x,
+        (int) Math.round(y / this.cellsPerPixel()) - p.y);
+  }
+
+  // returns the number of cells, or the fraction of a cell, in one pixel
+  double cellsPerPixel() {
+    return blockSize > 1 ? blockSize : 1.0 / cellSize;
+  }
+
+  // returns the position on the screen of the middle of the cell of the given board at
+  // the given index, which may be off the view; zoomed out past a pixel per cell, the
+  // position of its block
+  Posn positionOf(FloodBoard grid, int index) {
+    int col = index % grid.size;
+    int row = index / grid.size;
+    if (blockSize > 1) {
+      return new Posn(col / blockSize - left, row / blockSize - top);
+    }
+    return new Posn(col * cellSize + cellSize / 2 - left, row * cellSize + cellSize / 2 - top);
+  }
+
+  // returns the index of the cell of the given board under the given position, or -1 if
+  // the position is off the view or the board. Cells big enough to have lines between
+  // them do not count a click on the line (like cellClicked); zoomed out past a pixel per
+  // cell, a click is on the top left cell of its block.
+  int cellAt(FloodBoard grid, Posn p) {
+    if (p.x < 0 || p.y < 0 || p.x >= width || p.y >= height) {
+      return -1;
+    }
+    int x = p.x + this.left;
+    int y = p.y + this.top;
+    int col = x * blockSize / cellSize;
+    int row = y * blockSize / cellSize;
+    if (cellSize > 2 && (x <= 0 || y <= 0 || x % cellSize == 0 || y % cellSize == 0)) {
+      return -1;
+    }
+    if (col >= grid.size || row >= grid.size) {
+      return -1;
+    }
+    return grid.index(col, row);
+  }
+}
+
+// The rules of Flood-It on their own, without a canvas or a tick loop, so that games
+// can be generated and played at full speed
+class FloodItGame {
+  // The number of cells in each row or column
+  int boardSize;
+  // Number of colors in the game
+  int numOfColors;
+  // number of turns the player has left
+  int turnsLeft;
+  // the colors of all the cells of the game, as palette indices
+  FloodBoard grid;
+  // the regions of the board, and which of them are flooded
+  RegionGraph regions;
+  // the palette index of the current color of the flood
+  int floodColorIndex;
+
+  // Constructor that generates the board from the given random, picking the colors
+  // column by column from the top left
+  FloodItGame(int boardSize, int numOfColors, Random rand) {
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+    this.turnsLeft = boardSize * numOfColors / 2;
+    this.grid = new FloodBoard(boardSize);
+    for (int col = 0; col < boardSize; col++) {
+      for (int row = 0; row < boardSize; row++) {
+        grid.setColor(grid.index(col, row), rand.nextInt(numOfColors));
+      }
+    }
+    this.floodColorIndex = grid.colorAt(0);
+    this.regions = new RegionGraph(grid, numOfColors);
+  }
+
+  // Constructor that generates the board from the given seed
+  FloodItGame(int boardSize, int numOfColors, long seed) {
+    this(boardSize, numOfColors, new Random(seed));
+  }
+
+  // Constructor that continues a game on the given board, flooded from the top left
+  FloodItGame(FloodBoard grid, int numOfColors, int turnsLeft) {
+    this.boardSize = grid.size;
+    this.numOfColors = numOfColors;
+    this.turnsLeft = turnsLeft;
+    this.grid = grid;
+    this.floodColorIndex = grid.colorAt(0);
+    this.regions = new RegionGraph(grid, numOfColors);
+  }
+
+  // Constructor that fills the board in parallel with the given generator
+  FloodItGame(int boardSize, int numOfColors, BoardGenerator generator) {
+    this(boardSize, numOfColors, generator, null);
+  }
+
+  // Constructor that fills the board in parallel with the given generator, and labels
+  // its regions by tiles on the given pool, or on this thread if it is null
+  FloodItGame(int boardSize, int numOfColors, BoardGenerator generator,
+      ForkJoinPool labelPool) {
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+    this.turnsLeft = boardSize * numOfColors / 2;
+    this.grid = new FloodBoard(boardSize);
+    generator.fill(grid);
+    this.floodColorIndex = grid.colorAt(0);
+    this.regions = new RegionGraph(grid, numOfColors, labelPool);
+  }
+
+  // determines if the given palette index is a move the player can make
+  public boolean canMove(int colorIndex) {
+    return colorIndex >= 0 && colorIndex < numOfColors 
+        && colorIndex != grid.colorAt(0) && !this.isOver();
+  }
+
+  // uses a turn to flood with the given palette index, absorbing the regions of that
+  // color next to the flood, and returns how many cells of the flood still need
+  // recoloring (the first ones in regions.regionOrder)
+  public int startMove(int colorIndex) {
+    if (!this.canMove(colorIndex)) {
+      throw new IllegalArgumentException("Cannot flood with color " + colorIndex);
+    }
+    int oldRegion = regions.regionSize;
+    this.turnsLeft--;
+    this.floodColorIndex = colorIndex;
+    this.regions.absorb(colorIndex);
+    return oldRegion;
+  }
+
+  // floods with the given palette index, recoloring the region right away
+  public void applyMove(int colorIndex) {
+    int toRecolor = this.startMove(colorIndex);
+    for (int i = 0; i < toRecolor; i++) {
+      grid.setColor(regions.regionOrder[i], colorIndex);
+    }
+  }
+
+  // takes back the move of the given delta, which must be the last move made, and
+  // returns how many cells of the flood need their old color back (the first ones in
+  // regions.regionOrder)
+  public int startUndo(MoveDelta delta) {
+    if (delta.floodedCount > regions.floodedCount || delta.colorIndex != floodColorIndex) {
+      throw new IllegalArgumentException("Can only undo the last move");
+    }
+    regions.retreat(delta.floodedCount, delta.regionSize, delta.frontierSize);
+    this.turnsLeft++;
+    this.floodColorIndex = delta.previousColorIndex;
+    return delta.regionSize;
+  }
+
+  // takes back the move of the given delta, recoloring the region right away
+  public void undoMove(MoveDelta delta) {
+    int toRecolor = this.startUndo(delta);
+    for (int i = 0; i < toRecolor; i++) {
+      grid.setColor(regions.regionOrder[i], delta.previousColorIndex);
+    }
+  }
+
+  // determines if every cell has the color of the flood
+  public boolean isWon() {
+    return grid.allColored(floodColorIndex);
+  }
+
+  // determines if the player is out of turns without having won
+  public boolean isLost() {
+    return turnsLeft <= 0 && !this.isWon();
+  }
+
+  // determines if the game has been won or lost
+  public boolean isOver() {
+    return this.isWon() || this.isLost();
+  }
+}
+
+// Keeps track of which parts of the scene are out of date, so that makeScene only
+// rebuilds what changed and reuses the last scene otherwise
+class SceneChanges {
+  // if cells of the board changed color
+  boolean board;
+  // if the turns left, the time shown, or the color of the flood changed
+  boolean hud;
+  // if the game moved to a different screen, or the scene has not been made yet
+  boolean screen;
+  // the number of frames that reused the last scene
+  int skipped;
+  // the number of frames that built a new scene
+  int rebuilt;
+
+  SceneChanges() {
+    this.screen = true;
+  }
+
+  // determines if the scene has to be built again (changes to the board are painted
+  // into the image already in the scene)
+  boolean needsRebuild() {
+    return this.hud || this.screen;
+  }
+
+  // records that the scene is up to date
+  void clear() {
+    this.board = false;
+    this.hud = false;
+    this.screen = false;
+  }
+}
+
+// Decides how many cells of a flood to recolor on each tick, so that a flood takes the
+// same time at any frame rate and never takes longer than maxDuration, however big
+class FloodAnimation {
+  // seconds spent on each cell of a small flood
+  double cellTime;
+  // the most seconds any flood takes
+  double maxDuration;
+  // seconds the current flood takes
+  double duration;
+  // seconds since the current flood started
+  double elapsed;
+  // the number of cells in the current flood
+  int total;
+  // the number of cells of the current flood recolored so far
+  int done;
+
+  FloodAnimation(double cellTime, double maxDuration) {
+    this.cellTime = cellTime;
+    this.maxDuration = maxDuration;
+  }
+
+  // starts animating a flood of the given number of cells
+  void start(int total) {
+    this.total = total;
+    this.done = 0;
+    this.elapsed = 0;
+    this.duration = Math.min(total * cellTime, maxDuration);
+  }
+
+  // moves the animation forward by the given seconds and returns how many more cells
+  // should be recolored
+  int advance(double seconds) {
+    this.elapsed += seconds;
+    int target = total;
+    // allows for rounding in the sum of the ticks
+    if (elapsed < duration - 1e-9) {
+      target = (int) (total * (elapsed / duration));
+    }
+    int batch = target - done;
+    this.done = target;
+    return batch;
+  }
+
+  // determines if every cell of the current flood has been recolored
+  boolean finished() {
+    return done == total;
+  }
+}
+
+// Paints the part of the board in a view into one image the size of the view, kept
+// between frames, so a frame costs the size of the screen and not of the board. Only
+// the cells whose color changed are repainted, unless the view moved or so many changed
+// that painting the whole view is cheaper. Zoomed out past a pixel per cell, each pixel
+// is painted with the average color of its block, kept in a BoardMipmap.
+class BoardRenderer {
+  // the board being drawn
+  FloodBoard grid;
+  // Colors used on the board
+  Palette palette;
+  // the part of the board drawn
+  Viewport view;
+  // the painted view, made on the first frame
+  ComputedPixelImage image;
+  // if every pixel has to be painted on the next frame
+  boolean repaintAll;
+  // one bit per cell, set if the cell has to be painted on the next frame
+  long[] isDirty;
+  // indices of the cells to paint on the next frame
+  int[] dirty;
+  // the number of cells to paint on the next frame
+  int dirtySize;
+  // the average colors of blocks of cells, made the first time the view is zoomed out
+  // past a pixel per cell and kept up to date from then on
+  BoardMipmap mipmap;
+  // the scroll position and zoom level of the view when it was last painted
+  int paintedLeft;
+  int paintedTop;
+  int paintedZoom;
+
+  BoardRenderer(FloodBoard grid, Palette palette, Viewport view) {
+    this.grid = grid;
+    this.palette = palette;
+    this.view = view;
+    this.repaintAll = true;
+    this.isDirty = new long[(grid.colors.length + 63) / 64];
+    this.dirty = new int[64];
+    this.dirtySize = 0;
+  }
+
+  // records that the cell at the given index changed color
+  void changed(int index) {
+    if (mipmap != null) {
+      mipmap.update(index);
+    }
+    long bit = 1L << index;
+    if (!repaintAll && (isDirty[index >> 6] & bit) == 0) {
+      isDirty[index >> 6] |= bit;
+      if (dirtySize == dirty.length) {
+        dirty = Arrays.copyOf(dirty, dirtySize * 2);
+      }
+      dirty[dirtySize++] = index;
+    }
+  }
+
+  // returns an image of the view, after painting what changed
+  WorldImage draw() {
+    if (image == null) {
+      image = new ComputedPixelImage(view.width, view.height);
+    }
+    if (view.left != paintedLeft || view.top != paintedTop || view.zoom != paintedZoom
+        || dirtySize > view.width * view.height) {
+      repaintAll = true;
+    }
+    if (view.blockSize > 1 && mipmap == null) {
+      mipmap = new BoardMipmap(grid, palette);
+    }
+    if (repaintAll) {
+      this.paintAll();
+      repaintAll = false;
+    }
+    else {
+      for (int i = 0; i < dirtySize; i++) {
+        this.paint(dirty[i]);
+      }
+    }
+    for (int i = 0; i < dirtySize; i++) {
+      isDirty[dirty[i] >> 6] = 0;
+    }
+    dirtySize = 0;
+    this.paintedLeft = view.left;
+    this.paintedTop = view.top;
+    this.paintedZoom = view.zoom;
+    return image;
+  }
+
+  // paints every pixel of the view, in white where it is past the board
+  void paintAll() {
+    for (int y = 0; y < view.height; y++) {
+      for (int x = 0; x < view.width; x++) {
+        image.setPixel(x, y, Color.white);
+      }
+    }
+    if (view.blockSize > 1) {
+      int blocks = mipmap.sizeAt(view.blockSize);
+      for (int y = 0; y < view.height && view.top + y < blocks; y++) {
+        for (int x = 0; x < view.width && view.left + x < blocks; x++) {
+          image.setPixel(x, y, mipmap.colorAt(view.blockSize, view.left + x, view.top + y));
+        }
+      }
+    }
+    else {
+      int lastCol = Math.min(grid.size - 1, (view.left + view.width - 1) / view.cellSize);
+      int lastRow = Math.min(grid.size - 1, (view.top + view.height - 1) / view.cellSize);
+      for (int row = view.top / view.cellSize; row <= lastRow; row++) {
+        for (int col = view.left / view.cellSize; col <= lastCol; col++) {
+          this.paint(grid.index(col, row));
+        }
+      }
+    }
+  }
+
+  // paints the cell at the given index in its current color, or its block, if it is in
+  // the view
+  void paint(int index) {
+    int col = index % grid.size;
+    int row = index / grid.size;
+    if (view.blockSize > 1) {
+      int x = col / view.blockSize - view.left;
+      int y = row / view.blockSize - view.top;
+      if (x >= 0 && y >= 0 && x < view.width && y < view.height) {
+        image.setPixel(x, y, mipmap.colorAt(view.blockSize, x + view.left, y + view.top));
+      }
+      return;
+    }
+    Color color = palette.get(grid.colorAt(index));
+    int left = Math.max(0, col * view.cellSize - view.left);
+    int top = Math.max(0, row * view.cellSize - view.top);
+    int right = Math.min(view.width, (col + 1) * view.cellSize - view.left);
+    int bottom = Math.min(view.height, (row + 1) * view.cellSize - view.top);
+    for (int y = top; y < bottom; y++) {
+      for (int x = left; x < right; x++) {
+        image.setPixel(x, y, color);
+      }
+    }
+  }
+}
+
+// The average color of every block of 2x2, 4x4, 8x8 ... cells of a board, so that a
+// zoomed out view can paint a pixel from one number whatever the size of its block.
+// Each level averages the blocks of the level below, so changing a cell updates one
+// block per level.
+class BoardMipmap {
+  FloodBoard grid;
+  Palette palette;
+  // levels[k] holds the RGB of the blocks of 2^(k + 1) cells, row by row
+  int[][] levels;
+  // the number of blocks in each row or column of each level
+  int[] sizes;
+
+  BoardMipmap(FloodBoard grid, Palette palette) {
+    this.grid = grid;
+    this.palette = palette;
+    int count = 0;
+    for (int size = grid.size; size > 1; size = (size + 1) / 2) {
+      count++;
+    }
+    this.levels = new int[count][];
+    this.sizes = new int[count];
+    int size = grid.size;
+    for (int k = 0; k < count; k++) {
+      size = (size + 1) / 2;
+      sizes[k] = size;
+      levels[k] = new int[size * size];
+      for (int row = 0; row < size; row++) {
+        for (int col = 0; col < size; col++) {
+          this.average(k, col, row);
+        }
+      }
+    }
+  }
+
+  // returns the number of blocks in each row or column of the level with blocks of the
+  // given number of cells, a power of two
+  int sizeAt(int blockSize) {
+    return sizes[this.levelOf(blockSize)];
+  }
+
+  // returns the level with blocks of the given number of cells, a power of two
+  int levelOf(int blockSize) {
+    return Math.min(levels.length - 1, Integer.numberOfTrailingZeros(blockSize) - 1);
+  }
+
+  // returns the average color of the given block of the level with blocks of the given
+  // number of cells
+  Color colorAt(int blockSize, int col, int row) {
+    int k = this.levelOf(blockSize);
+    return new Color(levels[k][row * sizes[k] + col]);
+  }
+
+  // updates the blocks holding the cell at the given index
+  void update(int index) {
+    int col = index % grid.size;
+    int row = index / grid.size;
+    for (int k = 0; k < levels.length; k++) {
+      col /= 2;
+      row /= 2;
+      this.average(k, col, row);
+    }
+  }
+
+  // sets the given block of the given level to the average of the up to four blocks it
+  // covers in the level below
+  void average(int k, int col, int row) {
+    int below = k == 0 ? grid.size : sizes[k - 1];
+    int red = 0;
+    int green = 0;
+    int blue = 0;
+    int count = 0;
+    for (int y = row * 2; y < Math.min(below, row * 2 + 2); y++) {
+      for (int x = col * 2; x < Math.min(below, col * 2 + 2); x++) {
+        int rgb = k == 0 ? palette.get(grid.colorAt(grid.index(x, y))).getRGB()
+            : levels[k - 1][y * below + x];
+        red += (rgb >> 16) & 0xFF;
+        green += (rgb >> 8) & 0xFF;
+        blue += rgb & 0xFF;
+        count++;
+      }
+    }
+    levels[k][row * sizes[k] + col] = (red / count) << 16 | (green / count) << 8 | blue / count;
+  }
+}
+
+// Floods a board without recursion, walking it with a work queue of cell indices and
+// keeping track of the cells already reached in a bitset
+class FloodEngine {
+  // the board being flooded
+  FloodBoard grid;
+  // one bit per cell, set once the cell has been reached
+  long[] visited;
+  // cell indices in the order they were reached; also serves as the work queue
+  int[] queue;
+
+  FloodEngine(FloodBoard grid) {
+    int cells = grid.colors.length;
+    // the queue starts small and grows with the flood, the bitset covers the board
+    this.grid = grid;
+    this.visited = new long[(cells + 63) / 64];
+    this.queue = new int[Math.max(1, Math.min(cells, 1024))];
+  }
+
+  // walks the region of the given color starting at the given index, leaving the indices
+  // reached at the front of the queue, and returns how many there are
+  public int fill(int start, int colorIndex) {
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = start;
+    visited[start >> 6] |= 1L << start;
+    while (head < tail) {
+      int index = queue[head++];
+      // checks the right, bottom, top, and left cells
+      if (grid.hasRight(index)) {
+        tail = this.visit(index + 1, colorIndex, tail);
+      }
+      if (grid.hasBottom(index)) {
+        tail = this.visit(index + grid.size, colorIndex, tail);
+      }
+      if (grid.hasTop(index)) {
+        tail = this.visit(index - grid.size, colorIndex, tail);
+      }
+      if (grid.hasLeft(index)) {
+        tail = this.visit(index - 1, colorIndex, tail);
+      }
+    }
+    // only the cells reached were marked, so only they need clearing for the next flood
+    for (int i = 0; i < tail; i++) {
+      visited[queue[i] >> 6] = 0;
+    }
+    return tail;
+  }
+
+  // queues the cell at the given index if it has the given color and has not been reached,
+  // and returns the new end of the queue
+  int visit(int index, int colorIndex, int tail) {
+    long bit = 1L << index;
+    if ((visited[index >> 6] & bit) == 0 && grid.colorAt(index) == colorIndex) {
+      visited[index >> 6] |= bit;
+      if (tail == queue.length) {
+        queue = Arrays.copyOf(queue, tail * 2);
+      }
+      queue[tail++] = index;
+    }
+    return tail;
+  }
+}
+
+// The board compressed into its regions (connected cells of one color) and which regions
+// are next to each other, found in one pass over the cells. The flood only ever grows by
+// whole regions, so a move absorbs the regions of its color bordering the flood, kept in
+// one list per color, and looks at their neighbouring regions instead of at cells.
+// Only moves made through absorb are followed; recoloring the board directly is not.
+class RegionGraph {
+  // the rows of each tile when the regions are labeled in parallel
+  static final int TILE_ROWS = 64;
+  // the board the regions were found on
+  FloodBoard grid;
+  // Number of colors in the game
+  int numOfColors;
+  // the region of each cell
+  int[] component;
+  // the number of regions
+  int components;
+  // the palette index and number of cells of each region
+  int[] componentColor;
+  int[] componentSize;
+  // the cells of region r are cellOrder[cellStart[r]] up to, but not including,
+  // cellOrder[cellStart[r + 1]]
+  int[] cellStart;
+  int[] cellOrder;
+  // the neighbours of region r are adjacency[adjacencyStart[r]] up to, but not
+  // including, adjacency[adjacencyStart[r + 1]]
+  int[] adjacencyStart;
+  int[] adjacency;
+  // one bit per region, set if the region is flooded
+  long[] flooded;
+  // the Zobrist hash of the flooded regions
+  long hash;
+  // the flooded regions in the order they were absorbed, and how many there are
+  int[] floodedOrder;
+  int floodedCount;
+  // the cells of the flooded regions in the order they were absorbed, and how many
+  // there are
+  int[] regionOrder;
+  int regionSize;
+  // one bit per region, set if the region borders the flood without being part of it
+  long[] onFrontier;
+  // the regions bordering the flood, in one list per palette index, and the length of
+  // each list
+  int[][] frontier;
+  int[] frontierSize;
+
+  // Constructor that labels the regions on this thread. The tile labeler is only used
+  // when a pool is passed, since it has not been measured faster.
+  RegionGraph(FloodBoard grid, int numOfColors) {
+    this(grid, numOfColors, null);
+  }
+
+  // Constructor that labels the regions on the given pool, or on this thread if it is null
+  RegionGraph(FloodBoard grid, int numOfColors, ForkJoinPool pool) {
+    this.grid = grid;
+    this.numOfColors = numOfColors;
+    if (pool == null) {
+      this.label();
+    }
+    else {
+      new TileLabeler(grid, TILE_ROWS).label(this, pool);
+    }
+    this.link();
+    this.flooded = new long[(components + 63) / 64];
+    this.onFrontier = new long[flooded.length];
+    this.floodedOrder = new int[components];
+    this.regionOrder = new int[Math.max(1, Math.min(grid.colors.length, 1024))];
+    this.frontier = new int[numOfColors][4];
+    this.frontierSize = new int[numOfColors];
+    if (components > 0) {
+      this.flood(component[0]);
+      this.grow(0);
+    }
+  }
+
+  // labels the region of every cell, keeping the cells of each region together in
+  // cellOrder
+  void label() {
+    int cells = grid.colors.length;
+    int capacity = Math.max(1, Math.min(cells, 1024));
+    this.component = new int[cells];
+    Arrays.fill(component, -1);
+    this.cellOrder = new int[cells];
+    this.cellStart = new int[capacity + 1];
+    this.componentColor = new int[capacity];
+    int count = 0;
+    int tail = 0;
+    for (int start = 0; start < cells; start++) {
+      if (component[start] == -1) {
+        if (count == componentColor.length) {
+          componentColor = Arrays.copyOf(componentColor, count * 2);
+          cellStart = Arrays.copyOf(cellStart, count * 2 + 1);
+        }
+        int colorIndex = grid.colorAt(start);
+        cellStart[count] = tail;
+        componentColor[count] = colorIndex;
+        component[start] = count;
+        cellOrder[tail++] = start;
+        for (int head = cellStart[count]; head < tail; head++) {
+          int index = cellOrder[head];
+          if (grid.hasRight(index)) {
+            tail = this.labelCell(index + 1, colorIndex, count, tail);
+          }
+          if (grid.hasBottom(index)) {
+            tail = this.labelCell(index + grid.size, colorIndex, count, tail);
+          }
+          if (grid.hasTop(index)) {
+            tail = this.labelCell(index - grid.size, colorIndex, count, tail);
+          }
+          if (grid.hasLeft(index)) {
+            tail = this.labelCell(index - 1, colorIndex, count, tail);
+          }
+        }
+        count++;
+      }
+    }
+    cellStart[count] = tail;
+    this.components = count;
+    this.cellStart = Arrays.copyOf(cellStart, count + 1);
+    this.componentColor = Arrays.copyOf(componentColor, count);
+    this.componentSize = new int[count];
+    for (int r = 0; r < count; r++) {
+      componentSize[r] = cellStart[r + 1] - cellStart[r];
+    }
+  }
+
+  // labels the cell at the given index with the given region if it has the given color
+  // and no region yet, and returns the new end of cellOrder
+  int labelCell(int index, int colorIndex, int label, int tail) {
+    if (component[index] == -1 && grid.colorAt(index) == colorIndex) {
+      component[index] = label;
+      cellOrder[tail++] = index;
+    }
+    return tail;
+  }
+
+  // finds the neighbours of every region, each once, by walking the cells of each region
+  void link() {
+    // lastSeen[r] is one more than the last region found next to r
+    int[] lastSeen = new int[components];
+    this.adjacencyStart = new int[components + 1];
+    this.adjacency = new int[Math.max(1, Math.min(grid.colors.length, 1024))];
+    int edges = 0;
+    for (int r = 0; r < components; r++) {
+      adjacencyStart[r] = edges;
+      for (int i = cellStart[r]; i < cellStart[r + 1]; i++) {
+        int index = cellOrder[i];
+        if (grid.hasRight(index)) {
+          edges = this.linkCell(r, component[index + 1], lastSeen, edges);
+        }
+        if (grid.hasBottom(index)) {
+          edges = this.linkCell(r, component[index + grid.size], lastSeen, edges);
+        }
+        if (grid.hasTop(index)) {
+          edges = this.linkCell(r, component[index - grid.size], lastSeen, edges);
+        }
+        if (grid.hasLeft(index)) {
+          edges = this.linkCell(r, component[index - 1], lastSeen, edges);
+        }
+      }
+    }
+    adjacencyStart[components] = edges;
+    this.adjacency = Arrays.copyOf(adjacency, edges);
+  }
+
+  // records the other region as a neighbour of the given one, unless it is the same
+  // region or was already recorded, and returns the new number of neighbours recorded
+  int linkCell(int r, int other, int[] lastSeen, int edges) {
+    if (other != r && lastSeen[other] != r + 1) {
+      lastSeen[other] = r + 1;
+      if (edges == adjacency.length) {
+        adjacency = Arrays.copyOf(adjacency, edges * 2);
+      }
+      adjacency[edges++] = other;
+    }
+    return edges;
+  }
+
+  // determines if the given region is flooded
+  boolean isFlooded(int r) {
+    return (flooded[r >> 6] & (1L << r)) != 0;
+  }
+
+  // determines if every region is flooded
+  boolean allFlooded() {
+    return floodedCount == components;
+  }
+
+  // absorbs the regions bordering the flood that have the given color, and returns how
+  // many cells were absorbed
+  public int absorb(int colorIndex) {
+    int start = regionSize;
+    int from = floodedCount;
+    int[] absorbed = frontier[colorIndex];
+    int count = frontierSize[colorIndex];
+    frontierSize[colorIndex] = 0;
+    for (int i = 0; i < count; i++) {
+      onFrontier[absorbed[i] >> 6] &= ~(1L << absorbed[i]);
+      this.flood(absorbed[i]);
+    }
+    this.grow(from);
+    return regionSize - start;
+  }
+
+  // marks the given region as flooded and adds its cells to regionOrder
+  void flood(int r) {
+    flooded[r >> 6] |= 1L << r;
+    hash ^= Zobrist.regionKey(r);
+    floodedOrder[floodedCount++] = r;
+    int size = componentSize[r];
+    if (regionSize + size > regionOrder.length) {
+      regionOrder = Arrays.copyOf(regionOrder, Math.max(regionSize + size, regionSize * 2));
+    }
+    System.arraycopy(cellOrder, cellStart[r], regionOrder, regionSize, size);
+    regionSize += size;
+  }
+
+  // adds the neighbours of the regions flooded from the given position in floodedOrder
+  // onwards to the frontier, unless they are already in it or flooded
+  void grow(int from) {
+    for (int i = from; i < floodedCount; i++) {
+      int r = floodedOrder[i];
+      for (int j = adjacencyStart[r]; j < adjacencyStart[r + 1]; j++) {
+        int next = adjacency[j];
+        long bit = 1L << next;
+        if ((flooded[next >> 6] & bit) == 0 && (onFrontier[next >> 6] & bit) == 0) {
+          onFrontier[next >> 6] |= bit;
+          int colorIndex = componentColor[next];
+          if (frontierSize[colorIndex] == frontier[colorIndex].length) {
+            frontier[colorIndex] = Arrays.copyOf(frontier[colorIndex],
+                frontierSize[colorIndex] * 2);
+          }
+          frontier[colorIndex][frontierSize[colorIndex]++] = next;
+        }
+      }
+    }
+  }
+
+  // gives back the regions flooded from the given position in floodedOrder onwards,
+  // which must have been absorbed by one move, and puts regionOrder and the frontier
+  // back to the given sizes they had before that move
+  void retreat(int from, int start, int[] sizes) {
+    // the regions the frontier gained from the move are the last ones of each list
+    for (int colorIndex = 0; colorIndex < numOfColors; colorIndex++) {
+      for (int j = sizes[colorIndex]; j < frontierSize[colorIndex]; j++) {
+        onFrontier[frontier[colorIndex][j] >> 6] &= ~(1L << frontier[colorIndex][j]);
+      }
+      frontierSize[colorIndex] = Math.min(frontierSize[colorIndex], sizes[colorIndex]);
+    }
+    // the regions absorbed were the whole frontier of their color, in the same order
+    if (from < floodedCount) {
+      int colorIndex = componentColor[floodedOrder[from]];
+      if (frontier[colorIndex].length < floodedCount - from) {
+        frontier[colorIndex] = new int[floodedCount - from];
+      }
+      for (int i = from; i < floodedCount; i++) {
+        int r = floodedOrder[i];
+        flooded[r >> 6] &= ~(1L << r);
+        onFrontier[r >> 6] |= 1L << r;
+        hash ^= Zobrist.regionKey(r);
+        frontier[colorIndex][i - from] = r;
+      }
+      frontierSize[colorIndex] = floodedCount - from;
+    }
+    this.floodedCount = from;
+    this.regionSize = start;
+  }
+
+  // returns a region bordering the flood, of the smallest palette index there is, or -1
+  // if nothing borders the flood
+  int frontierRegion() {
+    for (int colorIndex = 0; colorIndex < numOfColors; colorIndex++) {
+      if (frontierSize[colorIndex] > 0) {
+        return frontier[colorIndex][0];
+      }
+    }
+    return -1;
+  }
+}
+
+// A union-find over the cells of a board, safe to use from many threads at once. Each
+// set is rooted at its smallest cell, and a root only ever gets a smaller parent, so two
+// threads linking the same sets can never make a cycle; a link that loses a race is
+// tried again from the new roots. Finding halves the path as it goes.
+class ConcurrentUnionFind {
+  AtomicIntegerArray parent;
+
+  // Constructor for the given number of cells, each in a set of its own once reset
+  ConcurrentUnionFind(int cells) {
+    this.parent = new AtomicIntegerArray(cells);
+  }
+
+  // puts the given cell in a set of its own; only safe while no other thread uses it
+  void reset(int cell) {
+    parent.setPlain(cell, cell);
+  }
+
+  // returns the root of the set of the given cell
+  int find(int cell) {
+    int p = parent.get(cell);
+    while (p != cell) {
+      int grandparent = parent.get(p);
+      if (grandparent != p) {
+        parent.compareAndSet(cell, p, grandparent);
+      }
+      cell = grandparent;
+      p = parent.get(cell);
+    }
+    return cell;
+  }
+
+  // joins the sets of the given cells
+  void union(int a, int b) {
+    while (true) {
+      a = this.find(a);
+      b = this.find(b);
+      if (a == b) {
+        return;
+      }
+      int high = Math.max(a, b);
+      int low = Math.min(a, b);
+      if (parent.compareAndSet(high, high, low)) {
+        return;
+      }
+    }
+  }
+
+  // joins the sets of the given cells, when no other thread uses either set
+  void unionPlain(int a, int b) {
+    a = this.findPlain(a);
+    b = this.findPlain(b);
+    if (a != b) {
+      parent.setPlain(Math.max(a, b), Math.min(a, b));
+    }
+  }
+
+  // returns the root of the set of the given cell, when no other thread uses the set
+  int findPlain(int cell) {
+    int p = parent.getPlain(cell);
+    while (p != cell) {
+      int grandparent = parent.getPlain(p);
+      parent.setPlain(cell, grandparent);
+      cell = grandparent;
+      p = parent.getPlain(cell);
+    }
+    return cell;
+  }
+}
+
+// Labels the regions of a board in parallel. The board is cut into tiles of whole rows;
+// each tile joins the cells inside it on a thread of its own, then the cells on each
+// border between two tiles are joined across it, all at once. The regions are numbered
+// by their first cell, as RegionGraph.label numbers them, so the labels, colors and
+// sizes are the same as the single-threaded ones; only the cells of each region are
+// listed in row-major order instead of the order a flood reaches them.
+class TileLabeler {
+  // the rows of one tile
+  int tileRows;
+  FloodBoard grid;
+  // the number of tiles
+  int tiles;
+  ConcurrentUnionFind sets;
+  // the region of each cell
+  int[] component;
+  // the palette index of each region
+  int[] componentColor;
+  // the number of regions starting in each tile, then the number of regions before it
+  int[] firsts;
+
+  TileLabeler(FloodBoard grid, int tileRows) {
+    if (tileRows < 1) {
+      throw new IllegalArgumentException("A tile needs at least one row");
+    }
+    this.grid = grid;
+    this.tileRows = tileRows;
+    this.tiles = Math.max(1, (grid.size + tileRows - 1) / tileRows);
+  }
+
+  // labels the regions of the board of the given graph, filling in its labels and its
+  // lists of cells, on the given pool
+  void label(RegionGraph graph, ForkJoinPool pool) {
+    int cells = grid.colors.length;
+    this.sets = new ConcurrentUnionFind(cells);
+    this.component = new int[cells];
+    this.firsts = new int[tiles];
+    pool.invoke(new TileTask(this, TileTask.JOIN_INSIDE, 0, tiles));
+    if (tiles > 1) {
+      pool.invoke(new TileTask(this, TileTask.JOIN_BORDER, 1, tiles));
+    }
+    pool.invoke(new TileTask(this, TileTask.FIND_ROOTS, 0, tiles));
+    // the regions of each tile are numbered after those of the tiles above it
+    int components = 0;
+    for (int tile = 0; tile < tiles; tile++) {
+      int count = firsts[tile];
+      firsts[tile] = components;
+      components += count;
+    }
+    this.componentColor = new int[components];
+    pool.invoke(new TileTask(this, TileTask.NUMBER_ROOTS, 0, tiles));
+    pool.invoke(new TileTask(this, TileTask.NUMBER_CELLS, 0, tiles));
+
+    // the cells of each region, in row-major order
+    int[] componentSize = new int[components];
+    for (int index = 0; index < cells; index++) {
+      componentSize[component[index]]++;
+    }
+    int[] cellStart = new int[components + 1];
+    for (int r = 0; r < components; r++) {
+      cellStart[r + 1] = cellStart[r] + componentSize[r];
+    }
+    int[] next = Arrays.copyOf(cellStart, components);
+    int[] cellOrder = new int[cells];
+    for (int index = 0; index < cells; index++) {
+      cellOrder[next[component[index]]++] = index;
+    }
+    graph.component = component;
+    graph.components = components;
+    graph.componentColor = componentColor;
+    graph.componentSize = componentSize;
+    graph.cellStart = cellStart;
+    graph.cellOrder = cellOrder;
+    this.sets = null;
+  }
+
+  // returns the first cell of the given tile
+  int tileStart(int tile) {
+    return Math.min(grid.colors.length, tile * tileRows * grid.size);
+  }
+
+  // runs the given step of the labeling on the given tile
+  void run(int step, int tile) {
+    int from = this.tileStart(tile);
+    int to = this.tileStart(tile + 1);
+    if (step == TileTask.JOIN_INSIDE) {
+      for (int index = from; index < to; index++) {
+        sets.reset(index);
+        int colorIndex = grid.colors[index];
+        if (grid.hasLeft(index) && grid.colors[index - 1] == colorIndex) {
+          sets.unionPlain(index, index - 1);
+        }
+        if (index - grid.size >= from && grid.colors[index - grid.size] == colorIndex) {
+          sets.unionPlain(index, index - grid.size);
+        }
+      }
+    }
+    else if (step == TileTask.JOIN_BORDER) {
+      for (int index = from; index < from + grid.size; index++) {
+        if (grid.colors[index - grid.size] == grid.colors[index]) {
+          sets.union(index, index - grid.size);
+        }
+      }
+    }
+    else if (step == TileTask.FIND_ROOTS) {
+      int roots = 0;
+      for (int index = from; index < to; index++) {
+        component[index] = sets.find(index);
+        roots += component[index] == index ? 1 : 0;
+      }
+      firsts[tile] = roots;
+    }
+    else if (step == TileTask.NUMBER_ROOTS) {
+      // the sets are no longer needed, so the parent of each root becomes its label
+      int label = firsts[tile];
+      for (int index = from; index < to; index++) {
+        if (component[index] == index) {
+          componentColor[label] = grid.colors[index];
+          sets.parent.setPlain(index, label++);
+        }
+      }
+    }
+    else {
+      for (int index = from; index < to; index++) {
+        component[index] = sets.parent.getPlain(component[index]);
+      }
+    }
+  }
+}
+
+// Runs one step of a TileLabeler on a range of tiles, splitting the range in half until
+// it is one tile. Tasks only live inside a labeling, so none is ever serialized.
+@SuppressWarnings("serial")
+class TileTask extends RecursiveAction {
+  // the steps, in the order they run
+  static final int JOIN_INSIDE = 0;
+  static final int JOIN_BORDER = 1;
+  static final int FIND_ROOTS = 2;
+  static final int NUMBER_ROOTS = 3;
+  static final int NUMBER_CELLS = 4;
+
+  TileLabeler labeler;
+  int step;
+  // the first tile, and one past the last tile, to run the step on
+  int from;
+  int to;
+
+  TileTask(TileLabeler labeler, int step, int from, int to) {
+    this.labeler = labeler;
+    this.step = step;
+    this.from = from;
+    this.to = to;
+  }
+
+  protected void compute() {
+    if (to - from == 1) {
+      labeler.run(step, from);
+      return;
+    }
+    int middle = from + (to - from) / 2;
+    invokeAll(new TileTask(labeler, step, from, middle),
+        new TileTask(labeler, step, middle, to));
+  }
+}
+
+// What a move changed, so that it can be taken back without copying the board. The
+// cells a move recolors are the flood as it was, which is the start of
+// regions.regionOrder, and the regions it absorbs are the end of regions.floodedOrder,
+// so only the lengths of those, the frontier, and the colors are kept.
+class MoveDelta {
+  // the palette index flooded with, and the one the flood had before
+  int colorIndex;
+  int previousColorIndex;
+  // the lengths of regions.floodedOrder and regions.regionOrder before the move
+  int floodedCount;
+  int regionSize;
+  // the length of each list of the frontier before the move
+  int[] frontierSize;
+
+  // records the game as it is before flooding it with the given palette index
+  MoveDelta(FloodItGame game, int colorIndex) {
+    this.colorIndex = colorIndex;
+    this.previousColorIndex = game.floodColorIndex;
+    this.floodedCount = game.regions.floodedCount;
+    this.regionSize = game.regions.regionSize;
+    this.frontierSize = game.regions.frontierSize.clone();
+  }
+}
+
+// The moves that can be undone, last one at the end, and the moves undone since the
+// last new move, which can be made again. A move undone leaves the game just as it was
+// before the move, so its delta is still right when the move is redone.
+class MoveHistory {
+  ArrayList<MoveDelta> done;
+  ArrayList<MoveDelta> undone;
+
+  MoveHistory() {
+    this.done = new ArrayList<MoveDelta>();
+    this.undone = new ArrayList<MoveDelta>();
+  }
+
+  // adds a new move, which can no longer be followed by the moves undone
+  void record(MoveDelta delta) {
+    done.add(delta);
+    undone.clear();
+  }
+
+  // determines if there is a move to undo
+  boolean canUndo() {
+    return !done.isEmpty();
+  }
+
+  // determines if there is a move to redo
+  boolean canRedo() {
+    return !undone.isEmpty();
+  }
+
+  // returns the last move, moving it to the moves undone
+  MoveDelta undo() {
+    if (!this.canUndo()) {
+      throw new IllegalArgumentException("No moves to undo");
+    }
+    MoveDelta delta = done.remove(done.size() - 1);
+    undone.add(delta);
+    return delta;
+  }
+
+  // returns the last move undone, moving it back to the moves done
+  MoveDelta redo() {
+    if (!this.canRedo()) {
+      throw new IllegalArgumentException("No moves to redo");
+    }
+    MoveDelta delta = undone.remove(undone.size() - 1);
+    done.add(delta);
+    return delta;
+  }
+}
+
+// The board and turns of a game after some number of moves, kept so that a replay can
+// start from it instead of from the first move
+class GameCheckpoint {
+  // the number of moves made before the checkpoint
+  int moves;
+  // the colors of the board, with every flood finished
+  FloodBoard grid;
+  // Number of colors in the game
+  int numOfColors;
+  // number of turns the player had left
+  int turnsLeft;
+
+  // takes a checkpoint of the given game after the given number of moves
+  GameCheckpoint(int moves, FloodItGame game) {
+    this.moves = moves;
+    this.grid = game.grid.copy();
+    this.numOfColors = game.numOfColors;
+    this.turnsLeft = game.turnsLeft;
+  }
+
+  // returns a new game in the state of the checkpoint
+  FloodItGame restore() {
+    return new FloodItGame(grid.copy(), numOfColors, turnsLeft);
+  }
+}
+
+// The moves of a game, in order: each is the palette index flooded with and the tick it
+// was made on, packed into one long. The log starts from the seed of the board when the
+// game was made from one, and from a checkpoint of the board otherwise.
+class MoveLog {
+  // The number of cells in each row or column
+  int boardSize;
+  // Number of colors in the game
+  int numOfColors;
+  // if the board was made from the seed, as FloodItWorld.seededGame makes it, and the
+  // turns the game started with, or -1 for the turns seededGame gives it
+  boolean seeded;
+  long seed;
+  int turnsLeft;
+  // the game before the first move, or null if the log only has the seed
+  GameCheckpoint start;
+  // the tick of each move shifted up by 8 bits, with the palette index below
+  long[] events;
+  // the number of moves
+  int size;
+
+  // Constructor for the moves of the given game, starting now
+  MoveLog(FloodItGame game) {
+    this.boardSize = game.boardSize;
+    this.numOfColors = game.numOfColors;
+    this.start = new GameCheckpoint(0, game);
+    this.events = new long[16];
+  }
+
+  // Constructor for the moves of the game made from the given seed
+  MoveLog(int boardSize, int numOfColors, long seed) {
+    this(boardSize, numOfColors, seed, -1);
+  }
+
+  // Constructor for the moves of the game made from the given seed and started with the
+  // given turns, as the levels of a pack are
+  MoveLog(int boardSize, int numOfColors, long seed, int turnsLeft) {
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+    this.seeded = true;
+    this.seed = seed;
+    this.turnsLeft = turnsLeft;
+    this.events = new long[16];
+  }
+
+  // adds a move with the given palette index, made on the given tick
+  void record(int colorIndex, long tick) {
+    if (size == events.length) {
+      events = Arrays.copyOf(events, size * 2);
+    }
+    events[size++] = (tick << 8) | colorIndex;
+  }
+
+  // removes the last move, after it was undone
+  void drop() {
+    if (size == 0) {
+      throw new IllegalArgumentException("No moves to drop");
+    }
+    size--;
+  }
+
+  // returns the palette index of the given move
+  int move(int k) {
+    return (int) (events[k] & 0xFF);
+  }
+
+  // returns the tick of the given move
+  long tick(int k) {
+    return events[k] >>> 8;
+  }
+
+  // returns the game before the first move
+  GameCheckpoint start() {
+    if (start != null) {
+      return start;
+    }
+    if (!seeded) {
+      throw new IllegalArgumentException("The log has no seed or starting board");
+    }
+    FloodItGame game = FloodItWorld.seededGame(seed, boardSize, numOfColors);
+    if (turnsLeft != -1) {
+      game.turnsLeft = turnsLeft;
+    }
+    return new GameCheckpoint(0, game);
+  }
+
+  // returns the log as one line of text, to go with a bug report:
+  //   board size, colors, seed, then tick:color for each move
+  // where the seed is followed by /turns if the game did not start with the turns
+  // seededGame gives it
+  String encode() {
+    if (!seeded) {
+      throw new IllegalArgumentException("Only logs with a seed can be encoded");
+    }
+    StringBuilder text = new StringBuilder();
+    text.append(boardSize).append(' ').append(numOfColors).append(' ').append(seed);
+    if (turnsLeft != -1) {
+      text.append('/').append(turnsLeft);
+    }
+    for (int k = 0; k < size; k++) {
+      text.append(' ').append(this.tick(k)).append(':').append(this.move(k));
+    }
+    return text.toString();
+  }
+
+  // returns the log written by encode
+  static MoveLog decode(String text) {
+    try {
+      String[] parts = text.trim().split(" ");
+      String[] seed = parts[2].split("/", -1);
+      MoveLog log = new MoveLog(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+          Long.parseLong(seed[0]), seed.length > 1 ? Integer.parseInt(seed[1]) : -1);
+      if (seed.length > 2 || log.turnsLeft < -1) {
+        throw new IllegalArgumentException("Not a move log: " + text);
+      }
+      for (int i = 3; i < parts.length; i++) {
+        String[] event = parts[i].split(":", -1);
+        int colorIndex = Integer.parseInt(event[1]);
+        long tick = Long.parseLong(event[0]);
+        // both must fit in the long they are packed into
+        if (event.length > 2 || colorIndex < 0 || colorIndex >= log.numOfColors
+            || colorIndex > 255 || tick < 0 || tick > Long.MAX_VALUE >> 8) {
+          throw new IllegalArgumentException("Not a move log: " + text);
+        }
+        log.record(colorIndex, tick);
+      }
+      return log;
+    }
+    catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Not a move log: " + text);
+    }
+  }
+}
+
+// Counts of values, in buckets by powers of two, so that recording a value is a few
+// instructions and the histogram never grows. Bucket b holds the values below 2^b that
+// are at least 2^(b - 1), and bucket 0 holds 0.
+class Histogram {
+  long[] buckets;
+  // the number of values, their sum, and the largest one
+  long count;
+  long sum;
+  long max;
+
+  Histogram() {
+    this.buckets = new long[65];
+  }
+
+  // adds the given value, which must not be negative
+  void record(long value) {
+    buckets[64 - Long.numberOfLeadingZeros(value)]++;
+    count++;
+    sum += value;
+    max = Math.max(max, value);
+  }
+
+  // returns the average of the values
+  double mean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  // returns a value the given fraction of the values are no bigger than, rounded up to
+  // the top of its bucket and never more than the largest value
+  long percentile(double fraction) {
+    long rank = (long) Math.ceil(fraction * count);
+    long seen = 0;
+    for (int b = 0; b < buckets.length; b++) {
+      seen += buckets[b];
+      if (seen >= rank && seen > 0) {
+        return Math.min(max, b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+      }
+    }
+    return 0;
+  }
+
+  // adds every value of the given histogram
+  void add(Histogram other) {
+    for (int b = 0; b < buckets.length; b++) {
+      buckets[b] += other.buckets[b];
+    }
+    count += other.count;
+    sum += other.sum;
+    max = Math.max(max, other.max);
+  }
+
+  // removes every value
+  void clear() {
+    Arrays.fill(buckets, 0);
+    count = 0;
+    sum = 0;
+    max = 0;
+  }
+}
+
+// A move, as a Java Flight Recorder event, so that a recording of a session shows the
+// moves next to the garbage collections and the rest. Events cost next to nothing while
+// nothing is recording.
+@Name("floodit.Move")
+@Label("Flood-It Move")
+@Category("Flood-It")
+class FloodMoveEvent extends Event {
+  @Label("Palette Index")
+  int colorIndex;
+  @Label("Cells Absorbed")
+  int cellsAbsorbed;
+  @Label("Flooded Cells")
+  int regionSize;
+}
+
+// Counters and latency histograms of the phases of the game loop. While disabled, start
+// returns 0 without reading the clock and the rest return right away, so leaving the
+// calls in the loop costs a field read and a branch each. Turned on with
+//   java -Dfloodit.metrics=text (or json) -Dfloodit.metrics.every=600 ...
+// which prints the metrics every 600 frames.
+class Metrics {
+  // the phases timed
+  static final int FLOOD = 0;
+  static final int ANIMATION = 1;
+  static final int SCENE = 2;
+  static final int HIT_TEST = 3;
+  static final String[] PHASES = {"flood", "animation", "scene", "hitTest"};
+
+  boolean enabled;
+  // the nanoseconds of each phase
+  Histogram[] latency;
+  // the cells absorbed by each move
+  Histogram absorbed;
+  // the bytes allocated by the thread of the game loop from one frame to the next
+  Histogram allocated;
+  // the number of frames drawn, moves made, and cells recolored
+  long frames;
+  long moves;
+  long recolored;
+  // the bytes the thread had allocated at the last frame, or -1 if they cannot be read
+  long lastAllocated;
+  // the number of frames between reports, or 0 for none, where they go, and if they are
+  // JSON instead of text
+  int reportEvery;
+  PrintStream out;
+  boolean json;
+
+  // Constructor for metrics that are turned off
+  Metrics() {
+    this.latency = new Histogram[PHASES.length];
+    for (int phase = 0; phase < PHASES.length; phase++) {
+      latency[phase] = new Histogram();
+    }
+    this.absorbed = new Histogram();
+    this.allocated = new Histogram();
+    this.lastAllocated = -1;
+    this.out = System.out;
+  }
+
+  // returns the metrics asked for by the floodit.metrics properties
+  static Metrics fromProperties(Properties properties) {
+    Metrics metrics = new Metrics();
+    String format = properties.getProperty("floodit.metrics", "off");
+    if (!format.equals("off")) {
+      if (!format.equals("text") && !format.equals("json")) {
+        throw new IllegalArgumentException("Unknown metrics format " + format);
+      }
+      metrics.enabled = true;
+      metrics.json = format.equals("json");
+      metrics.reportEvery = Integer.parseInt(
+          properties.getProperty("floodit.metrics.every", "0"));
+    }
+    return metrics;
+  }
+
+  // returns the time a phase starts, or 0 if the metrics are off
+  long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  // records the time of the given phase, which started at the given time
+  void stop(int phase, long start) {
+    if (enabled) {
+      latency[phase].record(System.nanoTime() - start);
+    }
+  }
+
+  // counts a move that absorbed the given number of cells
+  void move(int cellsAbsorbed) {
+    if (enabled) {
+      moves++;
+      absorbed.record(cellsAbsorbed);
+    }
+  }
+
+  // counts the given number of cells recolored
+  void recolor(int cells) {
+    if (enabled) {
+      recolored += cells;
+    }
+  }
+
+  // counts a frame, recording what was allocated since the last one and printing a
+  // report if one is due
+  void frame() {
+    if (enabled) {
+      frames++;
+      long bytes = allocatedBytes();
+      if (lastAllocated >= 0 && bytes >= lastAllocated) {
+        allocated.record(bytes - lastAllocated);
+      }
+      lastAllocated = bytes;
+      if (reportEvery > 0 && frames % reportEvery == 0) {
+        out.println(json ? this.toJson() : this.toText());
+      }
+    }
+  }
+
+  // returns the bytes allocated by the current thread so far, or -1 if the JVM does not
+  // count them
+  static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+    }
+    return -1;
+  }
+
+  // removes every value, keeping the settings
+  void clear() {
+    for (Histogram histogram : latency) {
+      histogram.clear();
+    }
+    absorbed.clear();
+    allocated.clear();
+    frames = 0;
+    moves = 0;
+    recolored = 0;
+  }
+
+  // returns the metrics as lines of text, times in microseconds
+  String toText() {
+    StringBuilder text = new StringBuilder();
+    text.append(String.format("frames %d, moves %d, cells recolored %d%n",
+        frames, moves, recolored));
+    for (int phase = 0; phase < PHASES.length; phase++) {
+      Histogram h = latency[phase];
+      text.append(String.format("%-9s n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n",
+          PHASES[phase], h.count, h.mean() / 1000, h.percentile(0.5) / 1000.0,
+          h.percentile(0.99) / 1000.0, h.max / 1000.0));
+    }
+    text.append(String.format("absorbed  n=%d mean=%.1f p99=%d max=%d cells%n",
+        absorbed.count, absorbed.mean(), absorbed.percentile(0.99), absorbed.max));
+    text.append(String.format("allocated n=%d mean=%.0f p99=%d max=%d bytes/frame",
+        allocated.count, allocated.mean(), allocated.percentile(0.99), allocated.max));
+    return text.toString();
+  }
+
+  // returns the metrics as one JSON object, times in nanoseconds
+  String toJson() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"frames\":").append(frames).append(",\"moves\":").append(moves)
+        .append(",\"recolored\":").append(recolored).append(",\"latency\":{");
+    for (int phase = 0; phase < PHASES.length; phase++) {
+      json.append(phase == 0 ? "" : ",").append('"').append(PHASES[phase]).append("\":");
+      this.appendJson(json, latency[phase]);
+    }
+    json.append("},\"absorbed\":");
+    this.appendJson(json, absorbed);
+    json.append(",\"allocated\":");
+    this.appendJson(json, allocated);
+    return json.append('}').toString();
+  }
+
+  // adds the given histogram to the given JSON
+  void appendJson(StringBuilder json, Histogram h) {
+    json.append("{\"count\":").append(h.count).append(",\"mean\":")
+        .append(String.format(Locale.ROOT, "%.1f", h.mean())).append(",\"p50\":")
+        .append(h.percentile(0.5)).append(",\"p99\":").append(h.percentile(0.99))
+        .append(",\"max\":").append(h.max).append('}');
+  }
+}
+
+// Saves games to files and opens them again. A save is, in order and big-endian:
+//   the magic number, the version, and the bits per cell (int, short, short)
+//   the board size, the number of colors, the turns left, and the palette index of the
+//   flood (4 ints), the stopwatch (double), the cells flooded (int), and the game
+//   state (int)
+//   the palette, one int of RGB per color
+//   the palette index of every cell, in rows from the top left, packed into longs from
+//   the lowest bit up with just enough bits per cell for the number of colors
+// The flooded region is the region of the top left cell, so only its size is kept, to
+// check the save against. A flood that is still animating is saved as finished.
+class GameFile {
+  // "FLIT"
+  static final int MAGIC = 0x464C4954;
+  static final int VERSION = 1;
+  // the bytes before the palette
+  static final int HEADER_SIZE = 40;
+  // the game states, in the order of their codes
+  static final List<String> STATES = Arrays.asList("stagnant", "flooding", "won", "lost");
+
+  // returns the number of bits needed for a palette index of the given number of colors
+  static int bitsPerCell(int numOfColors) {
+    return 32 - Integer.numberOfLeadingZeros(Math.max(0, numOfColors - 1));
+  }
+
+  // returns the position of the packed colors in a save with the given number of colors,
+  // rounded up so that the longs are aligned
+  static int colorsOffset(int numOfColors) {
+    return (HEADER_SIZE + numOfColors * 4 + 7) / 8 * 8;
+  }
+
+  // the most colors a save can have, since a cell holds its palette index in a byte
+  static final int MAX_COLORS = 256;
+
+  // returns the number of bytes of a save of a board of the given size and colors, which
+  // may be more than a save can have
+  static long saveSize(int boardSize, int numOfColors) {
+    long cells = (long) boardSize * boardSize;
+    int bits = bitsPerCell(numOfColors);
+    // the whole words and the rest are counted apart, so even the largest board size
+    // cannot overflow
+    long words = cells / 64 * bits + (cells % 64 * bits + 63) / 64;
+    return colorsOffset(numOfColors) + words * 8;
+  }
+
+  // writes the given game, with its palette, time, and state, to the given file
+  static void save(Path path, FloodItGame game, Palette palette, double stopwatch,
+      String gameState) throws IOException {
+    ByteBuffer buffer = encode(game, palette, stopwatch, gameState);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  // returns the save of the given game, with its palette, time, and state, ready to be
+  // written
+  static ByteBuffer encode(FloodItGame game, Palette palette, double stopwatch,
+      String gameState) {
+    if (!STATES.contains(gameState)) {
+      throw new IllegalArgumentException("Unknown game state " + gameState);
+    }
+    FloodBoard grid = game.grid;
+    RegionGraph regions = game.regions;
+    int bits = bitsPerCell(game.numOfColors);
+    int cells = grid.colors.length;
+    ByteBuffer buffer = ByteBuffer.allocate((int) saveSize(game.boardSize, game.numOfColors));
+    // the cells of the region are saved with the color of the flood, even if the
+    // animation has not reached them yet
+    long[] flooded = new long[(cells + 63) / 64];
+    for (int i = 0; i < regions.regionSize; i++) {
+      flooded[regions.regionOrder[i] >> 6] |= 1L << regions.regionOrder[i];
+    }
+    // a flood is saved as finished, so it is decided as onTick decides it once the last
+    // cell is painted; the board is not painted yet, so isWon cannot be asked directly
+    String state = gameState;
+    if (state.equals("flooding")) {
+      if (regions.regionSize == cells) {
+        state = "won";
+      }
+      else if (game.turnsLeft <= 0) {
+        state = "lost";
+      }
+      else {
+        state = "stagnant";
+      }
+    }
+    buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) bits);
+    buffer.putInt(game.boardSize).putInt(game.numOfColors).putInt(game.turnsLeft);
+    buffer.putInt(game.floodColorIndex).putDouble(stopwatch).putInt(regions.regionSize);
+    buffer.putInt(STATES.indexOf(state));
+    for (int c = 0; c < game.numOfColors; c++) {
+      buffer.putInt(palette.get(c).getRGB() & 0xFFFFFF);
+    }
+    buffer.position(colorsOffset(game.numOfColors));
+    long word = 0;
+    int used = 0;
+    for (int index = 0; index < cells && bits > 0; index++) {
+      long colorIndex = (flooded[index >> 6] & (1L << index)) != 0
+          ? game.floodColorIndex : grid.colorAt(index);
+      word |= colorIndex << used;
+      used += bits;
+      if (used >= 64) {
+        buffer.putLong(word);
+        used -= 64;
+        // the bits of the color that did not fit start the next word
+        word = used == 0 ? 0 : colorIndex >>> (bits - used);
+      }
+    }
+    if (used > 0) {
+      buffer.putLong(word);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  // maps the given save into memory and reads its header; the cells are only read when
+  // they are asked for
+  static SavedGame open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed
+      return new SavedGame(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+}
+
+// A save mapped into memory, read straight from the file
+class SavedGame {
+  // the whole file
+  ByteBuffer buffer;
+  // the number of bits of each cell in the packed colors
+  int bits;
+  // The number of cells in each row or column
+  int boardSize;
+  // Number of colors in the game
+  int numOfColors;
+  // number of turns the player has left
+  int turnsLeft;
+  // the palette index of the color of the flood
+  int floodColorIndex;
+  // the time elapsed
+  double stopwatch;
+  // the number of cells flooded
+  int regionSize;
+  String gameState;
+  Palette palette;
+  // the position of the packed colors in the file
+  int colorsOffset;
+
+  SavedGame(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.capacity() < GameFile.HEADER_SIZE || buffer.getInt(0) != GameFile.MAGIC) {
+      throw new IllegalArgumentException("Not a Flood-It save");
+    }
+    int version = buffer.getShort(4);
+    if (version != GameFile.VERSION) {
+      throw new IllegalArgumentException("Unsupported save version " + version);
+    }
+    this.bits = buffer.getShort(6);
+    this.boardSize = buffer.getInt(8);
+    this.numOfColors = buffer.getInt(12);
+    this.turnsLeft = buffer.getInt(16);
+    this.floodColorIndex = buffer.getInt(20);
+    this.stopwatch = buffer.getDouble(24);
+    this.regionSize = buffer.getInt(32);
+    int state = buffer.getInt(36);
+    // a board must fit in an array even when its cells take no bits, as with one color,
+    // and a flood is always saved as finished
+    if (boardSize < 1 || (long) boardSize * boardSize > Integer.MAX_VALUE
+        || numOfColors < 1 || numOfColors > GameFile.MAX_COLORS
+        || bits != GameFile.bitsPerCell(numOfColors) || state < 0
+        || state >= GameFile.STATES.size()
+        || state == GameFile.STATES.indexOf("flooding") || floodColorIndex < 0
+        || floodColorIndex >= numOfColors
+        || GameFile.saveSize(boardSize, numOfColors) > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Not a Flood-It save");
+    }
+    this.gameState = GameFile.STATES.get(state);
+    this.colorsOffset = GameFile.colorsOffset(numOfColors);
+    if (buffer.capacity() < GameFile.saveSize(boardSize, numOfColors)) {
+      throw new IllegalArgumentException("The save is cut short");
+    }
+    this.palette = new Palette();
+    for (int c = 0; c < numOfColors; c++) {
+      palette.colors.add(new Color(buffer.getInt(GameFile.HEADER_SIZE + c * 4)));
+    }
+  }
+
+  // returns the packed word at the given position
+  long word(int word) {
+    return buffer.getLong(colorsOffset + word * 8);
+  }
+
+  // returns the palette index of the cell at the given index
+  int colorAt(int index) {
+    if (bits == 0) {
+      return 0;
+    }
+    long bit = (long) index * bits;
+    int word = (int) (bit >>> 6);
+    int shift = (int) (bit & 63);
+    long value = this.word(word) >>> shift;
+    if (shift + bits > 64) {
+      value |= this.word(word + 1) << (64 - shift);
+    }
+    return this.checkColor((int) (value & ((1L << bits) - 1)));
+  }
+
+  // returns the given unpacked palette index, if the palette has it
+  int checkColor(int colorIndex) {
+    // the bits can hold more indices than there are colors, which no save writes
+    if (colorIndex >= numOfColors) {
+      throw new IllegalArgumentException("Not a Flood-It save");
+    }
+    return colorIndex;
+  }
+
+  // unpacks the colors into a new board
+  FloodBoard toBoard() {
+    FloodBoard grid = new FloodBoard(boardSize);
+    int cells = grid.colors.length;
+    int[] counts = new int[Math.max(1, numOfColors)];
+    long hash = 0;
+    long mask = (1L << bits) - 1;
+    long words = ((long) cells * bits + 63) / 64;
+    int wordIndex = 0;
+    long current = words > 0 ? this.word(0) : 0;
+    int shift = 0;
+    for (int index = 0; index < cells; index++) {
+      int colorIndex = 0;
+      if (bits > 0) {
+        long value = current >>> shift;
+        shift += bits;
+        if (shift >= 64) {
+          shift -= 64;
+          wordIndex++;
+          current = wordIndex < words ? this.word(wordIndex) : 0;
+          // the high bits of a color split between two words are at the bottom of the next
+          if (shift > 0) {
+            value |= current << (bits - shift);
+          }
+        }
+        colorIndex = this.checkColor((int) (value & mask));
+      }
+      grid.colors[index] = (byte) colorIndex;
+      counts[colorIndex]++;
+      hash ^= Zobrist.cellKey(index, colorIndex);
+    }
+    grid.recount(counts, hash);
+    return grid;
+  }
+
+  // returns the saved game, ready to play
+  FloodItGame toGame() {
+    FloodItGame game = new FloodItGame(this.toBoard(), numOfColors, turnsLeft);
+    if (game.regions.regionSize != regionSize || game.floodColorIndex != floodColorIndex) {
+      throw new IllegalArgumentException("The flooded region does not match the save");
+    }
+    return game;
+  }
+}
+
+// A pack of levels on one board size and number of colors, mapped into memory and read
+// a level at a time. A pack is, in order and big-endian:
+//   the magic number, the version, and nothing (int, short, short)
+//   the board size, the number of colors, the number of levels, and the bytes of each
+//   level (4 ints)
+//   each level: its seed (long), the moves it needs (int), nothing (int), and the game as
+//   GameFile saves it, with the turns of its band, not yet started
+// Every level is the same size, so any level is found without reading the ones before it.
+class LevelPack {
+  // "FLPK"
+  static final int MAGIC = 0x464C504B;
+  static final int VERSION = 1;
+  // the bytes before the first level, and before the save of each level
+  static final int HEADER_SIZE = 24;
+  static final int LEVEL_HEADER_SIZE = 16;
+
+  // the whole file
+  ByteBuffer buffer;
+  // The number of cells in each row or column
+  int boardSize;
+  // Number of colors in the game
+  int numOfColors;
+  // the number of levels, and the bytes of each
+  int count;
+  int levelSize;
+
+  LevelPack(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a level pack");
+    }
+    int version = buffer.getShort(4);
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported pack version " + version);
+    }
+    this.boardSize = buffer.getInt(8);
+    this.numOfColors = buffer.getInt(12);
+    this.count = buffer.getInt(16);
+    this.levelSize = buffer.getInt(20);
+    if (boardSize < 1 || numOfColors < 1 || numOfColors > GameFile.MAX_COLORS || count < 0
+        || levelSize != LEVEL_HEADER_SIZE + GameFile.saveSize(boardSize, numOfColors)) {
+      throw new IllegalArgumentException("Not a level pack");
+    }
+    if (buffer.capacity() < HEADER_SIZE + (long) count * levelSize) {
+      throw new IllegalArgumentException("The pack is cut short");
+    }
+    if (count == 0) {
+      throw new IllegalArgumentException("The pack has no levels");
+    }
+  }
+
+  // maps the given pack into memory and reads its header; the levels are only read when
+  // they are asked for
+  static LevelPack open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new LevelPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  // returns the position of the level at the given index in the file
+  int offsetOf(int index) {
+    if (index < 0 || index >= count) {
+      throw new IllegalArgumentException("No level " + index + " in the pack");
+    }
+    return HEADER_SIZE + index * levelSize;
+  }
+
+  // returns the seed of the level at the given index
+  long seedAt(int index) {
+    return buffer.getLong(this.offsetOf(index));
+  }
+
+  // returns the moves the level at the given index needs
+  int movesAt(int index) {
+    return buffer.getInt(this.offsetOf(index) + 8);
+  }
+
+  // returns the level at the given index as a save, read straight from the pack
+  SavedGame get(int index) {
+    return new SavedGame(buffer.slice(this.offsetOf(index) + LEVEL_HEADER_SIZE,
+        levelSize - LEVEL_HEADER_SIZE));
+  }
+}
+
+// Picks moves for a board, working on its RegionGraph: the components (connected cells of
+// one color) and the components next to each other. A position is the set of components
+// flooded so far, as a bitset, starting from the ones the graph has flooded. Flooding
+// with a color adds the neighbouring components of that color.
+// - greedy: the move that absorbs the most cells
+// - exact: the fewest moves that win, by IDA* with an admissible lower bound, and a
+//   transposition table of the positions already found to need more moves
+// - beam: a good sequence of moves for boards too big for the exact search
+class FloodItSolver {
+  // the regions of the board being solved
+  RegionGraph graph;
+  // Number of colors in the game
+  int numOfColors;
+  // the component of each cell, and the number of components
+  int[] component;
+  int components;
+  // the palette index and number of cells of each component
+  int[] componentColor;
+  int[] componentSize;
+  // the neighbours of component c are adjacency[adjacencyStart[c]] up to, but not
+  // including, adjacency[adjacencyStart[c + 1]]
+  int[] adjacencyStart;
+  int[] adjacency;
+  // the number of longs in a position
+  int words;
+  // scratch work queue of component indices, and the distances for the lower bound
+  int[] queue;
+  int[] distance;
+  // scratch flags for the colors seen by the lower bound
+  boolean[] seenColor;
+  // scratch marks of the components a walk has seen: a component is seen if its mark is
+  // the stamp of the walk, so nothing has to be cleared between walks
+  int[] mark;
+  int stamp;
+  // the neighbours of component c as a bitset, at neighbourBits[c * words] on, and the
+  // components of each color as a bitset; made by the exact search when there are few
+  // enough components for them, and null otherwise
+  long[] neighbourBits;
+  long[][] colorBits;
+  // scratch bitsets of the components a walk has seen, the ones at the current distance,
+  // and the ones at the next
+  long[] bitsSeen;
+  long[] bitsLevel;
+  long[] bitsNext;
+  // scratch distances of the farthest component of each color, and the number of colors
+  // that are farthest at each distance
+  int[] farthest;
+  int[] colorsAt;
+  // the number of positions the last search looked at
+  long nodes;
+  // the most positions a search looks at before giving up
+  long maxNodes;
+  // the moves of the solution being built by the exact search, and if each was the only
+  // move tried because it clears a color
+  int[] path;
+  boolean[] forced;
+  // the position after each move of the exact search, and its Zobrist hash
+  long[][] positions;
+  long[] hashAt;
+  // the number of components the last expand added, at the front of the queue
+  int absorbed;
+  // the fewest moves known to be needed from positions the exact search has seen
+  TranspositionTable table;
+  // the number of entries of the table
+  int tableSize;
+  // the most components the exact search makes bitsets for, which take
+  // components * components / 8 bytes
+  int maxBitsetComponents;
+  // the gain of each color, and the cells of each color left, after each move of the
+  // exact search
+  int[][] gainAt;
+  int[][] leftAt;
+  // the components next to the position after each move of the exact search, and how
+  // many there are; each move only adds the neighbours of the components it absorbs
+  int[][] frontierAt;
+  int[] frontierSizeAt;
+  // the colors tried from the position after each move of the exact search
+  boolean[][] triedAt;
+
+  // the solver only reads the graph, so the game can go on with it afterwards
+  FloodItSolver(RegionGraph graph, int numOfColors) {
+    this.graph = graph;
+    this.numOfColors = numOfColors;
+    this.component = graph.component;
+    this.components = graph.components;
+    this.componentColor = graph.componentColor;
+    this.componentSize = graph.componentSize;
+    this.adjacencyStart = graph.adjacencyStart;
+    this.adjacency = graph.adjacency;
+    this.words = (components + 63) / 64;
+    this.queue = new int[components];
+    this.distance = new int[components];
+    this.seenColor = new boolean[numOfColors];
+    this.mark = new int[components];
+    this.maxNodes = 5000000;
+    this.tableSize = 1 << 20;
+    this.maxBitsetComponents = 4096;
+  }
+
+  // returns the position of the components the graph has flooded so far
+  long[] start() {
+    return Arrays.copyOf(graph.flooded, words);
+  }
+
+  // determines if the given component is flooded in the given position
+  static boolean contains(long[] position, int c) {
+    return (position[c >> 6] & (1L << c)) != 0;
+  }
+
+  // returns the number of cells flooded in the given position
+  int size(long[] position) {
+    int size = 0;
+    for (int word = 0; word < words; word++) {
+      long bits = position[word];
+      while (bits != 0) {
+        size += componentSize[(word << 6) + Long.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+      }
+    }
+    return size;
+  }
+
+  // determines if every component is flooded in the given position
+  boolean isSolved(long[] position) {
+    int flooded = 0;
+    for (long word : position) {
+      flooded += Long.bitCount(word);
+    }
+    return flooded == components;
+  }
+
+  // floods the given position with the given color, and returns how many cells were added
+  int expand(long[] position, int colorIndex) {
+    int tail = 0;
+    for (int word = 0; word < words; word++) {
+      long bits = position[word];
+      while (bits != 0) {
+        int c = (word << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        for (int i = adjacencyStart[c]; i < adjacencyStart[c + 1]; i++) {
+          int next = adjacency[i];
+          if (componentColor[next] == colorIndex && !contains(position, next)) {
+            queue[tail++] = next;
+            position[next >> 6] |= 1L << next;
+          }
+        }
+      }
+    }
+    this.absorbed = tail;
+    int added = 0;
+    for (int i = 0; i < tail; i++) {
+      added += componentSize[queue[i]];
+    }
+    return added;
+  }
+
+  // fills in the components next to the given position that are not in it, and returns
+  // how many there are
+  int frontier(long[] position, int[] frontier) {
+    stamp++;
+    int size = 0;
+    for (int word = 0; word < words; word++) {
+      long bits = position[word];
+      while (bits != 0) {
+        int c = (word << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        for (int i = adjacencyStart[c]; i < adjacencyStart[c + 1]; i++) {
+          int next = adjacency[i];
+          if (mark[next] != stamp && !contains(position, next)) {
+            mark[next] = stamp;
+            frontier[size++] = next;
+          }
+        }
+      }
+    }
+    return size;
+  }
+
+  // fills in how many cells each color would absorb from the given position
+  void gains(long[] position, int[] gain) {
+    this.gains(queue, this.frontier(position, queue), gain);
+  }
+
+  // fills in how many cells each color would absorb from a position with the given
+  // number of components next to it
+  void gains(int[] frontier, int size, int[] gain) {
+    Arrays.fill(gain, 0);
+    for (int i = 0; i < size; i++) {
+      gain[componentColor[frontier[i]]] += componentSize[frontier[i]];
+    }
+  }
+
+  // fills in how many cells of each color are outside the given position
+  void remaining(long[] position, int[] left) {
+    Arrays.fill(left, 0);
+    for (int c = 0; c < components; c++) {
+      if (!contains(position, c)) {
+        left[componentColor[c]] += componentSize[c];
+      }
+    }
+  }
+
+  // returns a lower bound on the moves needed to win from the given position
+  int lowerBound(long[] position) {
+    return this.lowerBound(queue, this.frontier(position, queue), position);
+  }
+
+  // returns a lower bound on the moves needed to win from the given position, with the
+  // given number of components next to it. A move brings every component at most one
+  // step closer, so after d - 1 moves nothing at distance d or more has been flooded,
+  // and each color left out there still needs a move of its own: the bound is the most,
+  // over every d, of d - 1 plus the number of colors at distance d or more. The walk
+  // starts from the components next to the position, so it never looks at the flooded
+  // ones, which are most of the board late in a search.
+  int lowerBound(int[] frontier, int size, long[] position) {
+    stamp++;
+    for (int i = 0; i < size; i++) {
+      int c = frontier[i];
+      mark[c] = stamp;
+      distance[c] = 1;
+      queue[i] = c;
+    }
+    int tail = size;
+    for (int head = 0; head < tail; head++) {
+      int c = queue[head];
+      for (int i = adjacencyStart[c]; i < adjacencyStart[c + 1]; i++) {
+        int next = adjacency[i];
+        if (mark[next] != stamp && !contains(position, next)) {
+          mark[next] = stamp;
+          distance[next] = distance[c] + 1;
+          queue[tail++] = next;
+        }
+      }
+    }
+    // the queue holds the components in order of distance, so walking it backwards
+    // gathers the colors at distance d or more
+    Arrays.fill(seenColor, false);
+    int colors = 0;
+    int bound = 0;
+    for (int i = tail - 1; i >= 0; i--) {
+      int c = queue[i];
+      if (!seenColor[componentColor[c]]) {
+        seenColor[componentColor[c]] = true;
+        colors++;
+      }
+      if (i == 0 || distance[queue[i - 1]] != distance[c]) {
+        bound = Math.max(bound, distance[c] - 1 + colors);
+      }
+    }
+    return bound;
+  }
+
+  // makes the bitsets of the neighbours of every component and of the components of
+  // every color
+  void makeBitsets() {
+    this.neighbourBits = new long[components * words];
+    this.colorBits = new long[numOfColors][words];
+    for (int c = 0; c < components; c++) {
+      colorBits[componentColor[c]][c >> 6] |= 1L << c;
+      for (int i = adjacencyStart[c]; i < adjacencyStart[c + 1]; i++) {
+        neighbourBits[c * words + (adjacency[i] >> 6)] |= 1L << adjacency[i];
+      }
+    }
+    this.bitsSeen = new long[words];
+    this.bitsLevel = new long[words];
+    this.bitsNext = new long[words];
+    this.farthest = new int[numOfColors];
+    this.colorsAt = new int[components + 2];
+  }
+
+  // returns the same bound as lowerBound, walking the board a whole distance at a time:
+  // the components at each distance are a bitset, the next distance is the union of
+  // their neighbours, and the colors at a distance are the colors whose bitset meets it.
+  // This needs the bitsets of makeBitsets, and takes a few word operations for each
+  // component where lowerBound takes a branch for each edge.
+  int lowerBoundBits(int[] frontier, int size, long[] position) {
+    long[] seen = bitsSeen;
+    long[] level = bitsLevel;
+    long[] next = bitsNext;
+    System.arraycopy(position, 0, seen, 0, words);
+    Arrays.fill(level, 0);
+    for (int i = 0; i < size; i++) {
+      int c = frontier[i];
+      level[c >> 6] |= 1L << c;
+      seen[c >> 6] |= 1L << c;
+    }
+    Arrays.fill(farthest, 0);
+    int d = 1;
+    boolean more = size > 0;
+    while (more) {
+      for (int color = 0; color < numOfColors; color++) {
+        long[] ofColor = colorBits[color];
+        for (int w = 0; w < words; w++) {
+          if ((level[w] & ofColor[w]) != 0) {
+            farthest[color] = d;
+            break;
+          }
+        }
+      }
+      Arrays.fill(next, 0);
+      for (int w = 0; w < words; w++) {
+        long bits = level[w];
+        while (bits != 0) {
+          int from = ((w << 6) + Long.numberOfTrailingZeros(bits)) * words;
+          bits &= bits - 1;
+          for (int v = 0; v < words; v++) {
+            next[v] |= neighbourBits[from + v];
+          }
+        }
+      }
+      more = false;
+      for (int w = 0; w < words; w++) {
+        next[w] &= ~seen[w];
+        seen[w] |= next[w];
+        more |= next[w] != 0;
+      }
+      long[] swap = level;
+      level = next;
+      next = swap;
+      d++;
+    }
+    // the colors at distance d or more are those whose farthest component is that far
+    Arrays.fill(colorsAt, 0, d + 1, 0);
+    for (int color = 0; color < numOfColors; color++) {
+      colorsAt[farthest[color]]++;
+    }
+    int colors = 0;
+    int bound = 0;
+    for (int far = d; far >= 1; far--) {
+      colors += colorsAt[far];
+      if (colorsAt[far] > 0) {
+        bound = Math.max(bound, far - 1 + colors);
+      }
+    }
+    return bound;
+  }
+
+  // returns the color that absorbs the most cells, preferring a color that finishes off
+  // every remaining cell of its color, or -1 if the board is already flooded
+  public int greedyMove() {
+    long[] position = this.start();
+    int[] gain = new int[numOfColors];
+    int[] left = new int[numOfColors];
+    this.gains(position, gain);
+    this.remaining(position, left);
+    int best = -1;
+    for (int c = 0; c < numOfColors; c++) {
+      if (gain[c] > 0) {
+        // clearing a color from the board is never a wasted move
+        if (gain[c] == left[c]) {
+          return c;
+        }
+        if (best == -1 || gain[c] > gain[best]) {
+          best = c;
+        }
+      }
+    }
+    return best;
+  }
+
+  // returns the fewest moves that win, or null if the search looked at more than maxNodes
+  // positions first
+  public int[] solveExact() {
+    long[] start = this.start();
+    this.nodes = 0;
+    int bound = this.lowerBound(start);
+    this.path = new int[components];
+    this.forced = new boolean[components];
+    this.positions = new long[components + 1][];
+    this.positions[0] = start;
+    this.hashAt = new long[components + 1];
+    this.hashAt[0] = graph.hash;
+    // the table is only made for an exact search, which is the only one that needs it
+    if (table == null) {
+      this.table = new TranspositionTable(tableSize);
+    }
+    this.table.clear();
+    this.gainAt = new int[components + 1][numOfColors];
+    this.leftAt = new int[components + 1][numOfColors];
+    this.triedAt = new boolean[components + 1][numOfColors];
+    this.remaining(start, leftAt[0]);
+    if (components <= maxBitsetComponents && neighbourBits == null) {
+      this.makeBitsets();
+    }
+    // the frontier of a depth is only made once the search gets that deep
+    this.frontierAt = new int[components + 1][];
+    this.frontierSizeAt = new int[components + 1];
+    this.frontierAt[0] = new int[components];
+    this.frontierSizeAt[0] = this.frontier(start, frontierAt[0]);
+    while (true) {
+      int next = this.search(0, bound);
+      if (next == -1) {
+        return Arrays.copyOf(path, bound);
+      }
+      if (next == Integer.MAX_VALUE || nodes > maxNodes) {
+        return null;
+      }
+      bound = next;
+    }
+  }
+
+  // looks for a win within the bound from the position after the given number of moves,
+  // and returns -1 if one was found, or otherwise the smallest bound beyond this one.
+  // When there is none, the position needs more than bound - depth moves (or a shorter
+  // path to it would win within the bound), so the table remembers that and the search
+  // stops at once when it meets the position again no sooner
+  int search(int depth, int bound) {
+    long[] position = positions[depth];
+    if (this.isSolved(position)) {
+      return -1;
+    }
+    nodes++;
+    long hash = hashAt[depth];
+    int known = table.get(hash, -1);
+    if (known == -1) {
+      // the table keeps the lower bound of every position it has seen, so that the bound
+      // is only worked out once however many iterations meet the position
+      known = neighbourBits != null
+          ? this.lowerBoundBits(frontierAt[depth], frontierSizeAt[depth], position)
+          : this.lowerBound(frontierAt[depth], frontierSizeAt[depth], position);
+      table.put(hash, known);
+    }
+    int estimate = depth + known;
+    if (estimate > bound) {
+      return estimate;
+    }
+    if (nodes > maxNodes) {
+      return Integer.MAX_VALUE;
+    }
+    int result = this.searchMoves(depth, bound);
+    if (result != -1 && nodes <= maxNodes) {
+      table.put(hash, bound + 1 - depth);
+    }
+    return result;
+  }
+
+  // tries the moves from the position after the given number of moves, and returns -1 if
+  // one of them wins within the bound, or otherwise the smallest bound beyond this one
+  int searchMoves(int depth, int bound) {
+    long[] position = positions[depth];
+    int[] gain = gainAt[depth];
+    int[] left = leftAt[depth];
+    this.gains(frontierAt[depth], frontierSizeAt[depth], gain);
+    // a move that clears a color is always part of some shortest win
+    for (int c = 0; c < numOfColors; c++) {
+      if (gain[c] > 0 && gain[c] == left[c]) {
+        forced[depth] = true;
+        return this.tryMove(depth, c, bound);
+      }
+    }
+    forced[depth] = false;
+    // tries the moves that absorb the most cells first
+    int smallest = Integer.MAX_VALUE;
+    boolean[] tried = triedAt[depth];
+    Arrays.fill(tried, false);
+    while (true) {
+      int best = -1;
+      for (int c = 0; c < numOfColors; c++) {
+        if (!tried[c] && gain[c] > 0 && !this.alreadyTried(depth, c)
+            && (best == -1 || gain[c] > gain[best])) {
+          best = c;
+        }
+      }
+      if (best == -1) {
+        return smallest;
+      }
+      tried[best] = true;
+      int result = this.tryMove(depth, best, bound);
+      if (result == -1) {
+        return -1;
+      }
+      smallest = Math.min(smallest, result);
+    }
+  }
+
+  // determines if flooding with the given color after the given number of moves only
+  // repeats a position already searched: if the color would absorb the same cells before
+  // the last move, then making it first and the last move second floods at least as much,
+  // and that order was searched if the color comes before the last move, unless the last
+  // move was the only one tried
+  boolean alreadyTried(int depth, int colorIndex) {
+    return depth > 0 && !forced[depth - 1] && colorIndex < path[depth - 1]
+        && gainAt[depth - 1][colorIndex] == gainAt[depth][colorIndex];
+  }
+
+  // makes the given move after the given number of moves and searches on from there.
+  // The move absorbs the components of its color next to the position; the components
+  // next to the new position are the others that were next to it, and the neighbours of
+  // the ones absorbed that are not flooded.
+  int tryMove(int depth, int colorIndex, int bound) {
+    if (positions[depth + 1] == null) {
+      positions[depth + 1] = new long[words];
+      frontierAt[depth + 1] = new int[components];
+    }
+    long[] position = positions[depth + 1];
+    System.arraycopy(positions[depth], 0, position, 0, words);
+    int[] frontier = frontierAt[depth];
+    int size = frontierSizeAt[depth];
+    int[] next = frontierAt[depth + 1];
+    int nextSize = 0;
+    // the cells left of each color only lose the ones absorbed
+    int[] left = leftAt[depth + 1];
+    System.arraycopy(leftAt[depth], 0, left, 0, numOfColors);
+    long hash = hashAt[depth];
+    int tail = 0;
+    stamp++;
+    for (int i = 0; i < size; i++) {
+      int c = frontier[i];
+      if (componentColor[c] == colorIndex) {
+        position[c >> 6] |= 1L << c;
+        queue[tail++] = c;
+        hash ^= Zobrist.regionKey(c);
+        left[colorIndex] -= componentSize[c];
+      }
+      else {
+        mark[c] = stamp;
+        next[nextSize++] = c;
+      }
+    }
+    for (int k = 0; k < tail; k++) {
+      int c = queue[k];
+      for (int i = adjacencyStart[c]; i < adjacencyStart[c + 1]; i++) {
+        int neighbour = adjacency[i];
+        if (mark[neighbour] != stamp && !contains(position, neighbour)) {
+          mark[neighbour] = stamp;
+          next[nextSize++] = neighbour;
+        }
+      }
     }
+    frontierSizeAt[depth + 1] = nextSize;
+    hashAt[depth + 1] = hash;
+    path[depth] = colorIndex;
+    return this.search(depth + 1, bound);
   }
 
-  public boolean cellClicked(Posn p) {
-    int halfSize = this.cellSize / 2;
-    return p.x > this.x - halfSize 
-        && p.x < this.x + halfSize 
-        && p.y > this.y - halfSize 
-        && p.y < this.y + halfSize;
+  // returns the fewest moves that win if the exact search finishes, or otherwise the
+  // moves of a beam search of the given width; a fair number of turns for the board
+  public int movesNeeded(int width) {
+    int[] exact = this.solveExact();
+    if (exact != null) {
+      return exact.length;
+    }
+    return this.solveBeam(width).length;
   }
 
-  public WorldImage drawGrid() {
-    return new BesideImage(this.drawColumn(), this.right.drawGrid());
+  // returns a sequence of moves that wins, keeping only the given number of most
+  // promising positions after each move
+  public int[] solveBeam(int width) {
+    return this.solveBeam(width, Long.MAX_VALUE);
   }
 
-  public WorldImage drawColumn() {
-    return new AboveImage(this.drawCell(), this.bottom.drawColumn());
+  // returns the moves solveBeam(width) returns, or null once the search has made more
+  // than the given number of positions
+  public int[] solveBeam(int width, long maxNodes) {
+    ArrayList<BeamNode> beam = new ArrayList<BeamNode>();
+    long[] start = this.start();
+    beam.add(new BeamNode(start, new int[0], this.size(start)));
+    int[] gain = new int[numOfColors];
+    this.nodes = 0;
+    while (true) {
+      ArrayList<BeamNode> next = new ArrayList<BeamNode>();
+      for (BeamNode node : beam) {
+        if (this.isSolved(node.position)) {
+          return node.moves;
+        }
+        this.gains(node.position, gain);
+        for (int c = 0; c < numOfColors; c++) {
+          if (gain[c] > 0) {
+            long[] position = Arrays.copyOf(node.position, words);
+            this.expand(position, c);
+            int[] moves = Arrays.copyOf(node.moves, node.moves.length + 1);
+            moves[node.moves.length] = c;
+            next.add(new BeamNode(position, moves, node.size + gain[c]));
+            nodes++;
+          }
+        }
+        if (nodes > maxNodes) {
+          return null;
+        }
+      }
+      // keeps the largest regions, with the lower bound breaking ties
+      for (BeamNode node : next) {
+        node.score = (long) node.size * components - this.lowerBound(node.position);
+      }
+      next.sort((a, b) -> Long.compare(b.score, a.score));
+      beam = new ArrayList<BeamNode>(next.subList(0, Math.min(width, next.size())));
+    }
   }
+}
 
-  public Color getColor() {
-    return this.color;
+// A fixed number of entries mapping 64-bit hashes to ints, found in O(1). Each hash can
+// only go in one bucket of a few entries; when the bucket is full, the entry used least
+// recently is evicted, so the table never grows however long a search runs
+class TranspositionTable {
+  // the number of entries in a bucket
+  static final int WAYS = 4;
+  // the hash, value, and time of last use of each entry; a time of 0 is an empty entry
+  long[] keys;
+  int[] values;
+  long[] used;
+  // the number of buckets minus one; the number of buckets is a power of two
+  int mask;
+  // counts every get and put, to order the uses of entries
+  long clock;
+  // the number of entries in use
+  int size;
+  // statistics of the gets and puts since the table was cleared
+  long hits;
+  long misses;
+  long evictions;
+
+  // makes a table with room for at least the given number of entries
+  TranspositionTable(int capacity) {
+    int buckets = 1;
+    while (buckets * WAYS < capacity) {
+      buckets *= 2;
+    }
+    this.mask = buckets - 1;
+    this.keys = new long[buckets * WAYS];
+    this.values = new int[buckets * WAYS];
+    this.used = new long[buckets * WAYS];
   }
 
-  public boolean colorEquals(Color other) {
-    return this.color.getBlue() == other.getBlue()
-        && this.color.getRed() == other.getRed()
-        && this.color.getGreen() == other.getGreen();
+  // returns the first entry of the bucket of the given hash
+  int bucket(long key) {
+    return ((int) (key ^ (key >>> 32)) & mask) * WAYS;
   }
 
-  public ArrayList<Cell> flood(Color originalColor) {
-    this.floodHelp(originalColor, filled);
-    return filled;
+  // returns the value of the given hash, or the given default if it is not in the table
+  int get(long key, int missing) {
+    int first = this.bucket(key);
+    for (int i = first; i < first + WAYS; i++) {
+      if (used[i] != 0 && keys[i] == key) {
+        used[i] = ++clock;
+        hits++;
+        return values[i];
+      }
+    }
+    misses++;
+    return missing;
   }
 
-  public void floodHelp(Color originalColor, ArrayList<Cell> list) {
-    list.add(this);
-    if (this.right.colorEquals(originalColor) && !list.contains(right)) {
-      this.right.floodHelp(originalColor, list);
-    }
-    if (this.bottom.colorEquals(originalColor) && !list.contains(bottom)) {
-      this.bottom.floodHelp(originalColor, list);
+  // sets the value of the given hash, evicting the least recently used entry of its
+  // bucket if the bucket is full
+  void put(long key, int value) {
+    int first = this.bucket(key);
+    int victim = first;
+    for (int i = first; i < first + WAYS; i++) {
+      if (used[i] != 0 && keys[i] == key) {
+        victim = i;
+        break;
+      }
+      if (used[i] < used[victim]) {
+        victim = i;
+      }
     }
-    if (this.top.colorEquals(originalColor) && !list.contains(top)) {
-      this.top.floodHelp(originalColor, list);
+    if (used[victim] == 0) {
+      size++;
     }
-    if (this.left.colorEquals(originalColor) && !list.contains(left)) {
-      this.left.floodHelp(originalColor, list);
+    else if (keys[victim] != key) {
+      evictions++;
     }
+    keys[victim] = key;
+    values[victim] = value;
+    used[victim] = ++clock;
+  }
+
+  // removes every entry
+  void clear() {
+    Arrays.fill(used, 0);
+    this.clock = 0;
+    this.size = 0;
+    this.hits = 0;
+    this.misses = 0;
+    this.evictions = 0;
+  }
+}
+
+// A position kept by the beam search, with the moves that reached it
+class BeamNode {
+  long[] position;
+  int[] moves;
+  // the number of cells flooded
+  int size;
+  // how promising the position is; bigger is better
+  long score;
+
+  BeamNode(long[] position, int[] moves, int size) {
+    this.position = position;
+    this.moves = moves;
+    this.size = size;
   }
 }
 
 // Represents the game Flood
 class FloodItWorld extends World {
+  // the most seconds the animation moves forward in one tick, so that a stall finishes
+  // at most part of a flood at once
+  static final double MAX_STEP = 0.1;
+  // the positions the beam search of a hint keeps after each move
+  static final int HINT_BEAM_WIDTH = 8;
+  // the most positions times components the beam search of a hint makes, a fifth of a
+  // second or so; each position costs a pass over the components to score. Boards that
+  // need more get the greedy move instead
+  static final long HINT_MAX_WORK = 4000000;
+  // the least width and height of the window, which small boards leave room in
+  static final int MIN_WINDOW_SIZE = 600;
   // the amount of times board gets updated per second
   int fps;
-  // number of turns the player has left
-  int turnsLeft;
+  // if the animation moves forward by exactly 1 / fps each tick, as it does in tests,
+  // instead of by the time measured since the last tick
+  boolean fixedStep;
+  // the nanoTime of the last tick, or -1 before the first
+  long lastTick;
   // The current state of the game
   String gameState;
-  // All the cells of the game
+  // the board, turns, and flooded region of the game being played
+  FloodItGame game;
+  // All the cells of the game, kept in step with game.grid; left empty for boards bigger
+  // than utils.maxViewSize
   ArrayList<ArrayList<Cell>> board;
   // Colors used on the board
-  ArrayList<Color> colors;
+  Palette palette;
   // The resolution of the board
   int dimension;
   // Number of colors in the game
@@ -220,37 +3217,83 @@ class FloodItWorld extends World {
   Color floodColor;
   // the top left cell that is the starting point of the flood
   Cell origin;
+  // the part of the board on the screen
+  Viewport view;
   // the x and y value for the center of the canvas
   int middleCanvas;
-  // keeps track of the time
-  double timer;
   // the scene
   WorldScene scene;
   // random for testing
   Random rand;
   // utils class 
   Utils utils = new Utils();
-  // cells that are flooded
-  ArrayList<Cell> flooded;
+  // recolors the cells of the region, in the order they were absorbed, as a flood animates
+  FloodAnimation animation;
+  // draws the board
+  BoardRenderer renderer;
+  // the parts of the scene that are out of date
+  SceneChanges changes;
   // if the board has been generated
   boolean boardMade;
   // keeps track of time elapsed
   double stopwatch;
+  // the number of ticks since the game started
+  long ticks;
+  // the moves of the game being played
+  MoveLog log;
+  // the moves that can be undone and redone
+  MoveHistory history;
+  // draws the seed of each new game, so that any game can be made again from its seed;
+  // null if the world was given its own random
+  Random seeds;
+  // if the game being played was made from a seed, as seededGame makes it, and the seed
+  boolean seeded;
+  long seed;
+  // times the phases of the game loop, if turned on
+  Metrics metrics;
+  // the pool the regions of boards too big for Cells are labeled on by tiles, or null
+  // to label them on this thread
+  ForkJoinPool labelPool;
+  // the levels new games are read from, in order, or null to make new boards
+  LevelPack pack;
+  // the level of the pack the next game starts with
+  int nextLevel;
+  // the palette index the hint suggests flooding with, or -1 if no hint is shown
+  int hint;
 
 
   // Constructor that sets the resolution & number of colors of the game
   FloodItWorld(int boardSize, int numOfColors, int fps) {
     this.rand = new Random();
+    this.seeds = new Random();
     this.fps = fps;
     this.gameState = "stagnant";
     this.boardSize = boardSize;
     this.numOfColors = numOfColors;
     this.cellSize = utils.cellSize;
-    this.dimension = boardSize * cellSize;
+    this.dimension = Math.min(boardSize * cellSize, utils.maxScreenSize);
     this.middleCanvas = (this.dimension / 2);
-    this.flooded = new ArrayList<Cell>();
+    this.view = new Viewport(cellSize, dimension, dimension);
+    this.changes = new SceneChanges();
+    this.animation = new FloodAnimation(2.0 / fps, 1.0);
+    this.fixedStep = false;
+    this.lastTick = -1;
     this.boardMade = false;
-    this.turnsLeft = boardSize * numOfColors / 2;
+    this.hint = -1;
+    this.metrics = Metrics.fromProperties(System.getProperties());
+    this.labelPool = FloodItWorld.labelPool(System.getProperties());
+  }
+
+  // Constructor that makes every game from seeds drawn from the given seed
+  FloodItWorld(long seed, int boardSize, int numOfColors, int fps) {
+    this(boardSize, numOfColors, fps);
+    this.seeds = new Random(seed);
+  }
+
+  // Constructor that plays the levels of the given pack, starting over after the last
+  FloodItWorld(LevelPack pack, int fps) {
+    this(pack.boardSize, pack.numOfColors, fps);
+    this.pack = pack;
   }
 
   //Constructor that sets the resolution & number of colors of the game, for testing
@@ -261,42 +3304,82 @@ class FloodItWorld extends World {
     this.boardSize = boardSize;
     this.numOfColors = numOfColors;
     this.cellSize = utils.cellSize;
-    this.dimension = boardSize * cellSize;
+    this.dimension = Math.min(boardSize * cellSize, utils.maxScreenSize);
     this.middleCanvas = (this.dimension / 2);
-    this.colors = new ArrayList<Color>(numOfColors);
-    this.flooded = new ArrayList<Cell>();
+    this.view = new Viewport(cellSize, dimension, dimension);
+    this.changes = new SceneChanges();
+    this.animation = new FloodAnimation(2.0 / fps, 1.0);
+    this.fixedStep = true;
+    this.lastTick = -1;
+    this.hint = -1;
+    this.palette = new Palette();
     this.board = new ArrayList<ArrayList<Cell>>(boardSize);
-    this.turnsLeft = boardSize * numOfColors / 2;
+    this.metrics = new Metrics();
+  }
+
+  // returns the width of the window that shows all of the view
+  int windowWidth() {
+    return Math.max(MIN_WINDOW_SIZE, dimension);
+  }
+
+  // returns the height of the window that shows all of the view, and the turns, time,
+  // and hint below it
+  int windowHeight() {
+    return Math.max(MIN_WINDOW_SIZE, dimension + cellSize * 4);
   }
 
-  // returns the scene
+  // returns the scene, timing how long it takes to make
   public WorldScene makeScene() {
+    long start = metrics.start();
+    WorldScene made = this.drawScene();
+    metrics.stop(Metrics.SCENE, start);
+    metrics.frame();
+    return made;
+  }
+
+  // returns the scene, rebuilding only the parts that are out of date
+  public WorldScene drawScene() {
     if (!boardMade) {
       this.resetBoard();
       boardMade = true;
     }
+    if (changes.board) {
+      this.renderer.draw();
+    }
+    if (!changes.needsRebuild()) {
+      changes.skipped++;
+      changes.clear();
+      return scene;
+    }
+    changes.rebuilt++;
+    changes.clear();
     scene = new WorldScene(dimension, dimension);
     // winning screen
     if (gameState.equals("won")) {
       scene.placeImageXY(new OverlayImage(
-          new TextImage("You won! Press 'R'!", boardSize * 3, Color.black),
+          new TextImage("You won! Press 'R'!", dimension / cellSize * 3, Color.black),
           new RectangleImage(dimension, dimension, OutlineMode.SOLID, Color.green)), 
           middleCanvas, middleCanvas);  
     }
     // losing screen
     else if (gameState.equals("lost")) {
       scene.placeImageXY(new OverlayImage(
-          new TextImage("You Lost. Press 'R'!",  boardSize * 3, Color.white),
+          new TextImage("You Lost. Press 'R'!",  dimension / cellSize * 3, Color.white),
           new RectangleImage(dimension, dimension, OutlineMode.SOLID, Color.red)), 
           middleCanvas, middleCanvas);    
     }
     else {
       // gameplay screen
-      scene.placeImageXY(new AboveImage(this.origin.drawGrid()), middleCanvas, middleCanvas);
-      scene.placeImageXY(new AboveImage(
-          new TextImage("Turns Left: " + turnsLeft, boardSize * 2, floodColor),
-          new TextImage(this.generateTime(), boardSize * 2, floodColor)), 
-          dimension / 2, dimension + cellSize * 2);
+      scene.placeImageXY(this.renderer.draw(), middleCanvas, middleCanvas);
+      WorldImage hud = new AboveImage(
+          new TextImage("Turns Left: " + game.turnsLeft, dimension / cellSize * 2,
+              floodColor),
+          new TextImage(this.generateTime(), dimension / cellSize * 2, floodColor));
+      if (hint != -1) {
+        hud = new AboveImage(hud,
+            new TextImage("Hint", dimension / cellSize * 2, palette.get(hint)));
+      }
+      scene.placeImageXY(hud, dimension / 2, dimension + cellSize * 2);
     }
     return scene;
   }
@@ -309,19 +3392,36 @@ class FloodItWorld extends World {
     return "Time elapsed: " + (Math.round(stopwatch) / 60) + ":" + (Math.round(stopwatch) % 60);
   }
 
+  // returns a new game with a board of random colors. Boards small enough for Cells take
+  // their colors straight from rand, so a seeded world always has the same board; bigger
+  // ones are filled in parallel from a seed drawn from rand, and labeled on labelPool
+  public FloodItGame newGame() {
+    if (boardSize <= utils.maxViewSize) {
+      return new FloodItGame(boardSize, palette.size(), rand);
+    }
+    return new FloodItGame(boardSize, palette.size(), 
+        new BoardGenerator(rand.nextLong(), palette.size()), labelPool);
+  }
+
   // creates all the cells and their linked relationships
   public void generateBoard() {  
-    // creates a grid of all the cells
+    this.game = this.newGame();
+    this.log = this.newLog();
+    this.history = new MoveHistory();
+    this.floodColor = palette.get(game.floodColorIndex);
+    if (boardSize <= utils.maxViewSize) {
+      this.makeCells();
+    }
+  }
+
+  // creates a grid of all the cells, with the colors of the game's board
+  void makeCells() {
     for (int col = 0; col < boardSize; col++) {
       board.add(new ArrayList<Cell>());
       for (int row = 0; row < boardSize; row++) {
-        Color randCol = colors.get(rand.nextInt(colors.size()));
-        if (col == 0 && row == 0) {
-          this.floodColor = randCol;
-        }
         board.get(col).add(new Cell(cellSize * col + (cellSize / 2), 
             cellSize * row + (cellSize / 2), 
-            randCol));
+            game.grid, game.grid.index(col, row), palette));
       }
     }
   }
@@ -329,102 +3429,316 @@ class FloodItWorld extends World {
   // links all the cells in a board together
   public void linkBoard() {
     // sets the adjacent cells for each cell
-    for (int col = 0; col < boardSize; col++) {
-      for (int row = 0; row < boardSize; row++) {
-        this.board.get(col).get(row).linkBoard(this.board, col, row);
+    if (!this.board.isEmpty()) {
+      for (int col = 0; col < boardSize; col++) {
+        for (int row = 0; row < boardSize; row++) {
+          this.board.get(col).get(row).linkBoard(this.board, col, row);
+        }
       }
+      // sets the origin
+      this.origin = this.board.get(0).get(0);
     }
-    // sets the origin
-    this.origin = this.board.get(0).get(0);
+    this.view.fit(game.grid);
+    this.renderer = new BoardRenderer(this.game.grid, this.palette, this.view);
   }
 
-  // generates a list of random colors of the given length
+  // generates a palette of random colors of the given length, none too close to another
   public void generateColors() {
     for (int i = 0; i < numOfColors; i++) {
-      int red = rand.nextInt(255);
-      int green = rand.nextInt(255);
-      int blue = rand.nextInt(255);
-      colors.add(new Color(red, green, blue));
+      palette.addRandom(rand);
+    }
+  }
+
+  // changes the state of the game, marking the scene as out of date if it is different
+  public void setState(String state) {
+    if (!this.gameState.equals(state)) {
+      this.gameState = state;
+      changes.screen = true;
     }
   }
 
   // responds if the game is in the state of flooding
   public void onTick() {
-    // updates stopwatch
-    this.stopwatch += 1.0 / this.fps;
-    //ticks timer
-    this.timer += .1;
-
-    if (this.turnsLeft == 0) {
-      this.gameState = "lost";
+    double step = this.step(System.nanoTime());
+    long shownTime = Math.round(this.stopwatch);
+    // updates stopwatch by the same step as the animation, so the two keep together
+    this.stopwatch += step;
+    this.ticks++;
+    if (Math.round(this.stopwatch) != shownTime) {
+      changes.hud = true;
     }
 
-    else if (gameState.equals("flooding")) {
-      if (timer >= .2) {
-        if (flooded.isEmpty()) {
-          if (isGameWon()) {
-            gameState = "won";
-          }
-          else {
-            gameState = "stagnant";
-            timer = 0;
-          }
+    if (gameState.equals("flooding")) {
+      // the region is recolored in the order it was absorbed, a batch per tick
+      long start = metrics.start();
+      int from = animation.done;
+      int batch = animation.advance(step);
+      for (int i = from; i < from + batch; i++) {
+        this.setColor(game.regions.regionOrder[i], game.floodColorIndex);
+      }
+      metrics.recolor(batch);
+      metrics.stop(Metrics.ANIMATION, start);
+      // the game is only over once the last flood has been painted, so a game won on
+      // the last turn is won
+      if (animation.finished()) {
+        if (isGameWon()) {
+          this.setState("won");
+        }
+        else if (game.isLost()) {
+          this.setState("lost");
         }
         else {
-          flooded.remove(0).color = floodColor;
-          timer = 0;
+          this.setState("stagnant");
         }
       }
     }
   }
 
+  // returns the seconds the animation moves forward on a tick at the given nanoTime: the
+  // time since the last tick, at most MAX_STEP, or 1 / fps on the first tick and when
+  // the world steps at a fixed rate
+  double step(long now) {
+    long last = this.lastTick;
+    this.lastTick = now;
+    if (fixedStep || last == -1) {
+      return 1.0 / this.fps;
+    }
+    return Math.max(0, Math.min((now - last) / 1e9, MAX_STEP));
+  }
+
   // determines if the player won the game
   public boolean isGameWon() {
-    for (ArrayList<Cell> col : board) {
-      for (Cell c : col) {
-        if (!c.colorEquals(floodColor)) {
-          return false;
-        }
-      }
-    }
-    return true;
+    return game.isWon();
+  }
+
+  // sets the color of the cell at the given index to the color at the given palette index
+  public void setColor(int index, int colorIndex) {
+    game.grid.setColor(index, colorIndex);
+    renderer.changed(index);
+    changes.board = true;
   }
 
   // resets the data on the board
   public void resetBoard() {
-    this.timer = 0;
+    if (pack != null) {
+      // the next level is read from the pack, with nothing to generate or rate, and is
+      // logged from its seed and the turns of its band
+      this.seeded = true;
+      this.seed = pack.seedAt(nextLevel);
+      this.play(pack.get(nextLevel));
+      nextLevel = (nextLevel + 1) % pack.count;
+      return;
+    }
     this.stopwatch = 0;
+    this.ticks = 0;
     this.gameState = "stagnant";
-    this.colors = new ArrayList<Color>(numOfColors);
+    this.hint = -1;
+    this.palette = new Palette();
     this.board = new ArrayList<ArrayList<Cell>>(boardSize);
-    this.turnsLeft = boardSize * numOfColors / 2;
+    this.changes.screen = true;
+    this.seeded = seeds != null;
+    if (seeded) {
+      // the game is made just as seededGame would make it from this seed
+      this.seed = seeds.nextLong();
+      this.rand = new Random(seed);
+    }
     this.generateColors();
     this.generateBoard();
     this.linkBoard();
   }
 
+  // returns a log for the moves of the game being played, which starts from its seed if
+  // it has one instead of from a copy of its board
+  MoveLog newLog() {
+    if (seeded) {
+      // only the levels of a pack have turns of their own
+      return new MoveLog(boardSize, numOfColors, seed, pack == null ? -1 : game.turnsLeft);
+    }
+    return new MoveLog(game);
+  }
+
+  // returns the first game a world seeded with the given seed would make
+  static FloodItGame seededGame(long seed, int boardSize, int numOfColors) {
+    FloodItWorld world = new FloodItWorld(new Random(seed), boardSize, numOfColors, 60);
+    world.generateColors();
+    return world.newGame();
+  }
+
+  // returns the pool the floodit.labeling property asks big boards to be labeled on:
+  // the common pool for "tiles", and null for "serial", the default. Turned on with
+  //   java -Dfloodit.labeling=tiles ...
+  static ForkJoinPool labelPool(Properties properties) {
+    String labeling = properties.getProperty("floodit.labeling", "serial");
+    if (labeling.equals("tiles")) {
+      return ForkJoinPool.commonPool();
+    }
+    if (!labeling.equals("serial")) {
+      throw new IllegalArgumentException("Unknown labeling " + labeling);
+    }
+    return null;
+  }
+
+  // returns the world the game starts with: one playing the levels of the pack named by
+  // the floodit.pack property if it is set, or else one making new boards of the given
+  // size and number of colors
+  static FloodItWorld fromProperties(Properties properties, int boardSize, int numOfColors,
+      int fps) {
+    String pack = properties.getProperty("floodit.pack");
+    if (pack == null) {
+      return new FloodItWorld(boardSize, numOfColors, fps);
+    }
+    try {
+      return new FloodItWorld(LevelPack.open(Paths.get(pack)), fps);
+    }
+    catch (IOException e) {
+      throw new IllegalArgumentException("Cannot open the level pack " + pack);
+    }
+  }
+
+  // writes the game being played to the given file
+  public void save(Path path) throws IOException {
+    GameFile.save(path, game, palette, stopwatch, gameState);
+  }
+
+  // replaces the game being played with the given save
+  public void load(SavedGame saved) {
+    this.seeded = false;
+    this.play(saved);
+  }
+
+  // starts playing the given save, logged from the seed of the world if it is seeded
+  void play(SavedGame saved) {
+    this.boardSize = saved.boardSize;
+    this.numOfColors = saved.numOfColors;
+    this.dimension = Math.min(boardSize * cellSize, utils.maxScreenSize);
+    this.middleCanvas = (this.dimension / 2);
+    this.view = new Viewport(cellSize, dimension, dimension);
+    this.stopwatch = saved.stopwatch;
+    this.gameState = saved.gameState;
+    this.hint = -1;
+    // nothing is left of a flood the last game was animating
+    this.animation.start(0);
+    this.palette = saved.palette;
+    this.game = saved.toGame();
+    this.log = this.newLog();
+    this.history = new MoveHistory();
+    this.ticks = 0;
+    this.floodColor = palette.get(game.floodColorIndex);
+    this.board = new ArrayList<ArrayList<Cell>>(boardSize);
+    if (boardSize <= utils.maxViewSize) {
+      this.makeCells();
+    }
+    this.linkBoard();
+    this.changes.screen = true;
+    this.boardMade = true;
+  }
+
   // checks if the cell clicked is a valid color & sets the state to flooding
   public void onMouseClicked(Posn p) {  
     if (gameState.equals("stagnant")) {
-      for (ArrayList<Cell> col : board) {
-        for (Cell c : col) {
-          if (c.cellClicked(p) && !c.colorEquals(this.origin.color)) {
-            this.turnsLeft--;
-            floodColor = c.color;
-            this.flooded = origin.flood(this.origin.getColor());
-            gameState = "flooding";
-          }
-        }
+      long start = metrics.start();
+      int index = view.cellAt(game.grid, p);
+      metrics.stop(Metrics.HIT_TEST, start);
+      if (index != -1 && game.canMove(game.grid.colorAt(index))) {
+        history.record(new MoveDelta(game, game.grid.colorAt(index)));
+        this.move(game.grid.colorAt(index));
+      }
+    }
+  }
+
+  // starts a flood with the given palette index, which must be a legal move
+  public void move(int colorIndex) {
+    log.record(colorIndex, ticks);
+    FloodMoveEvent event = new FloodMoveEvent();
+    event.begin();
+    long start = metrics.start();
+    int oldRegion = game.startMove(colorIndex);
+    metrics.stop(Metrics.FLOOD, start);
+    metrics.move(game.regions.regionSize - oldRegion);
+    event.colorIndex = colorIndex;
+    event.cellsAbsorbed = game.regions.regionSize - oldRegion;
+    event.regionSize = game.regions.regionSize;
+    event.commit();
+    // the region as it was is recolored as the flood animates
+    this.animation.start(oldRegion);
+    floodColor = palette.get(game.floodColorIndex);
+    hint = -1;
+    changes.hud = true;
+    this.setState("flooding");
+  }
+
+  // takes back the last move, giving the cells it recolored their old color at once;
+  // a flood still animating has to finish first
+  public void undo() {
+    if (!gameState.equals("flooding") && history.canUndo()) {
+      MoveDelta delta = history.undo();
+      log.drop();
+      int toRecolor = game.startUndo(delta);
+      for (int i = 0; i < toRecolor; i++) {
+        this.setColor(game.regions.regionOrder[i], delta.previousColorIndex);
+      }
+      floodColor = palette.get(game.floodColorIndex);
+      hint = -1;
+      changes.hud = true;
+      this.setState("stagnant");
+    }
+  }
+
+  // shows the move the solver suggests: the first move of a beam search, or the move
+  // that absorbs the most cells when the search would take more than HINT_MAX_WORK and
+  // stall the game
+  public void showHint() {
+    if (gameState.equals("stagnant")) {
+      FloodItSolver solver = new FloodItSolver(game.regions, game.numOfColors);
+      int[] moves = solver.solveBeam(HINT_BEAM_WIDTH,
+          HINT_MAX_WORK / game.regions.components);
+      if (moves == null) {
+        this.hint = solver.greedyMove();
       }
+      else {
+        this.hint = moves.length == 0 ? -1 : moves[0];
+      }
+      changes.hud = true;
+    }
+  }
+
+  // makes the last move that was undone again, animating it like any other move
+  public void redo() {
+    if (gameState.equals("stagnant") && history.canRedo()) {
+      this.move(history.redo().colorIndex);
     }
   }
 
+  // the keys that scroll the view up, down, left and right
+  static final List<String> PAN_KEYS = Arrays.asList("up", "down", "left", "right");
+
   // handles if a key gets pressed
   public void onKeyEvent(String e) {
     if (e.equals("r") 
         && (gameState.equals("won") || gameState.equals("lost"))) {
       this.resetBoard();
     }
+    else if (e.equals("z")) {
+      this.undo();
+    }
+    else if (e.equals("y")) {
+      this.redo();
+    }
+    else if (e.equals("h")) {
+      this.showHint();
+    }
+    else if (PAN_KEYS.contains(e)) {
+      // a quarter of the screen at a time
+      int step = dimension / 4;
+      int direction = PAN_KEYS.indexOf(e);
+      view.pan(game.grid, step * ((direction == 3 ? 1 : 0) - (direction == 2 ? 1 : 0)),
+          step * ((direction == 1 ? 1 : 0) - (direction == 0 ? 1 : 0)));
+      changes.board = true;
+    }
+    else if (e.equals("+") || e.equals("=") || e.equals("-")) {
+      view.zoomAt(game.grid, e.equals("-") ? -1 : 1, new Posn(middleCanvas, middleCanvas));
+      changes.board = true;
+    }
   }
 }
 
@@ -446,7 +3760,8 @@ class ExamplesFloodItWorld {
     f4Cell2Color = new FloodItWorld(new Random(10), 2, 2, 60);
 
     // An example Cell
-    cell1 = new Cell(10, 10, new Color(1, 2, 3));
+    cell1 = new Cell(10, 10, new FloodBoard(1), 0, 
+        new Palette(new ArrayList<Color>(Arrays.asList(new Color(1, 2, 3)))));
     // An example EmptyCell
     mtCell = new EmptyCell();
 
@@ -501,6 +3816,232 @@ class ExamplesFloodItWorld {
     t.checkExpect(f4Cell2Color.board.get(0).get(1).cellClicked(new Posn(30, 70)), true);
   }
 
+  // testing cellAt
+  void testCellAt(Tester t) {
+    initData();
+    initBoard();
+
+    Viewport view = f4Cell2Color.view;
+    FloodBoard grid = f4Cell2Color.game.grid;
+    t.checkExpect(view.cellAt(grid, new Posn(20, 20)), 0);
+    t.checkExpect(view.cellAt(grid, new Posn(65, 20)), 1);
+    t.checkExpect(view.cellAt(grid, new Posn(30, 70)), 2);
+    t.checkExpect(view.cellAt(grid, new Posn(79, 79)), 3);
+    // on the line between two cells, like cellClicked
+    t.checkExpect(view.cellAt(grid, new Posn(40, 20)), -1);
+    t.checkExpect(view.cellAt(grid, new Posn(0, 20)), -1);
+    // off the board
+    t.checkExpect(view.cellAt(grid, new Posn(85, 20)), -1);
+    t.checkExpect(view.cellAt(grid, new Posn(20, -5)), -1);
+
+    // agrees with cellClicked for every cell
+    for (int col = 0; col < 2; col++) {
+      for (int row = 0; row < 2; row++) {
+        Posn p = new Posn(col * 40 + 7, row * 40 + 33);
+        t.checkExpect(f4Cell2Color.board.get(col).get(row).cellClicked(p), true);
+        t.checkExpect(view.cellAt(grid, p), grid.index(col, row));
+      }
+    }
+
+    // a scrolled view
+    view.left = 40;
+    t.checkExpect(view.cellAt(grid, new Posn(20, 20)), 1);
+    t.checkExpect(view.cellAt(grid, new Posn(60, 20)), -1);
+  }
+
+  // makes a view, for checkException
+  Viewport makeViewport(int cellSize, int width, int height) {
+    return new Viewport(cellSize, width, height);
+  }
+
+  // testing the zoom levels of Viewport
+  void testViewportZoom(Tester t) {
+    Viewport view = new Viewport(10, 40, 40);
+    t.checkExpect(view.zoom, 3);
+    t.checkExpect(view.blockSize, 1);
+    t.checkException(new IllegalArgumentException("No zoom level with cells of 7 pixels"),
+        this, "makeViewport", 7, 40, 40);
+
+    // zooms out just far enough for the board to fit
+    FloodBoard grid = new FloodBoard(20);
+    t.checkExpect(view.boardPixels(grid), 200);
+    view.fit(grid);
+    t.checkExpect(view.cellSize, 2);
+    t.checkExpect(view.boardPixels(grid), 40);
+    t.checkInexact(view.cellsPerPixel(), 0.5, 0.001);
+
+    // past a pixel per cell, a pixel stands for a block of cells
+    FloodBoard big = new FloodBoard(100);
+    view.fit(big);
+    t.checkExpect(view.zoom, -2);
+    t.checkExpect(view.cellSize, 1);
+    t.checkExpect(view.blockSize, 4);
+    t.checkExpect(view.boardPixels(big), 25);
+    t.checkInexact(view.cellsPerPixel(), 4.0, 0.001);
+  }
+
+  // testing pan and zoomAt
+  void testViewportPan(Tester t) {
+    Viewport view = new Viewport(10, 40, 40);
+    FloodBoard grid = new FloodBoard(20);
+    view.pan(grid, 25, 500);
+    t.checkExpect(view.left, 25);
+    t.checkExpect(view.top, 160);
+    view.pan(grid, -100, 0);
+    t.checkExpect(view.left, 0);
+    view.pan(grid, 25, 0);
+
+    // the cell under the position stays under it
+    t.checkExpect(view.cellAt(grid, new Posn(10, 12)), 343);
+    view.zoomAt(grid, 1, new Posn(10, 12));
+    t.checkExpect(view.cellSize, 20);
+    t.checkExpect(view.left, 60);
+    t.checkExpect(view.top, 332);
+    t.checkExpect(view.cellAt(grid, new Posn(10, 12)), 343);
+
+    // no further in than the biggest cells, or out than the whole board
+    view.zoomAt(grid, 10, new Posn(0, 0));
+    t.checkExpect(view.cellSize, 80);
+    view.zoomAt(grid, -10, new Posn(0, 0));
+    t.checkExpect(view.cellSize, 2);
+    t.checkExpect(view.left, 0);
+    t.checkExpect(view.top, 0);
+  }
+
+  // testing cellAt and positionOf on a scrolled and zoomed view
+  void testViewportCells(Tester t) {
+    Viewport view = new Viewport(10, 40, 40);
+    FloodBoard grid = new FloodBoard(20);
+    view.pan(grid, 25, 160);
+    t.checkExpect(view.cellAt(grid, new Posn(10, 12)), 343);
+    t.checkExpect(view.cellAt(grid, new Posn(5, 12)), -1);
+    t.checkExpect(view.cellAt(grid, new Posn(10, 10)), -1);
+    t.checkExpect(view.cellAt(grid, new Posn(40, 10)), -1);
+    t.checkExpect(view.positionOf(grid, 343), new Posn(10, 15));
+    t.checkExpect(view.positionOf(grid, 0), new Posn(-20, -155));
+    for (int index = 0; index < 400; index += 7) {
+      Posn p = view.positionOf(grid, index);
+      if (p.x >= 0 && p.y >= 0 && p.x < 40 && p.y < 40) {
+        t.checkExpect(view.cellAt(grid, p), index);
+      }
+    }
+
+    // a pixel of blocks of cells is on the top left cell of its block
+    FloodBoard big = new FloodBoard(100);
+    view.fit(big);
+    t.checkExpect(view.cellAt(big, new Posn(3, 5)), 2012);
+    t.checkExpect(view.positionOf(big, 2012), new Posn(3, 5));
+    t.checkExpect(view.positionOf(big, 2115), new Posn(3, 5));
+    t.checkExpect(view.cellAt(big, new Posn(30, 20)), -1);
+  }
+
+  // testing BoardMipmap
+  void testBoardMipmap(Tester t) {
+    Palette palette = new Palette(new ArrayList<Color>(Arrays.asList(
+        new Color(255, 0, 0), new Color(0, 0, 255))));
+    FloodBoard grid = new FloodBoard(3);
+    grid.setColor(0, 1);
+    BoardMipmap mipmap = new BoardMipmap(grid, palette);
+    t.checkExpect(mipmap.sizeAt(2), 2);
+    t.checkExpect(mipmap.sizeAt(4), 1);
+    t.checkExpect(mipmap.sizeAt(8), 1);
+    t.checkExpect(mipmap.colorAt(2, 0, 0), new Color(191, 0, 63));
+    t.checkExpect(mipmap.colorAt(2, 1, 0), new Color(255, 0, 0));
+    t.checkExpect(mipmap.colorAt(2, 1, 1), new Color(255, 0, 0));
+    t.checkExpect(mipmap.colorAt(4, 0, 0), new Color(239, 0, 15));
+
+    // only the blocks holding the cell change
+    grid.setColor(4, 1);
+    mipmap.update(4);
+    t.checkExpect(mipmap.colorAt(2, 0, 0), new Color(127, 0, 127));
+    t.checkExpect(mipmap.colorAt(2, 1, 0), new Color(255, 0, 0));
+    t.checkExpect(mipmap.colorAt(4, 0, 0), new Color(223, 0, 31));
+  }
+
+  // testing that BoardRenderer only paints the view
+  void testRendererView(Tester t) {
+    Palette palette = new Palette(new ArrayList<Color>(Arrays.asList(
+        new Color(255, 0, 0), new Color(0, 0, 255))));
+    FloodBoard grid = new FloodBoard(20);
+    grid.setColor(343, 1);
+    Viewport view = new Viewport(10, 40, 40);
+    view.pan(grid, 25, 160);
+    BoardRenderer renderer = new BoardRenderer(grid, palette, view);
+    ComputedPixelImage image = (ComputedPixelImage) renderer.draw();
+    t.checkInexact(image.getWidth(), 40.0, 0.001);
+    t.checkExpect(image.getColorAt(10, 10), new Color(0, 0, 255));
+    t.checkExpect(image.getColorAt(0, 0), new Color(255, 0, 0));
+
+    // a change off the view paints nothing
+    grid.setColor(0, 1);
+    renderer.changed(0);
+    renderer.draw();
+    t.checkExpect(image.getColorAt(0, 0), new Color(255, 0, 0));
+
+    // a scrolled view is painted again
+    view.pan(grid, -25, -160);
+    renderer.draw();
+    t.checkExpect(renderer.paintedTop, 0);
+    t.checkExpect(image.getColorAt(0, 0), new Color(0, 0, 255));
+    t.checkExpect(image.getColorAt(10, 0), new Color(255, 0, 0));
+
+    // zoomed out, each pixel is the average of its block, and white past the board
+    view.setZoom(-1);
+    renderer.draw();
+    t.checkExpect(image.getColorAt(0, 0), new Color(191, 0, 63));
+    t.checkExpect(image.getColorAt(9, 9), new Color(255, 0, 0));
+    t.checkExpect(image.getColorAt(15, 15), Color.white);
+    grid.setColor(1, 1);
+    renderer.changed(1);
+    t.checkExpect(renderer.dirtySize, 1);
+    renderer.draw();
+    t.checkExpect(image.getColorAt(0, 0), new Color(127, 0, 127));
+  }
+
+  // testing the keys that scroll and zoom the board
+  void testPanZoomKeys(Tester t) {
+    FloodItWorld world = new FloodItWorld(new Random(10), 30, 3, 60);
+    world.resetBoard();
+    // the board does not fit in the window at 40 pixels a cell
+    t.checkExpect(world.dimension, 800);
+    t.checkExpect(world.view.cellSize, 20);
+    world.onKeyEvent("right");
+    t.checkExpect(world.view.left, 0);
+
+    world.changes.board = false;
+    world.onKeyEvent("+");
+    t.checkExpect(world.changes.board, true);
+    t.checkExpect(world.view.cellSize, 40);
+    t.checkExpect(world.view.left, 400);
+    t.checkExpect(world.view.top, 400);
+    world.onKeyEvent("left");
+    t.checkExpect(world.view.left, 200);
+    world.onKeyEvent("up");
+    t.checkExpect(world.view.top, 200);
+    world.onKeyEvent("down");
+    world.onKeyEvent("down");
+    t.checkExpect(world.view.top, 400);
+    t.checkExpect(world.view.cellAt(world.game.grid, new Posn(20, 20)), 305);
+
+    // a click follows the view
+    int index = world.game.grid.index(29, 0);
+    world.onKeyEvent("right");
+    world.onKeyEvent("up");
+    world.onKeyEvent("up");
+    Posn p = world.view.positionOf(world.game.grid, index);
+    t.checkExpect(p, new Posn(780, 20));
+    int colorIndex = world.game.grid.colorAt(index);
+    world.onMouseClicked(p);
+    if (colorIndex != world.game.floodColorIndex) {
+      t.checkExpect(world.gameState, "flooding");
+      t.checkExpect(world.log.size, 1);
+    }
+
+    world.onKeyEvent("-");
+    t.checkExpect(world.view.cellSize, 20);
+    t.checkExpect(world.view.left, 0);
+  }
+
   // testing getColor
   void testGetColor(Tester t) {
     initData();
@@ -517,9 +4058,11 @@ class ExamplesFloodItWorld {
     initData();
     initBoard();
 
-    t.checkExpect(mtCell.colorEquals(new Color(1, 2, 3)), false);
-    t.checkExpect(cell1.colorEquals(new Color(1, 2, 3)), true);
-    t.checkExpect(f1Cell1Color.board.get(0).get(0).colorEquals(new Color(3, 75, 108)), true);
+    t.checkExpect(mtCell.colorEquals(0), false);
+    t.checkExpect(cell1.colorEquals(0), true);
+    t.checkExpect(cell1.colorEquals(1), false);
+    t.checkExpect(f1Cell1Color.board.get(0).get(0).colorEquals(0), true);
+    t.checkExpect(f4Cell2Color.board.get(1).get(0).colorEquals(1), true);
   }
 
   // testing flood
@@ -529,19 +4072,44 @@ class ExamplesFloodItWorld {
 
     // test flooding an empty cell (exception):
     t.checkException(new IllegalArgumentException("Empty cell cannot be part of flooded area."), 
-        this.mtCell, "flood", new Color(1, 2, 3));
+        this.mtCell, "flood", 0);
 
     // testing flood on f1Cell1Color (fills top left):
     // origin of f1Cell1Color (for convenience)
     Cell origin1x1 = f1Cell1Color.origin;
-    t.checkExpect(origin1x1.flood(origin1x1.color), 
+    t.checkExpect(origin1x1.flood(origin1x1.colorIndex()), 
         Arrays.asList(origin1x1));
 
     // testing flood on f4Cell2Color (fills bottom left, bottom right, top left):
     // origin of f4Cell2Color (for convenience)
     Cell origin2x2 = f4Cell2Color.origin;
-    t.checkExpect(origin2x2.flood(origin2x2.color), 
+    t.checkExpect(origin2x2.flood(origin2x2.colorIndex()), 
         Arrays.asList(origin2x2, origin2x2.bottom, f4Cell2Color.board.get(1).get(1)));
+
+    // the biggest board with Cells, all one region: too deep to flood by recursion
+    FloodItWorld big = new FloodItWorld(new Random(10), 100, 1, 60);
+    big.generateColors();
+    big.generateBoard();
+    big.linkBoard();
+    ArrayList<Cell> all = big.origin.flood(0);
+    t.checkExpect(all.size(), 10000);
+    t.checkExpect(all.get(9999), big.board.get(99).get(99));
+
+    // the cells of a region are the ones FloodEngine reaches, found from any cell of it
+    FloodItWorld mixed = new FloodItWorld(new Random(3), 30, 3, 60);
+    mixed.generateColors();
+    mixed.generateBoard();
+    mixed.linkBoard();
+    FloodEngine engine = new FloodEngine(mixed.game.grid);
+    for (int col = 0; col < 30; col += 7) {
+      Cell start = mixed.board.get(col).get(29 - col);
+      ArrayList<Cell> region = start.flood(start.colorIndex());
+      t.checkExpect(region.size(), engine.fill(start.index, start.colorIndex()));
+      for (int i = 0; i < region.size(); i++) {
+        t.checkExpect(region.get(i).index, engine.queue[i]);
+        t.checkExpect(region.get(i).colorIndex(), start.colorIndex());
+      }
+    }
   }
 
   void testFloodHelp(Tester t) {
@@ -550,29 +4118,327 @@ class ExamplesFloodItWorld {
 
     // test floodHelp on empty cell (exception):
     t.checkException(new IllegalArgumentException("Empty cell cannot be part of flooded area."), 
-        this.mtCell, "floodHelp", new Color(1, 2, 3), new ArrayList<Cell>());
+        this.mtCell, "floodHelp", 0, new ArrayList<Cell>());
 
     // origin of f1Cell1Color (for convenience)
     Cell origin1x1 = f1Cell1Color.origin;
-    // flooded cells before mutation
-    t.checkExpect(f1Cell1Color.flooded, new ArrayList<Cell>());
+    ArrayList<Cell> flooded1x1 = new ArrayList<Cell>();
     //mutation 
-    origin1x1.floodHelp(origin1x1.color, f1Cell1Color.flooded);
+    origin1x1.floodHelp(origin1x1.colorIndex(), flooded1x1);
     // flooded cells after mutation
-    t.checkExpect(f1Cell1Color.flooded, 
+    t.checkExpect(flooded1x1, 
         Arrays.asList(origin1x1));
 
     // origin of f4Cell2Color (for convenience)
     Cell origin2x2 = f4Cell2Color.origin;
-    // flooded cells before mutation
-    t.checkExpect(f4Cell2Color.flooded, new ArrayList<Cell>());
+    ArrayList<Cell> flooded2x2 = new ArrayList<Cell>();
     //mutation 
-    origin2x2.floodHelp(origin2x2.color, f4Cell2Color.flooded);
+    origin2x2.floodHelp(origin2x2.colorIndex(), flooded2x2);
     // flooded cells after mutation (top left, bottom left, bottom right)
-    t.checkExpect(f4Cell2Color.flooded, 
+    t.checkExpect(flooded2x2, 
         Arrays.asList(origin2x2, origin2x2.bottom, f4Cell2Color.board.get(1).get(1)));
   }
 
+  // testing FloodBoard
+  void testFloodBoard(Tester t) {
+    initData();
+    initBoard();
+
+    FloodBoard grid = f4Cell2Color.game.grid;
+    t.checkExpect(grid.colors.length, 4);
+    t.checkExpect(grid.index(0, 0), 0);
+    t.checkExpect(grid.index(1, 0), 1);
+    t.checkExpect(grid.index(0, 1), 2);
+    t.checkExpect(grid.colorAt(grid.index(1, 0)), 1);
+    t.checkExpect(grid.colorAt(grid.index(1, 1)), 0);
+
+    // neighbours of the top left and bottom right cells
+    t.checkExpect(grid.hasRight(0), true);
+    t.checkExpect(grid.hasBottom(0), true);
+    t.checkExpect(grid.hasTop(0), false);
+    t.checkExpect(grid.hasLeft(0), false);
+    t.checkExpect(grid.hasRight(3), false);
+    t.checkExpect(grid.hasBottom(3), false);
+    t.checkExpect(grid.hasTop(3), true);
+    t.checkExpect(grid.hasLeft(3), true);
+
+    grid.setColor(3, 1);
+    t.checkExpect(grid.colorAt(3), 1);
+  }
+
+  // testing count, allColored, and colorsLeft
+  void testColorCounts(Tester t) {
+    initData();
+    initBoard();
+
+    FloodBoard grid = f4Cell2Color.game.grid;
+    t.checkExpect(grid.count(0), 3);
+    t.checkExpect(grid.count(1), 1);
+    t.checkExpect(grid.colorsLeft, 2);
+    t.checkExpect(grid.allColored(0), false);
+    t.checkExpect(f1Cell1Color.game.grid.allColored(0), true);
+    t.checkExpect(f1Cell1Color.game.grid.colorsLeft, 1);
+
+    // recoloring a cell moves it between the counts
+    grid.setColor(1, 0);
+    t.checkExpect(grid.count(0), 4);
+    t.checkExpect(grid.count(1), 0);
+    t.checkExpect(grid.colorsLeft, 1);
+    t.checkExpect(grid.allColored(0), true);
+    // setting the color a cell already has changes nothing
+    grid.setColor(1, 0);
+    t.checkExpect(grid.count(0), 4);
+    grid.setColor(2, 1);
+    t.checkExpect(grid.count(0), 3);
+    t.checkExpect(grid.count(1), 1);
+    t.checkExpect(grid.colorsLeft, 2);
+  }
+
+  // testing setColor
+  void testSetColor(Tester t) {
+    initData();
+    initBoard();
+
+    // the Cell for the position follows the board
+    f4Cell2Color.setColor(f4Cell2Color.game.grid.index(0, 1), 1);
+    t.checkExpect(f4Cell2Color.game.grid.colorAt(2), 1);
+    t.checkExpect(f4Cell2Color.board.get(0).get(1).colorIndex(), 1);
+    t.checkExpect(f4Cell2Color.board.get(0).get(1).getColor(), new Color(60, 151, 241));
+
+    // boards too big for Cells only keep the colors
+    FloodItWorld big = new FloodItWorld(new Random(10), 2000, 3, 60);
+    big.generateColors();
+    big.generateBoard();
+    big.linkBoard();
+    t.checkExpect(big.board, new ArrayList<ArrayList<Cell>>());
+    t.checkExpect(big.game.grid.colors.length, 4000000);
+    big.setColor(5, 2);
+    t.checkExpect(big.game.grid.colorAt(5), 2);
+  }
+
+  // testing fill
+  void testFill(Tester t) {
+    initData();
+    initBoard();
+
+    FloodEngine engine = new FloodEngine(f4Cell2Color.game.grid);
+    // the engine finds the same regions as Cell.flood
+    t.checkExpect(new FloodEngine(f1Cell1Color.game.grid).fill(0, 0), 1);
+    t.checkExpect(engine.fill(0, 0), 3);
+    t.checkExpect(Arrays.copyOf(engine.queue, 3), new int[] {0, 2, 3});
+    // starting somewhere other than the origin
+    t.checkExpect(engine.fill(1, 1), 1);
+    t.checkExpect(engine.queue[0], 1);
+    // floods can be repeated with the same engine
+    t.checkExpect(engine.fill(0, 0), 3);
+    t.checkExpect(Arrays.copyOf(engine.queue, 3), new int[] {0, 2, 3});
+
+    // a board too big for the recursive flood
+    FloodItWorld big = new FloodItWorld(new Random(10), 500, 1, 60);
+    big.generateColors();
+    big.generateBoard();
+    big.linkBoard();
+    t.checkExpect(new FloodEngine(big.game.grid).fill(0, 0), 250000);
+  }
+
+  // testing BoardGenerator
+  void testBoardGenerator(Tester t) {
+    // cell i gets the (i + 1)th number of a SplittableRandom with the same seed
+    BoardGenerator generator = new BoardGenerator(5, 6);
+    SplittableRandom random = new SplittableRandom(5);
+    for (int index = 0; index < 10; index++) {
+      long next = random.nextLong();
+      t.checkExpect(generator.colorAt(index), (int) (((next >>> 32) * 6) >>> 32));
+    }
+
+    // the same board whatever the number of threads, with the counts and hash that
+    // setting each cell would give
+    FloodBoard single = new FloodBoard(300);
+    FloodBoard parallel = new FloodBoard(300);
+    ForkJoinPool one = new ForkJoinPool(1);
+    ForkJoinPool four = new ForkJoinPool(4);
+    generator.fill(single, one);
+    generator.fill(parallel, four);
+    one.shutdown();
+    four.shutdown();
+    FloodBoard bySetColor = new FloodBoard(300);
+    for (int index = 0; index < 90000; index++) {
+      bySetColor.setColor(index, generator.colorAt(index));
+    }
+    t.checkExpect(parallel.colors, single.colors);
+    t.checkExpect(parallel.colors, bySetColor.colors);
+    t.checkExpect(parallel.counts, bySetColor.counts);
+    t.checkExpect(parallel.colorsLeft, 6);
+    t.checkExpect(parallel.hash, bySetColor.hash);
+
+    // a board of one band
+    FloodBoard small = new FloodBoard(3);
+    new BoardGenerator(1, 2).fill(small);
+    t.checkExpect(small.count(0) + small.count(1), 9);
+
+    // worlds too big for Cells use the generator, with a seed drawn from rand
+    FloodItWorld a = new FloodItWorld(new Random(3), 150, 4, 60);
+    a.resetBoard();
+    FloodItWorld b = new FloodItWorld(new Random(3), 150, 4, 60);
+    b.resetBoard();
+    t.checkExpect(a.game.grid.colors, b.game.grid.colors);
+    t.checkExpect(a.game.grid.hash, b.game.grid.hash);
+    t.checkExpect(a.game.regions.regionSize, 
+        new FloodEngine(a.game.grid).fill(0, a.game.grid.colorAt(0)));
+  }
+
+  // testing Palette
+  void testPalette(Tester t) {
+    Palette palette = new Palette(new ArrayList<Color>(Arrays.asList(new Color(10, 20, 30))));
+    t.checkExpect(palette.size(), 1);
+    t.checkExpect(palette.get(0), new Color(10, 20, 30));
+    t.checkExpect(new Palette().closest(Color.red), Integer.MAX_VALUE);
+    t.checkExpect(palette.closest(new Color(13, 24, 30)), 25);
+
+    // a color next to one already there is drawn again
+    Random draws = new Random() {
+      int next = 0;
+      int[] values = {12, 20, 30, 200, 100, 0};
+
+      public int nextInt(int bound) {
+        return values[next++];
+      }
+    };
+    palette.addRandom(draws);
+    t.checkExpect(palette.get(1), new Color(200, 100, 0));
+
+    // random palettes keep their colors apart
+    for (int seed = 0; seed < 20; seed++) {
+      FloodItWorld world = new FloodItWorld(new Random(seed), 2, 20, 60);
+      world.generateColors();
+      t.checkExpect(world.palette.size(), 20);
+      for (int i = 1; i < 20; i++) {
+        Color color = world.palette.get(i);
+        Palette before = new Palette(new ArrayList<Color>(world.palette.colors.subList(0, i)));
+        t.checkExpect(before.closest(color) >= Palette.MIN_DISTANCE * Palette.MIN_DISTANCE,
+            true);
+      }
+    }
+    // even when there are too many colors to keep apart
+    FloodItWorld crowded = new FloodItWorld(new Random(1), 2, 256, 60);
+    crowded.generateColors();
+    t.checkExpect(crowded.palette.size(), 256);
+  }
+
+  // testing Zobrist and the hashes of FloodBoard and RegionGraph
+  void testZobrist(Tester t) {
+    t.checkExpect(Zobrist.cellKey(3, 0), 0L);
+    t.checkExpect(Zobrist.cellKey(3, 1) != Zobrist.cellKey(3, 2), true);
+    t.checkExpect(Zobrist.cellKey(3, 1) != Zobrist.cellKey(4, 1), true);
+    t.checkExpect(Zobrist.regionKey(0) != Zobrist.regionKey(1), true);
+
+    // the hash only depends on the colors, not on how they were set
+    FloodBoard a = new FloodBoard(3);
+    FloodBoard b = new FloodBoard(3);
+    t.checkExpect(a.hash, 0L);
+    a.setColor(1, 2);
+    a.setColor(5, 1);
+    t.checkExpect(a.hash, Zobrist.cellKey(1, 2) ^ Zobrist.cellKey(5, 1));
+    b.setColor(5, 3);
+    b.setColor(1, 2);
+    b.setColor(5, 1);
+    t.checkExpect(b.hash, a.hash);
+    a.setColor(1, 0);
+    t.checkExpect(a.hash, Zobrist.cellKey(5, 1));
+    t.checkExpect(a.hash != b.hash, true);
+
+    // the hash of the flood follows each move
+    FloodItGame game = new FloodItGame(10, 4, 6);
+    t.checkExpect(game.regions.hash, Zobrist.regionKey(game.regions.component[0]));
+    for (int move = 0; move < 6; move++) {
+      int colorIndex = (game.floodColorIndex + 1 + move % 3) % 4;
+      game.applyMove(colorIndex);
+      long hash = 0;
+      for (int i = 0; i < game.regions.floodedCount; i++) {
+        hash ^= Zobrist.regionKey(game.regions.floodedOrder[i]);
+      }
+      t.checkExpect(game.regions.hash, hash);
+    }
+  }
+
+  // testing the regions found by RegionGraph
+  void testRegionGraph(Tester t) {
+    initData();
+    initBoard();
+
+    // the board {0, 1, 0, 0}
+    RegionGraph regions = f4Cell2Color.game.regions;
+    t.checkExpect(regions.components, 2);
+    t.checkExpect(regions.component, new int[] {0, 1, 0, 0});
+    t.checkExpect(regions.componentColor, new int[] {0, 1});
+    t.checkExpect(regions.componentSize, new int[] {3, 1});
+    t.checkExpect(regions.cellStart, new int[] {0, 3, 4});
+    t.checkExpect(regions.cellOrder, new int[] {0, 2, 3, 1});
+    t.checkExpect(regions.adjacencyStart, new int[] {0, 1, 2});
+    t.checkExpect(regions.adjacency, new int[] {1, 0});
+
+    // every cell is in exactly one region, and neighbours are recorded both ways
+    FloodItGame big = new FloodItGame(30, 5, 4);
+    RegionGraph bigRegions = big.regions;
+    int total = 0;
+    for (int r = 0; r < bigRegions.components; r++) {
+      total += bigRegions.componentSize[r];
+      for (int i = bigRegions.adjacencyStart[r]; i < bigRegions.adjacencyStart[r + 1]; i++) {
+        int next = bigRegions.adjacency[i];
+        t.checkExpect(bigRegions.componentColor[next] != bigRegions.componentColor[r], true);
+        boolean back = false;
+        for (int j = bigRegions.adjacencyStart[next]; 
+            j < bigRegions.adjacencyStart[next + 1]; j++) {
+          back = back || bigRegions.adjacency[j] == r;
+        }
+        t.checkExpect(back, true);
+      }
+    }
+    t.checkExpect(total, 900);
+    t.checkExpect(bigRegions.componentSize[bigRegions.component[0]],
+        new FloodEngine(big.grid).fill(0, big.grid.colorAt(0)));
+  }
+
+  // testing absorb
+  void testAbsorb(Tester t) {
+    initData();
+    initBoard();
+
+    RegionGraph regions = f4Cell2Color.game.regions;
+    // the flood starts as the region of the origin
+    t.checkExpect(regions.regionSize, 3);
+    t.checkExpect(Arrays.copyOf(regions.regionOrder, 3), new int[] {0, 2, 3});
+    t.checkExpect(regions.frontierSize, new int[] {0, 1});
+    t.checkExpect(regions.frontierRegion(), 1);
+    t.checkExpect(regions.isFlooded(0), true);
+    t.checkExpect(regions.isFlooded(1), false);
+
+    // no region bordering the flood has the origin's color
+    t.checkExpect(regions.absorb(0), 0);
+    t.checkExpect(regions.regionSize, 3);
+
+    // absorbing the top right cell finishes the board
+    t.checkExpect(regions.absorb(1), 1);
+    t.checkExpect(Arrays.copyOf(regions.regionOrder, 4), new int[] {0, 2, 3, 1});
+    t.checkExpect(regions.frontierSize, new int[] {0, 0});
+    t.checkExpect(regions.frontierRegion(), -1);
+    t.checkExpect(regions.allFlooded(), true);
+
+    // a flood that grows across several moves matches a fresh flood of the cells
+    FloodItWorld f = new FloodItWorld(new Random(4), 12, 4, 60);
+    f.generateColors();
+    f.generateBoard();
+    f.linkBoard();
+    for (int move = 0; move < 8; move++) {
+      for (int i = 0; i < f.game.regions.regionSize; i++) {
+        f.setColor(f.game.regions.regionOrder[i], move % 4);
+      }
+      f.game.regions.absorb(move % 4);
+      t.checkExpect(f.game.regions.regionSize, 
+          new FloodEngine(f.game.grid).fill(0, move % 4));
+    }
+  }
+
   // testing drawColumn
   void testDrawColumn(Tester t) {
     initData();
@@ -614,6 +4480,33 @@ class ExamplesFloodItWorld {
                 new RectangleImage(0, 40, OutlineMode.SOLID, Color.white))));
   }
 
+  // testing changed and draw
+  void testBoardRenderer(Tester t) {
+    initData();
+    initBoard();
+
+    BoardRenderer renderer = f4Cell2Color.renderer;
+    // the first frame paints everything
+    t.checkExpect(renderer.repaintAll, true);
+    WorldImage first = renderer.draw();
+    t.checkExpect(renderer.repaintAll, false);
+    t.checkExpect(renderer.dirtySize, 0);
+
+    // changes are only painted once per frame
+    f4Cell2Color.setColor(1, 0);
+    f4Cell2Color.setColor(1, 1);
+    f4Cell2Color.setColor(2, 1);
+    t.checkExpect(renderer.dirtySize, 2);
+    t.checkExpect(Arrays.copyOf(renderer.dirty, 2), new int[] {1, 2});
+
+    // the same image is painted over on every frame
+    t.checkExpect(renderer.draw() == first, true);
+    t.checkExpect(renderer.dirtySize, 0);
+    t.checkExpect(renderer.isDirty[0], 0L);
+    f4Cell2Color.setColor(2, 0);
+    t.checkExpect(renderer.dirtySize, 1);
+  }
+
   // testing makeScene
   void testMakeScene(Tester t) {
     initData();
@@ -622,21 +4515,202 @@ class ExamplesFloodItWorld {
         f1Cell1Color.makeScene(), placedScene);
   }
 
+  // testing that makeScene reuses the last scene when nothing changed
+  void testSceneChanges(Tester t) {
+    initData();
+
+    WorldScene first = f4Cell2Color.makeScene();
+    t.checkExpect(f4Cell2Color.changes.rebuilt, 1);
+    t.checkExpect(f4Cell2Color.changes.needsRebuild(), false);
+
+    // nothing changed
+    t.checkExpect(f4Cell2Color.makeScene() == first, true);
+    t.checkExpect(f4Cell2Color.changes.skipped, 1);
+
+    // a tick that does not change the time shown
+    f4Cell2Color.onTick();
+    t.checkExpect(f4Cell2Color.changes.hud, false);
+    t.checkExpect(f4Cell2Color.makeScene() == first, true);
+    t.checkExpect(f4Cell2Color.changes.skipped, 2);
+
+    // a color change is painted into the image that is already in the scene
+    f4Cell2Color.setColor(3, 1);
+    t.checkExpect(f4Cell2Color.changes.board, true);
+    t.checkExpect(f4Cell2Color.makeScene() == first, true);
+    t.checkExpect(f4Cell2Color.renderer.dirtySize, 0);
+
+    // the time shown changes
+    f4Cell2Color.stopwatch = 0.49;
+    f4Cell2Color.onTick();
+    t.checkExpect(f4Cell2Color.changes.hud, true);
+    t.checkExpect(f4Cell2Color.makeScene() == first, false);
+    t.checkExpect(f4Cell2Color.changes.rebuilt, 2);
+
+    // the game is lost
+    f4Cell2Color.setState("lost");
+    t.checkExpect(f4Cell2Color.changes.screen, true);
+    f4Cell2Color.makeScene();
+    t.checkExpect(f4Cell2Color.changes.rebuilt, 3);
+    // staying lost does not change the screen
+    f4Cell2Color.onTick();
+    t.checkExpect(f4Cell2Color.changes.screen, false);
+  }
+
+  // testing setState
+  void testSetState(Tester t) {
+    initData();
+
+    f4Cell2Color.changes.clear();
+    f4Cell2Color.setState("stagnant");
+    t.checkExpect(f4Cell2Color.changes.screen, false);
+    f4Cell2Color.setState("won");
+    t.checkExpect(f4Cell2Color.gameState, "won");
+    t.checkExpect(f4Cell2Color.changes.screen, true);
+  }
+
+  // testing FloodAnimation
+  void testFloodAnimation(Tester t) {
+    FloodAnimation small = new FloodAnimation(0.1, 1.0);
+    small.start(3);
+    t.checkInexact(small.duration, 0.3, 0.001);
+    t.checkExpect(small.advance(0.05), 0);
+    t.checkExpect(small.advance(0.05), 1);
+    t.checkExpect(small.finished(), false);
+    t.checkExpect(small.advance(0.5), 2);
+    t.checkExpect(small.finished(), true);
+    t.checkExpect(small.advance(0.1), 0);
+
+    // a huge flood still takes maxDuration, in evenly sized batches
+    FloodAnimation big = new FloodAnimation(0.1, 1.0);
+    big.start(1000000);
+    t.checkInexact(big.duration, 1.0, 0.001);
+    t.checkExpect(big.advance(0.25), 250000);
+    t.checkExpect(big.advance(0.25), 250000);
+    t.checkExpect(big.advance(0.5), 500000);
+    t.checkExpect(big.finished(), true);
+
+    // the same flood takes the same time at a different frame rate
+    FloodAnimation slow = new FloodAnimation(0.1, 1.0);
+    slow.start(1000000);
+    int ticks = 0;
+    while (!slow.finished()) {
+      slow.advance(1.0 / 30);
+      ticks++;
+    }
+    t.checkExpect(ticks, 30);
+  }
+
+  // testing that each flood of a large board is animated within a second
+  void testOnTickBatches(Tester t) {
+    FloodItWorld f = new FloodItWorld(new Random(7), 300, 2, 60);
+    f.resetBoard();
+    f.game.turnsLeft = 100000;
+    int moves = 0;
+    while (!f.gameState.equals("won")) {
+      // clicks a cell bordering the region
+      RegionGraph regions = f.game.regions;
+      int index = regions.cellOrder[regions.cellStart[regions.frontierRegion()]];
+      f.onMouseClicked(f.view.positionOf(f.game.grid, index));
+      t.checkExpect(f.gameState, "flooding");
+      int ticks = 0;
+      while (f.gameState.equals("flooding")) {
+        f.onTick();
+        ticks++;
+      }
+      t.checkExpect(ticks <= 60, true);
+      moves++;
+    }
+    t.checkExpect(f.game.grid.allColored(f.game.floodColorIndex), true);
+    t.checkExpect(moves > 1, true);
+  }
+
+  // testing step
+  void testStep(Tester t) {
+    // the world for tests moves by a frame each tick, however long it took
+    FloodItWorld fixed = new FloodItWorld(new Random(7), 6, 4, 60);
+    t.checkInexact(fixed.step(0), 1.0 / 60, 1e-9);
+    t.checkInexact(fixed.step(5000000000L), 1.0 / 60, 1e-9);
+    // the world on the screen moves by the time since the last tick
+    FloodItWorld timed = new FloodItWorld(7L, 6, 4, 30);
+    t.checkInexact(timed.step(1000000000L), 1.0 / 30, 1e-9);
+    t.checkInexact(timed.step(1020000000L), 0.02, 1e-9);
+    t.checkInexact(timed.step(1020000000L), 0.0, 1e-9);
+    // a stall moves it by no more than MAX_STEP
+    t.checkInexact(timed.step(6000000000L), FloodItWorld.MAX_STEP, 1e-9);
+    t.checkExpect(timed.lastTick, 6000000000L);
+
+    // a flood after a stall goes on past the tick; at 2 frames a second every flood
+    // takes a second
+    FloodItWorld world = new FloodItWorld(7L, 6, 4, 2);
+    world.resetBoard();
+    RegionGraph regions = world.game.regions;
+    world.move(regions.componentColor[regions.frontierRegion()]);
+    world.lastTick = System.nanoTime() - 5000000000L;
+    world.onTick();
+    t.checkInexact(world.animation.elapsed, FloodItWorld.MAX_STEP, 1e-9);
+    t.checkExpect(world.gameState, "flooding");
+  }
+
+  // testing FloodItGame
+  void testFloodItGame(Tester t) {
+    initData();
+    initBoard();
+
+    // the world's board comes from the same rules, after the colors are picked
+    t.checkExpect(f4Cell2Color.game.grid.colors, new byte[] {0, 1, 0, 0});
+    // the same seed always gives the same board
+    FloodItGame game = new FloodItGame(2, 2, 10);
+    t.checkExpect(game.grid.colors, new byte[] {1, 0, 0, 0});
+    t.checkExpect(new FloodItGame(2, 2, new Random(10)).grid.colors, 
+        new byte[] {1, 0, 0, 0});
+    t.checkExpect(game.turnsLeft, 2);
+    t.checkExpect(game.floodColorIndex, 1);
+
+    // moves
+    t.checkExpect(game.canMove(1), false);
+    t.checkExpect(game.canMove(2), false);
+    t.checkExpect(game.canMove(0), true);
+    t.checkException(new IllegalArgumentException("Cannot flood with color 1"), 
+        game, "applyMove", 1);
+    t.checkExpect(game.isWon(), false);
+    t.checkExpect(game.isOver(), false);
+    game.applyMove(0);
+    t.checkExpect(game.turnsLeft, 1);
+    t.checkExpect(game.grid.colors, new byte[] {0, 0, 0, 0});
+    t.checkExpect(game.isWon(), true);
+    t.checkExpect(game.isLost(), false);
+    t.checkExpect(game.canMove(1), false);
+
+    // running out of turns
+    FloodItGame lost = new FloodItGame(6, 4, 3);
+    lost.turnsLeft = 1;
+    lost.applyMove((lost.grid.colorAt(0) + 1) % 4);
+    t.checkExpect(lost.isLost(), true);
+    t.checkExpect(lost.isOver(), true);
+    t.checkExpect(lost.canMove((lost.grid.colorAt(0) + 1) % 4), false);
+
+    // startMove leaves the recoloring to the caller
+    FloodItGame started = new FloodItGame(2, 2, 10);
+    t.checkExpect(started.startMove(0), 1);
+    t.checkExpect(started.grid.colors, new byte[] {1, 0, 0, 0});
+    t.checkExpect(started.regions.regionSize, 4);
+  }
+
   // testing generateColors
   void testGenerateColors(Tester t) {
     initData();
 
     // testing initial conditions
-    t.checkExpect(f1Cell1Color.colors, new ArrayList<Color>());
-    t.checkExpect(f4Cell2Color.colors, new ArrayList<Color>());
+    t.checkExpect(f1Cell1Color.palette.colors, new ArrayList<Color>());
+    t.checkExpect(f4Cell2Color.palette.colors, new ArrayList<Color>());
 
     // mutation
     f1Cell1Color.generateColors();
     f4Cell2Color.generateColors();
 
     // testing side effects after mutation
-    t.checkExpect(f1Cell1Color.colors, new ArrayList<Color>(Arrays.asList(new Color(3, 75, 108))));
-    t.checkExpect(f4Cell2Color.colors, new ArrayList<Color>(Arrays.asList(
+    t.checkExpect(f1Cell1Color.palette.colors, new ArrayList<Color>(Arrays.asList(new Color(3, 75, 108))));
+    t.checkExpect(f4Cell2Color.palette.colors, new ArrayList<Color>(Arrays.asList(
         new Color(3, 75, 108), 
         new Color(60, 151, 241))));
   }
@@ -660,14 +4734,19 @@ class ExamplesFloodItWorld {
     t.checkExpect(f1Cell1Color.board, 
         new ArrayList<ArrayList<Cell>>(
             Arrays.asList(
-                new ArrayList<Cell>(Arrays.asList(new Cell(20, 20, new Color(3, 75, 108)))))));
+                new ArrayList<Cell>(Arrays.asList(
+                    new Cell(20, 20, f1Cell1Color.game.grid, 0, f1Cell1Color.palette))))));
 
+    // the cells read their colors from the game's board
+    FloodBoard grid = f4Cell2Color.game.grid;
     t.checkExpect(f4Cell2Color.board,
         new ArrayList<ArrayList<Cell>>(
-            Arrays.asList(new ArrayList<Cell>(Arrays.asList(new Cell(20, 20, new Color(3, 75, 108)),
-                new Cell(20, 60, new Color(3, 75, 108)))),
-                new ArrayList<Cell>(Arrays.asList(new Cell(60, 20, new Color(60, 151, 241)),
-                    new Cell(60, 60, new Color(3, 75, 108)))))));
+            Arrays.asList(new ArrayList<Cell>(Arrays.asList(
+                new Cell(20, 20, grid, 0, f4Cell2Color.palette),
+                new Cell(20, 60, grid, 2, f4Cell2Color.palette))),
+                new ArrayList<Cell>(Arrays.asList(
+                    new Cell(60, 20, grid, 1, f4Cell2Color.palette),
+                    new Cell(60, 60, grid, 3, f4Cell2Color.palette))))));
   }
 
 
@@ -728,20 +4807,48 @@ class ExamplesFloodItWorld {
 
     // testing the timing
     t.checkExpect(f4Cell2Color.stopwatch, 0.0);
-    t.checkExpect(f4Cell2Color.timer, 0.0);
 
     f4Cell2Color.onTick();
 
     t.checkExpect(f4Cell2Color.stopwatch, 1.0 / 60.0);
-    t.checkExpect(f4Cell2Color.timer, 0.1);
 
-    // testing the lost gameState  
-    t.checkExpect(f4Cell2Color.gameState, "stagnant");
-
-    f4Cell2Color.turnsLeft = 0;
+    // without a fixed step, the stopwatch moves by the time measured since the last tick,
+    // just as the animation does
+    f4Cell2Color.fixedStep = false;
+    f4Cell2Color.lastTick = System.nanoTime() - 50000000L;
     f4Cell2Color.onTick();
+    t.checkExpect(f4Cell2Color.stopwatch >= 1.0 / 60.0 + 0.05, true);
+    t.checkExpect(f4Cell2Color.stopwatch <= 1.0 / 60.0 + FloodItWorld.MAX_STEP, true);
+    f4Cell2Color.fixedStep = true;
+
+    // testing the lost gameState: the last turn is lost once its flood is painted
+    FloodItWorld lost = new FloodItWorld(new Random(10), 6, 4, 60);
+    lost.resetBoard();
+    lost.game.turnsLeft = 1;
+    RegionGraph regions = lost.game.regions;
+    lost.move(regions.componentColor[regions.frontierRegion()]);
+    t.checkExpect(lost.game.turnsLeft, 0);
+    lost.onTick();
+    t.checkExpect(lost.gameState, "flooding");
+    while (lost.gameState.equals("flooding")) {
+      lost.onTick();
+    }
+    t.checkExpect(lost.gameState, "lost");
+    for (int i = 0; i < regions.regionSize; i++) {
+      t.checkExpect(lost.game.grid.colorAt(regions.regionOrder[i]), lost.game.floodColorIndex);
+    }
 
-    t.checkExpect(f4Cell2Color.gameState, "lost");
+    // a game won on the last turn is won, with the whole flood painted
+    initData();
+    initBoard();
+    f4Cell2Color.game.turnsLeft = 1;
+    f4Cell2Color.onMouseClicked(new Posn(65, 20));
+    t.checkExpect(f4Cell2Color.game.turnsLeft, 0);
+    while (f4Cell2Color.gameState.equals("flooding")) {
+      f4Cell2Color.onTick();
+    }
+    t.checkExpect(f4Cell2Color.gameState, "won");
+    t.checkExpect(f4Cell2Color.game.grid.colors, new byte[] {1, 1, 1, 1});
 
     // testing the flooding function
     initData();
@@ -755,10 +4862,7 @@ class ExamplesFloodItWorld {
     while (!f4Cell2Color.isGameWon()) {
       f4Cell2Color.onTick();
     }
-    // set preconditions to win
-    f4Cell2Color.timer = 0.2;
     f4Cell2Color.onTick();
-    f4Cell2Color.flooded = new ArrayList<Cell>();
 
     // game now won
     t.checkExpect(f4Cell2Color.gameState, "won");
@@ -776,7 +4880,7 @@ class ExamplesFloodItWorld {
     t.checkExpect(f4Cell2Color.isGameWon(), false);
 
     // after mutation
-    f4Cell2Color.board.get(1).get(0).color = f4Cell2Color.origin.color;
+    f4Cell2Color.setColor(f4Cell2Color.game.grid.index(1, 0), f4Cell2Color.game.grid.colorAt(0));
 
     // after mutation (all colors on board the same color)
     t.checkExpect(f4Cell2Color.isGameWon(), true);
@@ -792,25 +4896,23 @@ class ExamplesFloodItWorld {
     f4Cell2Color.onMouseClicked(new Posn(65, 20));
 
     // checks the conditions (not default)
-    t.checkExpect(f4Cell2Color.timer, 0.1);
     t.checkExpect(f4Cell2Color.stopwatch, 1.0 / 60.0);
     t.checkExpect(f4Cell2Color.gameState, "flooding");
-    t.checkExpect(f4Cell2Color.colors, 
+    t.checkExpect(f4Cell2Color.palette.colors, 
         new ArrayList<Color>(Arrays.asList(new Color(3, 75, 108), 
             new Color(60, 151, 241))));
-    t.checkExpect(f4Cell2Color.turnsLeft, 1);
+    t.checkExpect(f4Cell2Color.game.turnsLeft, 1);
 
     //mutation
     f4Cell2Color.resetBoard();
 
     // checks for default conditions
-    t.checkExpect(f4Cell2Color.timer, 0.0);
     t.checkExpect(f4Cell2Color.stopwatch, 0.0);
     t.checkExpect(f4Cell2Color.gameState, "stagnant");
-    t.checkExpect(f4Cell2Color.colors, 
+    t.checkExpect(f4Cell2Color.palette.colors, 
         new ArrayList<Color>(Arrays.asList(new Color(58, 164, 141), 
             new Color(108, 165, 240))));
-    t.checkExpect(f4Cell2Color.turnsLeft, 2);
+    t.checkExpect(f4Cell2Color.game.turnsLeft, 2);
 
   }
 
@@ -820,7 +4922,7 @@ class ExamplesFloodItWorld {
     initBoard();
 
     // default conditions
-    t.checkExpect(f4Cell2Color.turnsLeft, 2);
+    t.checkExpect(f4Cell2Color.game.turnsLeft, 2);
     t.checkExpect(f4Cell2Color.floodColor, new Color(3, 75, 108));
     t.checkExpect(f4Cell2Color.gameState, "stagnant");
 
@@ -828,7 +4930,7 @@ class ExamplesFloodItWorld {
     f4Cell2Color.onMouseClicked(new Posn(65, 20));
 
     // conditions after mutation
-    t.checkExpect(f4Cell2Color.turnsLeft, 1);
+    t.checkExpect(f4Cell2Color.game.turnsLeft, 1);
     t.checkExpect(f4Cell2Color.floodColor, new Color(60, 151, 241));
     t.checkExpect(f4Cell2Color.gameState, "flooding");
   }
@@ -843,31 +4945,45 @@ class ExamplesFloodItWorld {
     f4Cell2Color.onMouseClicked(new Posn(65, 20));
 
     // checks the conditions (not default)
-    t.checkExpect(f4Cell2Color.timer, 0.1);
     t.checkExpect(f4Cell2Color.stopwatch, 1.0 / 60.0);
     t.checkExpect(f4Cell2Color.gameState, "flooding");
-    t.checkExpect(f4Cell2Color.colors, new ArrayList<Color>(Arrays.asList(
+    t.checkExpect(f4Cell2Color.palette.colors, new ArrayList<Color>(Arrays.asList(
         new Color(3, 75, 108), new Color(60, 151, 241))));
-    t.checkExpect(f4Cell2Color.turnsLeft, 1);
+    t.checkExpect(f4Cell2Color.game.turnsLeft, 1);
     f4Cell2Color.gameState = "won";
 
     // mutation - presses "r"
     f4Cell2Color.onKeyEvent("r");
 
     // checks for default conditions
-    t.checkExpect(f4Cell2Color.timer, 0.0);
     t.checkExpect(f4Cell2Color.stopwatch, 0.0);
     t.checkExpect(f4Cell2Color.gameState, "stagnant");
-    t.checkExpect(f4Cell2Color.colors, new ArrayList<Color>(Arrays.asList(
+    t.checkExpect(f4Cell2Color.palette.colors, new ArrayList<Color>(Arrays.asList(
         new Color(58, 164, 141), new Color(108, 165, 240))));
-    t.checkExpect(f4Cell2Color.turnsLeft, 2);
+    t.checkExpect(f4Cell2Color.game.turnsLeft, 2);
   }
 
   // tests class FloodItWorld
   void testFloodItWorld(Tester t) {
     // REFERENCE: bigBang(width, height, 1 / fps)
+    // plays the levels of a pack instead when run with -Dfloodit.pack=<path>
     int fps = 60;
-    FloodItWorld f = new FloodItWorld(6, 4, fps);
-    f.bigBang(600, 600, 1.0 / fps);
+    FloodItWorld f = FloodItWorld.fromProperties(System.getProperties(), 6, 4, fps);
+    f.bigBang(f.windowWidth(), f.windowHeight(), 1.0 / fps);
+  }
+
+  // testing windowWidth and windowHeight
+  void testWindowSize(Tester t) {
+    FloodItWorld small = new FloodItWorld(new Random(1), 6, 4, 60);
+    t.checkExpect(small.windowWidth(), 600);
+    t.checkExpect(small.windowHeight(), 600);
+    // a board wider than the smallest window, with the turns and time below it
+    FloodItWorld wide = new FloodItWorld(new Random(1), 16, 4, 60);
+    t.checkExpect(wide.windowWidth(), 640);
+    t.checkExpect(wide.windowHeight(), 800);
+    // the view of a board of any size is at most maxScreenSize across
+    FloodItWorld big = new FloodItWorld(new Random(1), 1000, 4, 60);
+    t.checkExpect(big.windowWidth(), 800);
+    t.checkExpect(big.windowHeight(), 960);
   }
 }
\ No newline at end of file
@@ -0,0 +1,404 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import javalib.worldimages.Posn;
+
+// A benchmark of one operation of the game on boards of a given size and number of colors
+interface IBenchmark {
+  // returns the name of the operation
+  public String name();
+
+  // determines if the operation can be run on boards of the given size
+  public boolean supports(int boardSize);
+
+  // builds the boards the operation runs on
+  public void setUp(int boardSize, int numOfColors);
+
+  // runs the operation once
+  public void run();
+}
+
+// A benchmark whose runs change what the next run works on, so that each run is taken
+// back after it is timed and before the next one starts
+interface IResetBenchmark extends IBenchmark {
+  // takes back what the last run changed; this is not part of the time measured
+  public void reset();
+}
+
+// Benchmarks Cell.flood, the flood of the Cell view, which walks the board with a
+// FloodEngine and finds the Cells it reaches through their links
+class CellFloodBenchmark implements IBenchmark {
+  FloodItWorld world;
+
+  public String name() {
+    return "Cell.flood";
+  }
+
+  public boolean supports(int boardSize) {
+    return boardSize <= 100;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.world = FloodItBenchmarks.makeWorld(boardSize, numOfColors);
+  }
+
+  public void run() {
+    FloodItBenchmarks.sink += world.origin.flood(world.origin.colorIndex()).size();
+  }
+}
+
+// Benchmarks FloodEngine.fill, the flood over the flat board
+class FillBenchmark implements IBenchmark {
+  FloodItWorld world;
+  FloodEngine engine;
+
+  public String name() {
+    return "FloodEngine.fill";
+  }
+
+  public boolean supports(int boardSize) {
+    return true;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.world = FloodItBenchmarks.makeWorld(boardSize, numOfColors);
+    this.engine = new FloodEngine(world.game.grid);
+  }
+
+  public void run() {
+    FloodItBenchmarks.sink += engine.fill(0, world.game.grid.colorAt(0));
+  }
+}
+
+// Benchmarks Cell.drawGrid, the image tree of the Cell view
+class DrawGridBenchmark implements IBenchmark {
+  FloodItWorld world;
+
+  public String name() {
+    return "Cell.drawGrid";
+  }
+
+  public boolean supports(int boardSize) {
+    return boardSize <= 100;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.world = FloodItBenchmarks.makeWorld(boardSize, numOfColors);
+  }
+
+  public void run() {
+    FloodItBenchmarks.sink += world.origin.drawGrid().hashCode();
+  }
+}
+
+// Benchmarks a frame of BoardRenderer in which one cell changed color. The view is
+// fitted to the board, so boards too big for their own cells are drawn zoomed out.
+class RenderBenchmark implements IBenchmark {
+  FloodItWorld world;
+  int next;
+
+  public String name() {
+    return "BoardRenderer.draw";
+  }
+
+  public boolean supports(int boardSize) {
+    return true;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.world = FloodItBenchmarks.makeWorld(boardSize, numOfColors);
+    this.world.renderer.draw();
+  }
+
+  public void run() {
+    int index = next++ % world.game.grid.colors.length;
+    world.setColor(index, (world.game.grid.colorAt(index) + 1) % world.palette.size());
+    FloodItBenchmarks.sink += world.renderer.draw().hashCode();
+  }
+}
+
+// Benchmarks onMouseClicked on a cell that makes a move, which is painted and taken back
+// after each run so that every run makes the same move. The bytes allocated include
+// those of taking it back.
+class ClickBenchmark implements IResetBenchmark {
+  FloodItWorld world;
+  Posn click;
+
+  public String name() {
+    return "onMouseClicked";
+  }
+
+  public boolean supports(int boardSize) {
+    return true;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.world = FloodItBenchmarks.makeWorld(boardSize, numOfColors);
+    this.click = null;
+    // the first position on the screen whose cell has the color of a legal move
+    for (int y = 0; y < world.view.height && click == null; y++) {
+      for (int x = 0; x < world.view.width && click == null; x++) {
+        int index = world.view.cellAt(world.game.grid, new Posn(x, y));
+        if (index != -1 && world.game.canMove(world.game.grid.colorAt(index))) {
+          this.click = new Posn(x, y);
+        }
+      }
+    }
+  }
+
+  public void run() {
+    world.onMouseClicked(click);
+    FloodItBenchmarks.sink += world.game.turnsLeft;
+  }
+
+  // a flood can only be undone once it has been painted
+  public void reset() {
+    while (world.gameState.equals("flooding")) {
+      world.onTick();
+    }
+    world.undo();
+  }
+}
+
+// Benchmarks isGameWon
+class GameWonBenchmark implements IBenchmark {
+  FloodItWorld world;
+
+  public String name() {
+    return "isGameWon";
+  }
+
+  public boolean supports(int boardSize) {
+    return true;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.world = FloodItBenchmarks.makeWorld(boardSize, numOfColors);
+  }
+
+  public void run() {
+    FloodItBenchmarks.sink += world.isGameWon() ? 1 : 0;
+  }
+}
+
+// Benchmarks making a new board with generateBoard and linkBoard
+class GenerateBenchmark implements IBenchmark {
+  int boardSize;
+  int numOfColors;
+
+  public String name() {
+    return "generateBoard+linkBoard";
+  }
+
+  public boolean supports(int boardSize) {
+    return true;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+  }
+
+  public void run() {
+    FloodItBenchmarks.sink += FloodItBenchmarks.makeWorld(boardSize, numOfColors).game.turnsLeft;
+  }
+}
+
+// Benchmarks filling a board from a seed with BoardGenerator, on every core
+class BoardGeneratorBenchmark implements IBenchmark {
+  FloodBoard grid;
+  BoardGenerator generator;
+
+  public String name() {
+    return "BoardGenerator.fill";
+  }
+
+  public boolean supports(int boardSize) {
+    return true;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.grid = new FloodBoard(boardSize);
+    this.generator = new BoardGenerator(10, numOfColors);
+  }
+
+  public void run() {
+    generator.fill(grid);
+    FloodItBenchmarks.sink += grid.hash;
+  }
+}
+
+// Benchmarks labeling the regions of a board, on this thread or by tiles on every core
+class LabelBenchmark implements IBenchmark {
+  // the pool to label on, or null for this thread
+  ForkJoinPool pool;
+  FloodBoard grid;
+  int numOfColors;
+
+  LabelBenchmark(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  public String name() {
+    return pool == null ? "RegionGraph.label" : "TileLabeler.label";
+  }
+
+  public boolean supports(int boardSize) {
+    return boardSize >= 500;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.grid = FloodItBenchmarks.makeWorld(boardSize, numOfColors).game.grid;
+    this.numOfColors = numOfColors;
+  }
+
+  public void run() {
+    FloodItBenchmarks.sink += new RegionGraph(grid, numOfColors, pool).components;
+  }
+}
+
+// Benchmarks a whole game played headlessly, always picking the smallest palette index
+// bordering the flood
+class GameBenchmark implements IBenchmark {
+  int boardSize;
+  int numOfColors;
+  long seed;
+
+  public String name() {
+    return "FloodItGame (full game)";
+  }
+
+  public boolean supports(int boardSize) {
+    return boardSize <= 500;
+  }
+
+  public void setUp(int boardSize, int numOfColors) {
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+  }
+
+  public void run() {
+    FloodItGame game = new FloodItGame(boardSize, numOfColors, seed++);
+    game.turnsLeft = Integer.MAX_VALUE;
+    while (!game.isWon()) {
+      game.applyMove(game.regions.componentColor[game.regions.frontierRegion()]);
+    }
+    FloodItBenchmarks.sink += game.turnsLeft;
+  }
+}
+
+// Runs every benchmark on every board size and number of colors, and prints the average
+// time and bytes allocated per operation, on every thread. Run it with
+//   java FloodItBenchmarks [seconds per measurement]
+class FloodItBenchmarks {
+  // results are added here so the work being measured cannot be optimized away
+  static long sink;
+
+  int[] sizes = {6, 14, 100, 500, 2000};
+  int[] colorCounts = {2, 6, 20};
+  // seconds spent warming up and measuring each benchmark
+  double seconds;
+  ArrayList<IBenchmark> benchmarks;
+  com.sun.management.ThreadMXBean threads;
+
+  FloodItBenchmarks(double seconds) {
+    this.seconds = seconds;
+    this.benchmarks = new ArrayList<IBenchmark>(Arrays.asList(
+        new CellFloodBenchmark(), new FillBenchmark(), new DrawGridBenchmark(),
+        new RenderBenchmark(), new ClickBenchmark(), new GameWonBenchmark(),
+        new GenerateBenchmark(), new BoardGeneratorBenchmark(),
+        new LabelBenchmark(null), new LabelBenchmark(ForkJoinPool.commonPool()),
+        new GameBenchmark()));
+    this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  }
+
+  // returns a world with a generated and linked board, always the same for a given size
+  static FloodItWorld makeWorld(int boardSize, int numOfColors) {
+    FloodItWorld world = new FloodItWorld(new Random(10), boardSize, numOfColors, 60);
+    world.generateColors();
+    world.generateBoard();
+    world.linkBoard();
+    return world;
+  }
+
+  // runs the benchmark for about the given seconds and returns the number of runs and
+  // the nanoseconds they took. Runs that have to be reset are timed one at a time, so
+  // that the resets are left out; the rest are timed all together, so that reading the
+  // clock does not add to the time of each.
+  long[] runFor(IBenchmark benchmark, double seconds) {
+    long start = System.nanoTime();
+    long end = start + (long) (seconds * 1e9);
+    long runs = 0;
+    long time = 0;
+    if (benchmark instanceof IResetBenchmark) {
+      IResetBenchmark resettable = (IResetBenchmark) benchmark;
+      do {
+        long runStart = System.nanoTime();
+        benchmark.run();
+        time += System.nanoTime() - runStart;
+        runs++;
+        resettable.reset();
+      } while (System.nanoTime() < end);
+    }
+    else {
+      long now = start;
+      do {
+        benchmark.run();
+        runs++;
+        now = System.nanoTime();
+      } while (now < end);
+      time = now - start;
+    }
+    return new long[] {runs, time};
+  }
+
+  // measures the benchmark on boards of the given size and number of colors, and returns
+  // a line with the nanoseconds and bytes allocated per operation
+  String measure(IBenchmark benchmark, int boardSize, int numOfColors) {
+    benchmark.setUp(boardSize, numOfColors);
+    this.runFor(benchmark, seconds);
+    long bytes = this.allocatedBytes();
+    long[] measured = this.runFor(benchmark, seconds);
+    long runs = measured[0];
+    long time = measured[1];
+    bytes = this.allocatedBytes() - bytes;
+    return String.format("%-24s %6d %6d %16.1f %16.1f",
+        benchmark.name(), boardSize, numOfColors, (double) time / runs, (double) bytes / runs);
+  }
+
+  // returns the bytes allocated so far by every thread still alive, so that the work
+  // of the fork-join workers is counted along with that of this thread. The workers of
+  // the common pool outlive a measurement, but a thread that ends during one takes what
+  // it allocated with it.
+  long allocatedBytes() {
+    long total = 0;
+    for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      // -1 for a thread that ended since the ids were read
+      total += Math.max(0, bytes);
+    }
+    return total;
+  }
+
+  // runs every benchmark
+  void runAll() {
+    System.out.println(String.format("%-24s %6s %6s %16s %16s",
+        "benchmark", "size", "colors", "ns/op", "B/op"));
+    for (IBenchmark benchmark : benchmarks) {
+      for (int boardSize : sizes) {
+        if (benchmark.supports(boardSize)) {
+          for (int numOfColors : colorCounts) {
+            System.out.println(this.measure(benchmark, boardSize, numOfColors));
+          }
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    double seconds = 1;
+    if (args.length > 0) {
+      seconds = Double.parseDouble(args[0]);
+    }
+    new FloodItBenchmarks(seconds).runAll();
+  }
+}
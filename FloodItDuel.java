@@ -0,0 +1,600 @@
+import java.awt.Color;
+import java.util.*;
+import javalib.impworld.*;
+import javalib.worldimages.AboveImage;
+import javalib.worldimages.OutlineMode;
+import javalib.worldimages.OverlayImage;
+import javalib.worldimages.RectangleImage;
+import javalib.worldimages.TextImage;
+import javalib.worldimages.WorldImage;
+import tester.Tester;
+
+// Flood-It for 2 to 4 players, each with a flood of their own starting in a different
+// corner. The players choose their colors during a tick and every move of the tick is
+// made at once in resolve. A region wanted by more than one player goes to the player
+// first in that tick's order, which moves round by one each tick, so the result never
+// depends on the order the moves came in. A region is owned by one player for good.
+//
+// In a duel the player with the most cells wins; in co-op the players win together if
+// the board is covered before the turns run out.
+class DuelGame {
+  // the corners the floods start in, in the order the players take them
+  static final String[] CORNERS = {"top left", "bottom right", "top right", "bottom left"};
+
+  // The number of cells in each row or column
+  int boardSize;
+  // Number of colors in the game
+  int numOfColors;
+  int players;
+  // number of ticks with moves the players have left
+  int turnsLeft;
+  // the number of ticks resolved
+  int ticks;
+  // the colors of all the cells of the game, as palette indices
+  FloodBoard grid;
+  // the regions of the board and their neighbours; its own flood is not used
+  RegionGraph regions;
+  // the player owning each region, or -1
+  int[] owner;
+  // the number of regions nobody owns
+  int freeRegions;
+  // the palette index of each player's flood, and the cells it covers
+  int[] playerColor;
+  int[] cellsOwned;
+  // the regions each player owns, in the order they were taken, and how many
+  int[][] owned;
+  int[] ownedCount;
+  // the regions next to each player's flood, in one list per palette index as in
+  // RegionGraph; regions taken by another player are skipped when a list is used
+  int[][][] frontier;
+  int[][] frontierSize;
+  long[][] onFrontier;
+  // the palette index each player chose this tick, or -1
+  int[] pending;
+  // the cells recolored by the last tick, and how many
+  int[] changed;
+  int changedCount;
+
+  DuelGame(FloodBoard grid, int numOfColors, int players, int turnsLeft) {
+    if (players < 2 || players > CORNERS.length) {
+      throw new IllegalArgumentException("A duel needs 2 to 4 players");
+    }
+    this.boardSize = grid.size;
+    this.numOfColors = numOfColors;
+    this.players = players;
+    this.turnsLeft = turnsLeft;
+    this.grid = grid;
+    this.regions = new RegionGraph(grid, numOfColors);
+    this.owner = new int[regions.components];
+    Arrays.fill(owner, -1);
+    this.freeRegions = regions.components;
+    this.playerColor = new int[players];
+    this.cellsOwned = new int[players];
+    this.owned = new int[players][4];
+    this.ownedCount = new int[players];
+    this.frontier = new int[players][numOfColors][4];
+    this.frontierSize = new int[players][numOfColors];
+    this.onFrontier = new long[players][(regions.components + 63) / 64];
+    this.pending = new int[players];
+    Arrays.fill(pending, -1);
+    this.changed = new int[16];
+    for (int p = 0; p < players; p++) {
+      int start = regions.component[this.corner(p)];
+      if (owner[start] != -1) {
+        throw new IllegalArgumentException("The " + CORNERS[owner[start]] + " and "
+            + CORNERS[p] + " corners are in the same region");
+      }
+      this.playerColor[p] = regions.componentColor[start];
+      this.take(p, start);
+    }
+    for (int p = 0; p < players; p++) {
+      this.grow(p, 0);
+    }
+  }
+
+  // returns a game on a board of random colors from the given random, drawing new boards
+  // until the corners are in different regions
+  static DuelGame random(int boardSize, int numOfColors, int players, Random rand) {
+    // with one cell a side or one color the corners are always in one region
+    if (boardSize < 2) {
+      throw new IllegalArgumentException("A duel needs a board at least 2 cells wide");
+    }
+    if (numOfColors < 2) {
+      throw new IllegalArgumentException("A duel needs at least 2 colors");
+    }
+    while (true) {
+      FloodBoard grid = new FloodBoard(boardSize);
+      for (int index = 0; index < grid.colors.length; index++) {
+        grid.setColor(index, rand.nextInt(numOfColors));
+      }
+      try {
+        return new DuelGame(grid, numOfColors, players, boardSize * numOfColors / 2);
+      }
+      catch (IllegalArgumentException e) {
+        if (players < 2 || players > CORNERS.length) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  // returns the index of the cell the flood of the given player starts from
+  int corner(int player) {
+    int last = boardSize - 1;
+    switch (player) {
+      case 0:
+        return grid.index(0, 0);
+      case 1:
+        return grid.index(last, last);
+      case 2:
+        return grid.index(last, 0);
+      default:
+        return grid.index(0, last);
+    }
+  }
+
+  // determines if the given player can flood with the given palette index
+  boolean canMove(int player, int colorIndex) {
+    return player >= 0 && player < players && colorIndex >= 0 && colorIndex < numOfColors
+        && colorIndex != playerColor[player] && !this.isOver();
+  }
+
+  // chooses the given palette index for the given player's move this tick, replacing
+  // any move they chose before
+  void submit(int player, int colorIndex) {
+    if (!this.canMove(player, colorIndex)) {
+      throw new IllegalArgumentException(
+          "Player " + player + " cannot flood with color " + colorIndex);
+    }
+    pending[player] = colorIndex;
+  }
+
+  // makes every move chosen this tick, each player in turn starting from the one whose
+  // turn it is to go first, and returns how many moves there were
+  int resolve() {
+    this.changedCount = 0;
+    int moves = 0;
+    for (int k = 0; k < players; k++) {
+      int p = (ticks + k) % players;
+      if (pending[p] != -1) {
+        this.move(p, pending[p]);
+        pending[p] = -1;
+        moves++;
+      }
+    }
+    ticks++;
+    if (moves > 0) {
+      turnsLeft--;
+    }
+    return moves;
+  }
+
+  // floods the given player's regions with the given palette index, taking every free
+  // region of that color next to them
+  void move(int player, int colorIndex) {
+    int before = ownedCount[player];
+    // the cells already owned change color
+    for (int i = 0; i < before; i++) {
+      int r = owned[player][i];
+      for (int j = regions.cellStart[r]; j < regions.cellStart[r + 1]; j++) {
+        this.recolor(regions.cellOrder[j], colorIndex);
+      }
+    }
+    playerColor[player] = colorIndex;
+    int[] next = frontier[player][colorIndex];
+    int count = frontierSize[player][colorIndex];
+    frontierSize[player][colorIndex] = 0;
+    for (int i = 0; i < count; i++) {
+      int r = next[i];
+      onFrontier[player][r >> 6] &= ~(1L << r);
+      // a region another player took first is no longer free
+      if (owner[r] == -1) {
+        this.take(player, r);
+      }
+    }
+    this.grow(player, before);
+  }
+
+  // gives the given free region to the given player
+  void take(int player, int r) {
+    owner[r] = player;
+    freeRegions--;
+    cellsOwned[player] += regions.componentSize[r];
+    if (ownedCount[player] == owned[player].length) {
+      owned[player] = Arrays.copyOf(owned[player], ownedCount[player] * 2);
+    }
+    owned[player][ownedCount[player]++] = r;
+  }
+
+  // adds the free neighbours of the regions the given player took from the given
+  // position in owned onwards to their frontier
+  void grow(int player, int from) {
+    long[] seen = onFrontier[player];
+    for (int i = from; i < ownedCount[player]; i++) {
+      int r = owned[player][i];
+      for (int j = regions.adjacencyStart[r]; j < regions.adjacencyStart[r + 1]; j++) {
+        int next = regions.adjacency[j];
+        if (owner[next] == -1 && (seen[next >> 6] & (1L << next)) == 0) {
+          seen[next >> 6] |= 1L << next;
+          int colorIndex = regions.componentColor[next];
+          int[] list = frontier[player][colorIndex];
+          if (frontierSize[player][colorIndex] == list.length) {
+            frontier[player][colorIndex] = Arrays.copyOf(list, list.length * 2);
+          }
+          frontier[player][colorIndex][frontierSize[player][colorIndex]++] = next;
+        }
+      }
+    }
+  }
+
+  // sets the color of the cell at the given index, remembering that it changed
+  void recolor(int index, int colorIndex) {
+    grid.setColor(index, colorIndex);
+    if (changedCount == changed.length) {
+      changed = Arrays.copyOf(changed, changedCount * 2);
+    }
+    changed[changedCount++] = index;
+  }
+
+  // returns the number of free cells the given player would take by flooding with the
+  // given palette index now
+  int gain(int player, int colorIndex) {
+    int cells = 0;
+    for (int i = 0; i < frontierSize[player][colorIndex]; i++) {
+      int r = frontier[player][colorIndex][i];
+      cells += owner[r] == -1 ? regions.componentSize[r] : 0;
+    }
+    return cells;
+  }
+
+  // determines if every cell is owned
+  boolean allOwned() {
+    return freeRegions == 0;
+  }
+
+  // determines if the game has ended, by covering the board or running out of turns
+  boolean isOver() {
+    return this.allOwned() || turnsLeft <= 0;
+  }
+
+  // returns the player with the most cells, or -1 if more than one has the most
+  int leader() {
+    int best = 0;
+    for (int p = 1; p < players; p++) {
+      if (cellsOwned[p] > cellsOwned[best]) {
+        best = p;
+      }
+    }
+    for (int p = 0; p < players; p++) {
+      if (p != best && cellsOwned[p] == cellsOwned[best]) {
+        return -1;
+      }
+    }
+    return best;
+  }
+}
+
+// A game of DuelGame on the screen, with each player choosing colors from their own row
+// of the keyboard. The moves chosen between two ticks are made together on the tick.
+class DuelWorld extends World {
+  // the keys of each player, one per palette index
+  static final String[] KEYS = {"12345678", "qwertyui", "asdfghjk", "zxcvbnm,"};
+  // if the players are on one team
+  boolean coop;
+  int players;
+  DuelGame game;
+  Palette palette;
+  // The width & height of each cell
+  int cellSize;
+  // draws the board
+  BoardRenderer renderer;
+  Random rand;
+
+  DuelWorld(Random rand, int boardSize, int numOfColors, int players, boolean coop) {
+    if (numOfColors > KEYS[0].length()) {
+      throw new IllegalArgumentException("A duel has at most 8 colors");
+    }
+    this.rand = rand;
+    this.players = players;
+    this.coop = coop;
+    this.cellSize = new Utils().cellSize;
+    this.palette = new Palette();
+    for (int c = 0; c < numOfColors; c++) {
+      palette.addRandom(rand);
+    }
+    this.game = DuelGame.random(boardSize, numOfColors, players, rand);
+    this.renderer = new BoardRenderer(game.grid, palette, this.view());
+  }
+
+  // returns a view of the whole board
+  Viewport view() {
+    int dimension = game.boardSize * cellSize;
+    return new Viewport(cellSize, dimension, dimension);
+  }
+
+  // returns the scene
+  public WorldScene makeScene() {
+    int dimension = game.boardSize * cellSize;
+    WorldScene scene = new WorldScene(dimension, dimension + cellSize * 3);
+    scene.placeImageXY(renderer.draw(), dimension / 2, dimension / 2);
+    scene.placeImageXY(this.status(), dimension / 2, dimension + cellSize * 3 / 2);
+    if (game.isOver()) {
+      scene.placeImageXY(new OverlayImage(
+          new TextImage(this.result(), game.boardSize * 3, Color.black),
+          new RectangleImage(dimension, cellSize * 2, OutlineMode.SOLID, Color.white)),
+          dimension / 2, dimension / 2);
+    }
+    return scene;
+  }
+
+  // returns the cells of each player and the turns left, in the color of each player
+  WorldImage status() {
+    WorldImage lines = new TextImage("Turns Left: " + game.turnsLeft, cellSize / 2,
+        Color.black);
+    for (int p = 0; p < players; p++) {
+      lines = new AboveImage(lines, new TextImage("Player " + (p + 1) + " ("
+          + DuelGame.CORNERS[p] + "): " + game.cellsOwned[p] + " cells", cellSize / 2,
+          palette.get(game.playerColor[p])));
+    }
+    return lines;
+  }
+
+  // returns who won the game
+  String result() {
+    if (coop) {
+      return game.allOwned() ? "You won together!" : "You ran out of turns.";
+    }
+    int leader = game.leader();
+    return leader == -1 ? "It's a tie!" : "Player " + (leader + 1) + " won!";
+  }
+
+  // makes the moves chosen since the last tick
+  public void onTick() {
+    if (game.resolve() > 0) {
+      for (int i = 0; i < game.changedCount; i++) {
+        renderer.changed(game.changed[i]);
+      }
+    }
+  }
+
+  // chooses a move for the player whose row the key is in, ignoring moves that cannot
+  // be made; "r" starts a new game once this one is over
+  public void onKeyEvent(String key) {
+    if (key.equals("r") && game.isOver()) {
+      this.game = DuelGame.random(game.boardSize, game.numOfColors, players, rand);
+      this.renderer = new BoardRenderer(game.grid, palette, this.view());
+      return;
+    }
+    for (int p = 0; p < players; p++) {
+      int colorIndex = KEYS[p].indexOf(key);
+      if (key.length() == 1 && colorIndex != -1 && game.canMove(p, colorIndex)) {
+        game.submit(p, colorIndex);
+      }
+    }
+  }
+}
+
+class ExamplesFloodItDuel {
+
+  // returns a board with the given colors, row by row
+  FloodBoard board(int size, int... colors) {
+    FloodBoard grid = new FloodBoard(size);
+    for (int index = 0; index < colors.length; index++) {
+      grid.setColor(index, colors[index]);
+    }
+    return grid;
+  }
+
+  // the board of the contested game:
+  //   0 2 1
+  //   2 1 2
+  //   1 2 3
+  DuelGame contested() {
+    return new DuelGame(this.board(3, 0, 2, 1, 2, 1, 2, 1, 2, 3), 4, 2, 10);
+  }
+
+  // checks that the floods of the given game do not overlap, are each of one color, and
+  // cover every cell that is not free
+  void checkInvariants(Tester t, DuelGame game) {
+    int free = 0;
+    int[] cells = new int[game.players];
+    for (int r = 0; r < game.regions.components; r++) {
+      int p = game.owner[r];
+      if (p == -1) {
+        free++;
+      }
+      else {
+        cells[p] += game.regions.componentSize[r];
+        for (int j = game.regions.cellStart[r]; j < game.regions.cellStart[r + 1]; j++) {
+          t.checkExpect(game.grid.colorAt(game.regions.cellOrder[j]), game.playerColor[p]);
+        }
+      }
+    }
+    t.checkExpect(cells, game.cellsOwned);
+    t.checkExpect(free, game.freeRegions);
+    int taken = 0;
+    for (int p = 0; p < game.players; p++) {
+      taken += game.ownedCount[p];
+    }
+    t.checkExpect(taken + free, game.regions.components);
+  }
+
+  // testing the start of a game
+  void testDuelGame(Tester t) {
+    DuelGame game = this.contested();
+    t.checkExpect(game.corner(0), 0);
+    t.checkExpect(game.corner(1), 8);
+    t.checkExpect(game.playerColor, new int[] {0, 3});
+    t.checkExpect(game.cellsOwned, new int[] {1, 1});
+    t.checkExpect(game.freeRegions, 7);
+    t.checkExpect(game.gain(0, 2), 2);
+    t.checkExpect(game.gain(0, 1), 0);
+    t.checkExpect(new DuelGame(this.board(3, 0, 1, 2, 3, 0, 1, 2, 3, 0), 4, 4, 10)
+        .corner(3), 6);
+    t.checkException(new IllegalArgumentException("A duel needs 2 to 4 players"),
+        this, "duel", this.board(3, 0, 1, 0, 1, 0, 1, 0, 1, 0), 1);
+    t.checkException(new IllegalArgumentException(
+        "The top left and bottom right corners are in the same region"),
+        this, "duel", this.board(2, 0, 0, 0, 0), 2);
+  }
+
+  // returns a duel on the given board for the given number of players
+  DuelGame duel(FloodBoard grid, int players) {
+    return new DuelGame(grid, 4, players, 10);
+  }
+
+  // testing that contested regions go to the player first in the tick
+  void testResolve(Tester t) {
+    DuelGame game = this.contested();
+    game.submit(0, 2);
+    game.submit(1, 2);
+    t.checkExpect(game.resolve(), 2);
+    t.checkExpect(game.cellsOwned, new int[] {3, 3});
+    t.checkExpect(game.turnsLeft, 9);
+    this.checkInvariants(t, game);
+    // the corners and the middle are wanted by both; player 1 goes first this tick
+    t.checkExpect(game.gain(0, 1), 3);
+    t.checkExpect(game.gain(1, 1), 3);
+    game.submit(0, 3);
+    game.submit(0, 1);
+    game.submit(1, 1);
+    game.resolve();
+    t.checkExpect(game.cellsOwned, new int[] {3, 6});
+    t.checkExpect(game.allOwned(), true);
+    t.checkExpect(game.isOver(), true);
+    t.checkExpect(game.leader(), 1);
+    t.checkExpect(game.grid.colors, new byte[] {1, 1, 1, 1, 1, 1, 1, 1, 1});
+    this.checkInvariants(t, game);
+    t.checkException(new IllegalArgumentException("Player 0 cannot flood with color 2"),
+        game, "submit", 0, 2);
+    // a tick without moves uses no turn
+    t.checkExpect(game.resolve(), 0);
+    t.checkExpect(game.turnsLeft, 8);
+  }
+
+  // testing that a tick gives the same result whatever order the moves come in
+  void testDeterministic(Tester t) {
+    for (int seed = 0; seed < 40; seed++) {
+      int players = 2 + seed % 3;
+      DuelGame a = DuelGame.random(12, 4, players, new Random(seed));
+      DuelGame b = DuelGame.random(12, 4, players, new Random(seed));
+      Random rand = new Random(seed);
+      while (!a.isOver()) {
+        int[] moves = new int[players];
+        for (int p = 0; p < players; p++) {
+          moves[p] = (a.playerColor[p] + 1 + rand.nextInt(3)) % 4;
+          a.submit(p, moves[p]);
+        }
+        for (int p = players - 1; p >= 0; p--) {
+          b.submit(p, moves[p]);
+        }
+        a.resolve();
+        b.resolve();
+        t.checkExpect(a.grid.colors, b.grid.colors);
+        t.checkExpect(a.owner, b.owner);
+      }
+      this.checkInvariants(t, a);
+    }
+  }
+
+  // testing leader
+  void testLeader(Tester t) {
+    DuelGame game = this.contested();
+    t.checkExpect(game.leader(), -1);
+    game.submit(0, 2);
+    game.resolve();
+    t.checkExpect(game.leader(), 0);
+  }
+
+  // testing DuelWorld
+  void testDuelWorld(Tester t) {
+    DuelWorld world = new DuelWorld(new Random(3), 6, 4, 2, false);
+    DuelGame game = world.game;
+    int[] before = game.cellsOwned.clone();
+    int first = (game.playerColor[0] + 1) % 4;
+    int second = (game.playerColor[1] + 1) % 4;
+    // keys only choose the move, which is made on the tick
+    world.onKeyEvent(DuelWorld.KEYS[0].substring(first, first + 1));
+    world.onKeyEvent(DuelWorld.KEYS[1].substring(second, second + 1));
+    t.checkExpect(game.pending, new int[] {first, second});
+    t.checkExpect(game.cellsOwned, before);
+    // once a frame has been drawn, only the cells a tick recolors are painted again
+    world.renderer.draw();
+    t.checkExpect(world.renderer.repaintAll, false);
+    world.onTick();
+    t.checkExpect(game.playerColor, new int[] {first, second});
+    t.checkExpect(game.changedCount > 0, true);
+    t.checkExpect(world.renderer.dirtySize, game.changedCount);
+    int[] dirty = Arrays.copyOf(world.renderer.dirty, world.renderer.dirtySize);
+    int[] changed = Arrays.copyOf(game.changed, game.changedCount);
+    Arrays.sort(dirty);
+    Arrays.sort(changed);
+    t.checkExpect(dirty, changed);
+    world.renderer.draw();
+    t.checkExpect(world.renderer.dirtySize, 0);
+    t.checkExpect(game.pending, new int[] {-1, -1});
+    // keys of players not in the game, and the color a player already has, do nothing
+    world.onKeyEvent("a");
+    world.onKeyEvent(DuelWorld.KEYS[0].substring(first, first + 1));
+    t.checkExpect(game.pending, new int[] {-1, -1});
+    t.checkExpect(world.result().equals("It's a tie!") || world.result().endsWith("won!"),
+        true);
+    t.checkException(new IllegalArgumentException("A duel has at most 8 colors"),
+        this, "duelWorld", 9);
+    t.checkException(new IllegalArgumentException("A duel needs a board at least 2 cells wide"),
+        this, "random", 1, 4);
+    t.checkException(new IllegalArgumentException("A duel needs at least 2 colors"),
+        this, "random", 6, 1);
+  }
+
+  // testing result in co-op, once the game is over
+  void testCoopResult(Tester t) {
+    // the last turn is used without covering the board
+    DuelWorld lost = new DuelWorld(new Random(3), 6, 4, 3, true);
+    lost.game.turnsLeft = 1;
+    this.playGreedy(lost);
+    t.checkExpect(lost.game.isOver(), true);
+    t.checkExpect(lost.game.allOwned(), false);
+    t.checkExpect(lost.result(), "You ran out of turns.");
+    // with turns to spare the players cover the board
+    DuelWorld won = new DuelWorld(new Random(3), 6, 4, 3, true);
+    won.game.turnsLeft = 100;
+    this.playGreedy(won);
+    t.checkExpect(won.game.allOwned(), true);
+    t.checkExpect(won.result(), "You won together!");
+  }
+
+  // plays the given world until it is over, each player choosing with their keys the
+  // color that takes the most free cells
+  void playGreedy(DuelWorld world) {
+    DuelGame game = world.game;
+    while (!game.isOver()) {
+      for (int p = 0; p < game.players; p++) {
+        int best = (game.playerColor[p] + 1) % game.numOfColors;
+        for (int c = 0; c < game.numOfColors; c++) {
+          if (c != game.playerColor[p] && game.gain(p, c) > game.gain(p, best)) {
+            best = c;
+          }
+        }
+        world.onKeyEvent(DuelWorld.KEYS[p].substring(best, best + 1));
+      }
+      world.onTick();
+    }
+  }
+
+  // returns a random duel of 2 players with the given board size and number of colors
+  DuelGame random(int boardSize, int numOfColors) {
+    return DuelGame.random(boardSize, numOfColors, 2, new Random(1));
+  }
+
+  // returns a duel world with the given number of colors
+  DuelWorld duelWorld(int numOfColors) {
+    return new DuelWorld(new Random(1), 6, numOfColors, 2, false);
+  }
+
+  // runs a duel
+  void testBigBang(Tester t) {
+    DuelWorld world = new DuelWorld(new Random(), 14, 6, 2, false);
+    world.bigBang(14 * 40, 17 * 40, 1.0 / 30);
+  }
+}
@@ -0,0 +1,145 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import tester.Tester;
+
+class ExamplesFloodItLabeling {
+
+  // checks that the parallel labels of the given board match the single-threaded ones
+  void checkSameLabels(Tester t, FloodBoard grid, int numOfColors, int tileRows,
+      ForkJoinPool pool) {
+    RegionGraph expected = new RegionGraph(grid, numOfColors);
+    RegionGraph actual = new RegionGraph(grid, numOfColors);
+    new TileLabeler(grid, tileRows).label(actual, pool);
+    t.checkExpect(actual.components, expected.components);
+    t.checkExpect(actual.component, expected.component);
+    t.checkExpect(actual.componentColor, expected.componentColor);
+    t.checkExpect(actual.componentSize, expected.componentSize);
+    t.checkExpect(actual.cellStart, expected.cellStart);
+    // the same cells in each region, in row-major order
+    int[] sorted = expected.cellOrder.clone();
+    for (int r = 0; r < expected.components; r++) {
+      Arrays.sort(sorted, expected.cellStart[r], expected.cellStart[r + 1]);
+    }
+    t.checkExpect(actual.cellOrder, sorted);
+  }
+
+  // testing ConcurrentUnionFind
+  void testConcurrentUnionFind(Tester t) {
+    ConcurrentUnionFind sets = new ConcurrentUnionFind(6);
+    for (int cell = 0; cell < 6; cell++) {
+      sets.reset(cell);
+    }
+    sets.union(4, 5);
+    sets.unionPlain(5, 2);
+    sets.union(3, 1);
+    t.checkExpect(sets.find(5), 2);
+    t.checkExpect(sets.find(4), 2);
+    t.checkExpect(sets.findPlain(3), 1);
+    t.checkExpect(sets.find(0), 0);
+    sets.union(1, 4);
+    // the root is always the smallest cell
+    t.checkExpect(sets.find(5), 1);
+    t.checkExpect(sets.find(2), 1);
+  }
+
+  // testing many threads joining the same sets at once
+  void testConcurrentUnions(Tester t) {
+    int cells = 1 << 16;
+    ConcurrentUnionFind sets = new ConcurrentUnionFind(cells);
+    for (int cell = 0; cell < cells; cell++) {
+      sets.reset(cell);
+    }
+    // every thread joins every cell to the next one of the same parity, in its own order
+    java.util.stream.IntStream.range(0, 8).parallel().forEach(thread -> {
+      Random rand = new Random(thread);
+      for (int i = 0; i < cells; i++) {
+        int cell = rand.nextInt(cells - 2);
+        sets.union(cell, cell + 2);
+      }
+      for (int cell = 0; cell < cells - 2; cell++) {
+        sets.union(cell, cell + 2);
+      }
+    });
+    boolean joined = true;
+    for (int cell = 0; cell < cells; cell++) {
+      joined = joined && sets.find(cell) == cell % 2;
+    }
+    t.checkExpect(joined, true);
+  }
+
+  // testing the labels against RegionGraph.label on boards of every shape
+  void testTileLabeler(Tester t) {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (int seed = 0; seed < 40; seed++) {
+      int size = 1 + seed;
+      FloodBoard grid = new FloodBoard(size);
+      new BoardGenerator(seed, 2 + seed % 4).fill(grid);
+      for (int tileRows : new int[] {1, 3, 7, 64}) {
+        this.checkSameLabels(t, grid, 2 + seed % 4, tileRows, pool);
+      }
+    }
+    // one region winding through every tile
+    FloodBoard spiral = new FloodBoard(9);
+    for (int index = 0; index < 81; index++) {
+      int row = index / 9;
+      int col = index % 9;
+      boolean wall = row % 2 == 1 && (row % 4 == 1 ? col != 8 : col != 0);
+      spiral.setColor(index, wall ? 1 : 0);
+    }
+    this.checkSameLabels(t, spiral, 2, 1, pool);
+    this.checkSameLabels(t, new FloodBoard(5), 1, 2, pool);
+    t.checkException(new IllegalArgumentException("A tile needs at least one row"),
+        this, "labeler", 0);
+    pool.shutdown();
+  }
+
+  // returns a labeler with the given rows in a tile
+  TileLabeler labeler(int tileRows) {
+    return new TileLabeler(new FloodBoard(3), tileRows);
+  }
+
+  // testing that RegionGraph labels big boards in parallel and plays the same game
+  void testParallelRegionGraph(Tester t) {
+    FloodBoard grid = new FloodBoard(1100);
+    new BoardGenerator(5, 6).fill(grid);
+    RegionGraph parallel = new RegionGraph(grid, 6, ForkJoinPool.commonPool());
+    RegionGraph single = new RegionGraph(grid, 6, null);
+    t.checkExpect(parallel.component, single.component);
+    t.checkExpect(parallel.adjacencyStart, single.adjacencyStart);
+    for (int colorIndex = 0; colorIndex < 6; colorIndex++) {
+      t.checkExpect(parallel.absorb(colorIndex), single.absorb(colorIndex));
+      t.checkExpect(parallel.hash, single.hash);
+    }
+  }
+
+  // testing the floodit.labeling property, which lets big boards of the game be labeled
+  // by tiles
+  void testLabelPool(Tester t) {
+    Properties properties = new Properties();
+    t.checkExpect(FloodItWorld.labelPool(properties), null);
+    properties.setProperty("floodit.labeling", "serial");
+    t.checkExpect(FloodItWorld.labelPool(properties), null);
+    properties.setProperty("floodit.labeling", "tiles");
+    t.checkExpect(FloodItWorld.labelPool(properties) == ForkJoinPool.commonPool(), true);
+    properties.setProperty("floodit.labeling", "gpu");
+    t.checkException(new IllegalArgumentException("Unknown labeling gpu"),
+        this, "labelPool", properties);
+
+    // a board too big for Cells is labeled on the pool, and is the same game
+    FloodItWorld tiles = new FloodItWorld(new Random(3), 300, 6, 60);
+    tiles.labelPool = ForkJoinPool.commonPool();
+    tiles.generateColors();
+    FloodItWorld serial = new FloodItWorld(new Random(3), 300, 6, 60);
+    serial.generateColors();
+    FloodItGame tiled = tiles.newGame();
+    FloodItGame single = serial.newGame();
+    t.checkExpect(tiled.grid.colors, single.grid.colors);
+    t.checkExpect(tiled.regions.component, single.regions.component);
+    t.checkExpect(tiled.regions.regionSize, single.regions.regionSize);
+  }
+
+  // returns the pool asked for by the given properties
+  ForkJoinPool labelPool(Properties properties) {
+    return FloodItWorld.labelPool(properties);
+  }
+}
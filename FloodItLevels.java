@@ -0,0 +1,528 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import tester.Tester;
+
+// A board made from a seed, just as FloodItWorld.seededGame makes it, with the fewest
+// moves found to win it
+class Level {
+  // the seed the board and palette were made from
+  long seed;
+  // the moves needed to win, by the exact search if it finished, or else the beam search
+  int moves;
+  // the game, with the turns a random board gets, and its palette
+  FloodItGame game;
+  Palette palette;
+
+  Level(long seed, int moves, FloodItGame game, Palette palette) {
+    this.seed = seed;
+    this.moves = moves;
+    this.game = game;
+    this.palette = palette;
+  }
+}
+
+// The levels needing from minMoves up to maxMoves moves, each given that many turns plus
+// the slack
+class LevelBand {
+  String name;
+  int minMoves;
+  int maxMoves;
+  int slack;
+
+  LevelBand(String name, int minMoves, int maxMoves, int slack) {
+    this.name = name;
+    this.minMoves = minMoves;
+    this.maxMoves = maxMoves;
+    this.slack = slack;
+  }
+
+  // determines if the given level belongs in the band; a board that starts flooded is no
+  // level at all
+  boolean accepts(Level level) {
+    return level.moves > 0 && level.moves >= minMoves && level.moves <= maxMoves;
+  }
+
+  // returns the turns the given level is played with
+  int turnsFor(Level level) {
+    return level.moves + slack;
+  }
+
+  // returns the given levels that belong in the band, in the same order
+  ArrayList<Level> filter(List<Level> levels) {
+    ArrayList<Level> kept = new ArrayList<Level>();
+    for (Level level : levels) {
+      if (this.accepts(level)) {
+        kept.add(level);
+      }
+    }
+    return kept;
+  }
+
+  // returns a band of each of the given names, from the easiest up, splitting the given
+  // levels as evenly as the moves they need allow. Levels needing the same moves are
+  // always in the same band, the easier one, so a band can end up empty.
+  static ArrayList<LevelBand> split(List<Level> levels, String[] names, int[] slacks) {
+    if (levels.isEmpty()) {
+      throw new IllegalArgumentException("No levels to split");
+    }
+    int[] moves = new int[levels.size()];
+    for (int i = 0; i < moves.length; i++) {
+      moves[i] = levels.get(i).moves;
+    }
+    Arrays.sort(moves);
+    ArrayList<LevelBand> bands = new ArrayList<LevelBand>();
+    int min = 0;
+    for (int k = 0; k < names.length; k++) {
+      int max = k == names.length - 1 ? Integer.MAX_VALUE
+          : moves[Math.max(0, (k + 1) * moves.length / names.length - 1)];
+      bands.add(new LevelBand(names[k], min, max, slacks[k]));
+      min = Math.max(min, max + 1);
+    }
+    return bands;
+  }
+}
+
+// Rates the boards of a range of seeds, splitting the range in half until it is small
+// enough for one thread. Like every fork/join task here, it is never serialized.
+@SuppressWarnings("serial")
+class LevelTask extends RecursiveTask<ArrayList<Level>> {
+  LevelGenerator generator;
+  // the first seed, and one past the last seed, to rate
+  long from;
+  long to;
+
+  LevelTask(LevelGenerator generator, long from, long to) {
+    this.generator = generator;
+    this.from = from;
+    this.to = to;
+  }
+
+  protected ArrayList<Level> compute() {
+    if (to - from <= generator.boardsPerTask) {
+      ArrayList<Level> levels = new ArrayList<Level>();
+      for (long seed = from; seed < to; seed++) {
+        levels.add(generator.rate(seed));
+      }
+      return levels;
+    }
+    long middle = from + (to - from) / 2;
+    LevelTask left = new LevelTask(generator, from, middle);
+    left.fork();
+    ArrayList<Level> right = new LevelTask(generator, middle, to).compute();
+    ArrayList<Level> levels = left.join();
+    levels.addAll(right);
+    return levels;
+  }
+}
+
+// Makes levels offline: rates the boards of many seeds on a fork-join pool by the moves
+// they need, splits them into bands of difficulty, and writes a pack of each band that
+// the game plays from instead of making boards of its own
+class LevelGenerator {
+  // The number of cells in each row or column
+  int boardSize;
+  // Number of colors in the game
+  int numOfColors;
+  // the most positions the exact search of a board looks at before the beam search
+  // rates it instead, and the width of the beam
+  long maxNodes;
+  int beamWidth;
+  // the entries of the transposition table of each search, kept small since every
+  // board gets a table of its own
+  int tableSize;
+  // the number of boards one task rates before it is worth splitting
+  int boardsPerTask;
+
+  LevelGenerator(int boardSize, int numOfColors) {
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+    this.maxNodes = 1000000;
+    this.beamWidth = 64;
+    this.tableSize = 1 << 16;
+    this.boardsPerTask = 4;
+  }
+
+  // returns the level of the board and palette a FloodItWorld seeded with the given seed
+  // would start with
+  Level rate(long seed) {
+    FloodItWorld world = new FloodItWorld(new Random(seed), boardSize, numOfColors, 60);
+    world.generateColors();
+    FloodItGame game = world.newGame();
+    FloodItSolver solver = new FloodItSolver(game.regions, numOfColors);
+    solver.maxNodes = maxNodes;
+    solver.tableSize = tableSize;
+    return new Level(seed, solver.movesNeeded(beamWidth), game, world.palette);
+  }
+
+  // rates the boards of seeds from the first seed up to, but not including, the last, on
+  // the given pool, and returns their levels in order of seed
+  ArrayList<Level> rateAll(long from, long to, ForkJoinPool pool) {
+    return pool.invoke(new LevelTask(this, from, to));
+  }
+
+  // rates the boards of seeds from the first seed up to, but not including, the last,
+  // using every core
+  ArrayList<Level> rateAll(long from, long to) {
+    return this.rateAll(from, to, ForkJoinPool.commonPool());
+  }
+
+  // the bands the packs are split into, and the turns each gives beyond the moves needed
+  static final String[] BAND_NAMES = {"easy", "medium", "hard"};
+  static final int[] BAND_SLACKS = {4, 2, 0};
+
+  // Rates a batch of boards and writes a pack of each band, named after the prefix and
+  // the band. Run it with
+  //   java LevelGenerator [prefix] [boards] [board size] [colors]
+  public static void main(String[] args) throws IOException {
+    String prefix = args.length > 0 ? args[0] : "levels";
+    int boards = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int boardSize = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+    int numOfColors = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+    LevelGenerator generator = new LevelGenerator(boardSize, numOfColors);
+    long start = System.nanoTime();
+    ArrayList<Level> levels = generator.rateAll(0, boards);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format("rated %d boards on %d threads in %.2fs (%.0f boards/s)",
+        levels.size(), ForkJoinPool.commonPool().getParallelism(), seconds,
+        levels.size() / seconds));
+    for (LevelBand band : LevelBand.split(levels, BAND_NAMES, BAND_SLACKS)) {
+      ArrayList<Level> kept = band.filter(levels);
+      if (kept.isEmpty()) {
+        System.out.println(band.name + ": no levels");
+      }
+      else {
+        Path path = Paths.get(prefix + "-" + band.name + ".pack");
+        LevelGenerator.writePack(path, kept, band);
+        System.out.println(String.format("%s: %d levels in %s", band.name, kept.size(), path));
+      }
+    }
+  }
+
+  // writes the given levels that belong in the given band to the given file, in order,
+  // each with the turns of the band
+  static void writePack(Path path, List<Level> levels, LevelBand band) throws IOException {
+    ArrayList<Level> kept = band.filter(levels);
+    if (kept.isEmpty()) {
+      throw new IllegalArgumentException("No levels in the band " + band.name);
+    }
+    FloodItGame first = kept.get(0).game;
+    int levelSize = LevelPack.LEVEL_HEADER_SIZE
+        + (int) GameFile.saveSize(first.boardSize, first.numOfColors);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(LevelPack.HEADER_SIZE);
+      header.putInt(LevelPack.MAGIC).putShort((short) LevelPack.VERSION).putShort((short) 0);
+      header.putInt(first.boardSize).putInt(first.numOfColors).putInt(kept.size());
+      header.putInt(levelSize);
+      header.flip();
+      writeAll(channel, header);
+      for (Level level : kept) {
+        if (level.game.boardSize != first.boardSize
+            || level.game.numOfColors != first.numOfColors) {
+          throw new IllegalArgumentException("The levels of a pack must all be the same size");
+        }
+        ByteBuffer levelHeader = ByteBuffer.allocate(LevelPack.LEVEL_HEADER_SIZE);
+        levelHeader.putLong(level.seed).putInt(level.moves).putInt(0);
+        levelHeader.flip();
+        writeAll(channel, levelHeader);
+        FloodItGame game = new FloodItGame(level.game.grid, level.game.numOfColors,
+            band.turnsFor(level));
+        writeAll(channel, GameFile.encode(game, level.palette, 0, "stagnant"));
+      }
+    }
+  }
+
+  // writes all of the given buffer to the given channel
+  static void writeAll(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
+
+class ExamplesFloodItLevels {
+
+  // writes the levels of the given band to a new temporary file and returns its path
+  Path writePack(List<Level> levels, LevelBand band) {
+    try {
+      Path path = Files.createTempFile("floodit", ".pack");
+      path.toFile().deleteOnExit();
+      LevelGenerator.writePack(path, levels, band);
+      return path;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // writes the levels of the given band to a new temporary file and opens it again
+  LevelPack roundTrip(List<Level> levels, LevelBand band) {
+    try {
+      return LevelPack.open(this.writePack(levels, band));
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // returns the world to start with, for checkException
+  FloodItWorld fromProperties(Properties properties) {
+    return FloodItWorld.fromProperties(properties, 6, 4, 60);
+  }
+
+  // returns a pack read from the given bytes, for checkException
+  LevelPack readPack(byte[] bytes) {
+    return new LevelPack(ByteBuffer.wrap(bytes));
+  }
+
+  // returns a level needing the given moves, without a board
+  Level level(int moves) {
+    return new Level(moves, moves, null, null);
+  }
+
+  // testing rate
+  void testRate(Tester t) {
+    Level level = new LevelGenerator(2, 2).rate(10);
+    t.checkExpect(level.seed, 10L);
+    t.checkExpect(level.moves, 1);
+    // the same board and palette as the world seeded with 10
+    t.checkExpect(level.game.grid.colors, FloodItWorld.seededGame(10, 2, 2).grid.colors);
+    FloodItWorld world = new FloodItWorld(new Random(10), 2, 2, 60);
+    world.generateColors();
+    t.checkExpect(level.palette, world.palette);
+
+    // the beam search rates the boards the exact search gives up on
+    LevelGenerator generator = new LevelGenerator(14, 6);
+    generator.maxNodes = 10;
+    Level beam = generator.rate(3);
+    t.checkExpect(beam.game.grid.colors, FloodItWorld.seededGame(3, 14, 6).grid.colors);
+    FloodItSolver solver = new FloodItSolver(FloodItWorld.seededGame(3, 14, 6).regions, 6);
+    solver.maxNodes = 10;
+    t.checkExpect(beam.moves, solver.movesNeeded(64));
+  }
+
+  // testing rateAll
+  void testRateAll(Tester t) {
+    LevelGenerator generator = new LevelGenerator(6, 4);
+    // the levels do not depend on how many threads rate them
+    ArrayList<Level> parallel = generator.rateAll(0, 40);
+    ForkJoinPool pool = new ForkJoinPool(1);
+    ArrayList<Level> single = generator.rateAll(0, 40, pool);
+    pool.shutdown();
+    t.checkExpect(parallel.size(), 40);
+    for (int i = 0; i < 40; i++) {
+      t.checkExpect(parallel.get(i).seed, (long) i);
+      t.checkExpect(parallel.get(i).moves, single.get(i).moves);
+      t.checkExpect(parallel.get(i).game.grid.colors, single.get(i).game.grid.colors);
+    }
+    // the exact search finishes on boards this small
+    FloodItSolver solver = new FloodItSolver(parallel.get(7).game.regions, 4);
+    t.checkExpect(parallel.get(7).moves, solver.solveExact().length);
+  }
+
+  // testing LevelBand
+  void testLevelBand(Tester t) {
+    LevelBand band = new LevelBand("medium", 3, 5, 2);
+    t.checkExpect(band.accepts(this.level(2)), false);
+    t.checkExpect(band.accepts(this.level(3)), true);
+    t.checkExpect(band.accepts(this.level(5)), true);
+    t.checkExpect(band.accepts(this.level(6)), false);
+    t.checkExpect(band.turnsFor(this.level(4)), 6);
+    t.checkExpect(new LevelBand("easy", 0, 5, 0).accepts(this.level(0)), false);
+    ArrayList<Level> levels = new ArrayList<Level>(Arrays.asList(
+        this.level(6), this.level(2), this.level(4), this.level(3)));
+    ArrayList<Level> kept = band.filter(levels);
+    t.checkExpect(kept.size(), 2);
+    t.checkExpect(kept.get(0).moves, 4);
+    t.checkExpect(kept.get(1).moves, 3);
+  }
+
+  // testing split
+  void testSplit(Tester t) {
+    String[] names = {"easy", "medium", "hard"};
+    int[] slacks = {4, 2, 0};
+    ArrayList<Level> levels = new ArrayList<Level>(Arrays.asList(this.level(7),
+        this.level(5), this.level(3), this.level(6), this.level(4), this.level(5)));
+    ArrayList<LevelBand> bands = LevelBand.split(levels, names, slacks);
+    t.checkExpect(bands.get(0), new LevelBand("easy", 0, 4, 4));
+    t.checkExpect(bands.get(1), new LevelBand("medium", 5, 5, 2));
+    t.checkExpect(bands.get(2), new LevelBand("hard", 6, Integer.MAX_VALUE, 0));
+    // levels needing the same moves stay together in the easier band, leaving the middle
+    // band empty
+    ArrayList<Level> same = new ArrayList<Level>(Arrays.asList(
+        this.level(5), this.level(5), this.level(5), this.level(8)));
+    ArrayList<LevelBand> split = LevelBand.split(same, names, slacks);
+    t.checkExpect(split.get(0).filter(same).size(), 3);
+    t.checkExpect(split.get(1).filter(same).size(), 0);
+    t.checkExpect(split.get(2).filter(same).size(), 1);
+    t.checkException(new IllegalArgumentException("No levels to split"),
+        this, "splitNone");
+  }
+
+  // splits no levels, for checkException
+  ArrayList<LevelBand> splitNone() {
+    return LevelBand.split(new ArrayList<Level>(), new String[] {"easy"}, new int[] {0});
+  }
+
+  // testing write and open
+  void testWriteAndOpen(Tester t) {
+    ArrayList<Level> levels = new LevelGenerator(6, 4).rateAll(0, 30);
+    LevelBand band = new LevelBand("all", 0, Integer.MAX_VALUE, 3);
+    LevelPack pack = this.roundTrip(levels, band);
+    t.checkExpect(pack.boardSize, 6);
+    t.checkExpect(pack.numOfColors, 4);
+    t.checkExpect(pack.count, 30);
+    t.checkExpect(pack.levelSize, 16 + 72);
+    t.checkExpect(pack.buffer.capacity(), 24 + 30 * 88);
+    for (int i = 0; i < 30; i++) {
+      Level level = levels.get(i);
+      t.checkExpect(pack.seedAt(i), level.seed);
+      t.checkExpect(pack.movesAt(i), level.moves);
+      SavedGame saved = pack.get(i);
+      t.checkExpect(saved.palette, level.palette);
+      t.checkExpect(saved.gameState, "stagnant");
+      FloodItGame game = saved.toGame();
+      t.checkExpect(game.grid.colors, level.game.grid.colors);
+      t.checkExpect(game.turnsLeft, level.moves + 3);
+    }
+    t.checkException(new IllegalArgumentException("No level 30 in the pack"),
+        pack, "get", 30);
+    t.checkException(new IllegalArgumentException("No level -1 in the pack"),
+        pack, "seedAt", -1);
+
+    // only the levels of the band are written
+    LevelBand hard = new LevelBand("hard", 9, Integer.MAX_VALUE, 0);
+    LevelPack hardPack = this.roundTrip(levels, hard);
+    t.checkExpect(hardPack.count, hard.filter(levels).size());
+    t.checkExpect(hardPack.seedAt(0), hard.filter(levels).get(0).seed);
+    t.checkExpect(hardPack.get(0).turnsLeft, hardPack.movesAt(0));
+    t.checkException(new IllegalArgumentException("No levels in the band none"),
+        this, "roundTrip", levels, new LevelBand("none", 100, 200, 0));
+  }
+
+  // testing that packs that are not whole are refused
+  void testOpenErrors(Tester t) {
+    ArrayList<Level> levels = new LevelGenerator(4, 3).rateAll(0, 3);
+    LevelPack pack = this.roundTrip(levels, new LevelBand("all", 0, 100, 0));
+    byte[] bytes = new byte[pack.buffer.capacity()];
+    pack.buffer.get(0, bytes);
+    t.checkExpect(this.readPack(bytes).count, pack.count);
+    t.checkException(new IllegalArgumentException("The pack is cut short"),
+        this, "readPack", Arrays.copyOf(bytes, bytes.length - 1));
+    t.checkException(new IllegalArgumentException("Not a level pack"),
+        this, "readPack", Arrays.copyOf(bytes, 10));
+    byte[] empty = Arrays.copyOf(bytes, 24);
+    empty[19] = 0;
+    t.checkException(new IllegalArgumentException("The pack has no levels"),
+        this, "readPack", empty);
+    byte[] version = bytes.clone();
+    version[5] = 9;
+    t.checkException(new IllegalArgumentException("Unsupported pack version 9"),
+        this, "readPack", version);
+    byte[] magic = bytes.clone();
+    magic[0] = 0;
+    t.checkException(new IllegalArgumentException("Not a level pack"),
+        this, "readPack", magic);
+  }
+
+  // testing a world playing the levels of a pack
+  void testWorldPack(Tester t) {
+    ArrayList<Level> levels = new LevelGenerator(6, 4).rateAll(0, 3);
+    LevelPack pack = this.roundTrip(levels, new LevelBand("all", 0, 100, 1));
+    FloodItWorld world = new FloodItWorld(pack, 60);
+    world.fixedStep = true;
+    t.checkExpect(world.boardSize, 6);
+    world.makeScene();
+    t.checkExpect(world.boardMade, true);
+    t.checkExpect(world.game.grid.colors, levels.get(0).game.grid.colors);
+    t.checkExpect(world.game.turnsLeft, levels.get(0).moves + 1);
+    t.checkExpect(world.palette, levels.get(0).palette);
+    t.checkExpect(world.gameState, "stagnant");
+
+    // every reset starts the next level, and the pack starts over at the end
+    for (int i = 1; i <= 3; i++) {
+      world.gameState = "won";
+      world.onKeyEvent("r");
+      t.checkExpect(world.gameState, "stagnant");
+      t.checkExpect(world.game.grid.colors, levels.get(i % 3).game.grid.colors);
+      t.checkExpect(world.stopwatch, 0.0);
+      t.checkExpect(world.history.canUndo(), false);
+    }
+
+    // a level can be won in the turns it is given
+    int[] moves = new FloodItSolver(world.game.regions, 4).solveExact();
+    for (int move : moves) {
+      world.move(move);
+      while (world.gameState.equals("flooding")) {
+        world.onTick();
+      }
+    }
+    t.checkExpect(world.game.isWon(), true);
+    t.checkExpect(world.game.turnsLeft, 1);
+
+    // the game is logged from the seed of its level and the turns of its band, so it can
+    // be sent with a bug report and replayed
+    t.checkExpect(world.log.seed, levels.get(0).seed);
+    t.checkExpect(world.log.turnsLeft, levels.get(0).moves + 1);
+    t.checkExpect(world.log.start, null);
+    Replay replay = new Replay(MoveLog.decode(world.log.encode()));
+    replay.toEnd();
+    t.checkExpect(replay.game.grid.colors, world.game.grid.colors);
+    t.checkExpect(replay.game.turnsLeft, 1);
+  }
+
+  // testing that the game plays from the pack named by floodit.pack
+  void testFromProperties(Tester t) {
+    Properties properties = new Properties();
+    FloodItWorld random = this.fromProperties(properties);
+    t.checkExpect(random.pack, null);
+    t.checkExpect(random.boardSize, 6);
+
+    ArrayList<Level> levels = new LevelGenerator(5, 3).rateAll(0, 3);
+    Path path = this.writePack(levels, new LevelBand("all", 0, 100, 2));
+    properties.setProperty("floodit.pack", path.toString());
+    FloodItWorld world = this.fromProperties(properties);
+    t.checkExpect(world.pack.count, 3);
+    t.checkExpect(world.boardSize, 5);
+    t.checkExpect(world.numOfColors, 3);
+    world.makeScene();
+    t.checkExpect(world.game.grid.colors, levels.get(0).game.grid.colors);
+
+    properties.setProperty("floodit.pack", path.toString() + ".missing");
+    t.checkException(new IllegalArgumentException("Cannot open the level pack "
+        + path.toString() + ".missing"), this, "fromProperties", properties);
+  }
+
+  // testing that a level given no turns beyond the moves it needs, like the levels of the
+  // hard band, can be won in the world
+  void testWorldPackNoSlack(Tester t) {
+    ArrayList<Level> levels = new LevelGenerator(6, 4).rateAll(0, 5);
+    LevelPack pack = this.roundTrip(levels, new LevelBand("hard", 0, 100, 0));
+    for (int i = 0; i < pack.count; i++) {
+      FloodItWorld world = new FloodItWorld(pack, 60);
+      world.fixedStep = true;
+      world.nextLevel = i;
+      world.resetBoard();
+      t.checkExpect(world.game.turnsLeft, pack.movesAt(i));
+      int[] moves = new FloodItSolver(world.game.regions, 4).solveExact();
+      t.checkExpect(moves.length, pack.movesAt(i));
+      for (int move : moves) {
+        world.move(move);
+        while (world.gameState.equals("flooding")) {
+          world.onTick();
+        }
+      }
+      t.checkExpect(world.gameState, "won");
+      t.checkExpect(world.game.isWon(), true);
+      t.checkExpect(world.game.turnsLeft, 0);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+import java.io.PrintStream;
+import java.util.*;
+import tester.Tester;
+
+class ExamplesFloodItMetrics {
+
+  // returns metrics that are turned on, and do not report
+  Metrics enabled() {
+    Properties properties = new Properties();
+    properties.setProperty("floodit.metrics", "text");
+    return Metrics.fromProperties(properties);
+  }
+
+  // testing Histogram
+  void testHistogram(Tester t) {
+    Histogram h = new Histogram();
+    t.checkExpect(h.percentile(0.99), 0L);
+    t.checkInexact(h.mean(), 0.0, 0.001);
+    h.record(0);
+    h.record(1);
+    h.record(5);
+    h.record(6);
+    h.record(100);
+    t.checkExpect(h.buckets[0], 1L);
+    t.checkExpect(h.buckets[1], 1L);
+    t.checkExpect(h.buckets[3], 2L);
+    t.checkExpect(h.buckets[7], 1L);
+    t.checkExpect(h.count, 5L);
+    t.checkInexact(h.mean(), 22.4, 0.001);
+    t.checkExpect(h.percentile(0.2), 0L);
+    t.checkExpect(h.percentile(0.5), 7L);
+    t.checkExpect(h.percentile(0.8), 7L);
+    // never more than the largest value
+    t.checkExpect(h.percentile(1.0), 100L);
+    h.record(Long.MAX_VALUE);
+    t.checkExpect(h.buckets[63], 1L);
+    t.checkExpect(h.percentile(1.0), Long.MAX_VALUE);
+    h.clear();
+    t.checkExpect(h.count, 0L);
+    t.checkExpect(h.buckets[3], 0L);
+  }
+
+  // testing that metrics turned off record nothing
+  void testDisabled(Tester t) {
+    Metrics metrics = Metrics.fromProperties(new Properties());
+    t.checkExpect(metrics.enabled, false);
+    t.checkExpect(metrics.start(), 0L);
+    metrics.stop(Metrics.FLOOD, 0);
+    metrics.move(10);
+    metrics.recolor(10);
+    metrics.frame();
+    t.checkExpect(metrics.latency[Metrics.FLOOD].count, 0L);
+    t.checkExpect(metrics.moves, 0L);
+    t.checkExpect(metrics.frames, 0L);
+    Properties properties = new Properties();
+    properties.setProperty("floodit.metrics", "xml");
+    t.checkException(new IllegalArgumentException("Unknown metrics format xml"),
+        this, "fromProperties", properties);
+  }
+
+  // returns the metrics asked for by the given properties
+  Metrics fromProperties(Properties properties) {
+    return Metrics.fromProperties(properties);
+  }
+
+  // testing the counters and reports
+  void testMetrics(Tester t) {
+    Metrics metrics = this.enabled();
+    t.checkExpect(metrics.json, false);
+    long start = metrics.start();
+    t.checkExpect(start > 0, true);
+    metrics.stop(Metrics.SCENE, start);
+    metrics.move(12);
+    metrics.move(3);
+    metrics.recolor(7);
+    metrics.frame();
+    metrics.frame();
+    t.checkExpect(metrics.latency[Metrics.SCENE].count, 1L);
+    t.checkExpect(metrics.moves, 2L);
+    t.checkExpect(metrics.absorbed.sum, 15L);
+    t.checkExpect(metrics.recolored, 7L);
+    t.checkExpect(metrics.frames, 2L);
+    // the first frame has nothing to compare its allocations with
+    t.checkExpect(metrics.allocated.count, Metrics.allocatedBytes() >= 0 ? 1L : 0L);
+    t.checkExpect(metrics.toText().startsWith("frames 2, moves 2, cells recolored 7"), true);
+    t.checkExpect(metrics.toJson().startsWith(
+        "{\"frames\":2,\"moves\":2,\"recolored\":7,\"latency\":{\"flood\":{\"count\":0,"),
+        true);
+    t.checkExpect(metrics.toJson().contains(
+        "\"absorbed\":{\"count\":2,\"mean\":7.5,\"p50\":3,\"p99\":12,\"max\":12}"), true);
+    metrics.clear();
+    t.checkExpect(metrics.frames, 0L);
+    t.checkExpect(metrics.enabled, true);
+  }
+
+  // testing the reports printed every few frames
+  void testReports(Tester t) {
+    Properties properties = new Properties();
+    properties.setProperty("floodit.metrics", "json");
+    properties.setProperty("floodit.metrics.every", "2");
+    Metrics metrics = Metrics.fromProperties(properties);
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    metrics.out = new PrintStream(bytes, true);
+    metrics.frame();
+    t.checkExpect(bytes.size(), 0);
+    metrics.frame();
+    t.checkExpect(bytes.toString().startsWith("{\"frames\":2,"), true);
+  }
+
+  // testing the metrics of a world
+  void testWorldMetrics(Tester t) {
+    FloodItWorld world = new FloodItWorld(new Random(10), 2, 2, 60);
+    world.metrics = this.enabled();
+    world.resetBoard();
+    world.makeScene();
+    world.onMouseClicked(new javalib.worldimages.Posn(60, 20));
+    while (world.gameState.equals("flooding")) {
+      world.onTick();
+    }
+    world.makeScene();
+    Metrics metrics = world.metrics;
+    t.checkExpect(metrics.frames, 2L);
+    t.checkExpect(metrics.moves, 1L);
+    t.checkExpect(metrics.absorbed.sum, 1L);
+    t.checkExpect(metrics.recolored, 3L);
+    t.checkExpect(metrics.latency[Metrics.HIT_TEST].count, 1L);
+    t.checkExpect(metrics.latency[Metrics.FLOOD].count, 1L);
+    t.checkExpect(metrics.latency[Metrics.SCENE].count, 2L);
+    t.checkExpect(metrics.latency[Metrics.ANIMATION].count > 0, true);
+    // a world made for testing keeps its metrics off
+    t.checkExpect(new FloodItWorld(new Random(10), 2, 2, 60).metrics.enabled, false);
+  }
+}
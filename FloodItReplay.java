@@ -0,0 +1,260 @@
+import java.util.*;
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+// Plays the moves of a log again without animating them, and can jump to any move. A
+// checkpoint is kept every few moves the first time the replay passes them, so jumping
+// back only replays the moves since the closest checkpoint.
+class Replay {
+  MoveLog log;
+  // the number of moves between checkpoints
+  int interval;
+  // the game after the moves replayed so far
+  FloodItGame game;
+  // the number of moves replayed so far
+  int position;
+  // the checkpoint after every interval moves, as far as the replay has gone
+  ArrayList<GameCheckpoint> checkpoints;
+
+  Replay(MoveLog log, int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException("Checkpoints must be at least one move apart");
+    }
+    this.log = log;
+    this.interval = interval;
+    this.checkpoints = new ArrayList<GameCheckpoint>(Arrays.asList(log.start()));
+    this.game = checkpoints.get(0).restore();
+    this.position = 0;
+  }
+
+  // Constructor that keeps a checkpoint every 16 moves
+  Replay(MoveLog log) {
+    this(log, 16);
+  }
+
+  // makes the next move of the log
+  void step() {
+    if (position == log.size) {
+      throw new IllegalArgumentException("No moves left to replay");
+    }
+    game.applyMove(log.move(position));
+    position++;
+    if (position % interval == 0 && position / interval == checkpoints.size()) {
+      checkpoints.add(new GameCheckpoint(position, game));
+    }
+  }
+
+  // brings the game to just after the given number of moves
+  void seek(int moves) {
+    if (moves < 0 || moves > log.size) {
+      throw new IllegalArgumentException("No move " + moves + " in the log");
+    }
+    GameCheckpoint closest = checkpoints.get(Math.min(moves / interval,
+        checkpoints.size() - 1));
+    if (moves < position || closest.moves > position) {
+      this.game = closest.restore();
+      this.position = closest.moves;
+    }
+    while (position < moves) {
+      this.step();
+    }
+  }
+
+  // brings the game to the end of the log
+  void toEnd() {
+    this.seek(log.size);
+  }
+}
+
+class ExamplesFloodItReplay {
+
+  // plays a world with the given seed, always clicking a cell bordering the flood and
+  // letting each flood finish, and returns it once the game is over
+  FloodItWorld play(long seed) {
+    FloodItWorld world = new FloodItWorld(seed, 10, 4, 60);
+    // each tick animates a frame, so a flood takes ticks and not seconds
+    world.fixedStep = true;
+    world.resetBoard();
+    while (!world.gameState.equals("won") && !world.gameState.equals("lost")) {
+      RegionGraph regions = world.game.regions;
+      int index = regions.cellOrder[regions.cellStart[regions.frontierRegion()]];
+      world.onMouseClicked(new Posn((index % 10) * 40 + 20, (index / 10) * 40 + 20));
+      world.onTick();
+      while (world.gameState.equals("flooding")) {
+        world.onTick();
+      }
+    }
+    return world;
+  }
+
+  // testing MoveLog
+  void testMoveLog(Tester t) {
+    MoveLog log = new MoveLog(new FloodItGame(2, 2, 10));
+    t.checkExpect(log.seeded, false);
+    t.checkExpect(log.start.grid.colors, new byte[] {1, 0, 0, 0});
+    for (int k = 0; k < 40; k++) {
+      log.record(k % 3, 1000L * k);
+    }
+    t.checkExpect(log.size, 40);
+    t.checkExpect(log.move(5), 2);
+    t.checkExpect(log.tick(5), 5000L);
+    t.checkExpect(log.tick(39), 39000L);
+    t.checkException(new IllegalArgumentException("Only logs with a seed can be encoded"),
+        log, "encode");
+    t.checkException(new IllegalArgumentException("The log has no seed or starting board"),
+        new MoveLog(2, 2, 10) {
+          GameCheckpoint start() {
+            this.seeded = false;
+            return super.start();
+          }
+        }, "start");
+  }
+
+  // testing encode and decode
+  void testEncode(Tester t) {
+    MoveLog log = new MoveLog(14, 6, -7);
+    log.record(3, 12);
+    log.record(0, 40);
+    t.checkExpect(log.encode(), "14 6 -7 12:3 40:0");
+    MoveLog decoded = MoveLog.decode("14 6 -7 12:3 40:0");
+    t.checkExpect(decoded.seed, -7L);
+    t.checkExpect(decoded.size, 2);
+    t.checkExpect(decoded.move(0), 3);
+    t.checkExpect(decoded.tick(1), 40L);
+    t.checkExpect(MoveLog.decode("5 3 1").size, 0);
+    // a game that started with turns of its own
+    MoveLog level = new MoveLog(14, 6, -7, 30);
+    level.record(3, 12);
+    t.checkExpect(level.encode(), "14 6 -7/30 12:3");
+    t.checkExpect(MoveLog.decode("14 6 -7/30 12:3").turnsLeft, 30);
+    t.checkExpect(MoveLog.decode("14 6 -7/30 12:3").start().turnsLeft, 30);
+    t.checkExpect(decoded.turnsLeft, -1);
+    t.checkExpect(decoded.start().turnsLeft, FloodItWorld.seededGame(-7, 14, 6).turnsLeft);
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1/2/3"),
+        this, "decode", "5 3 1/2/3");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1/x"),
+        this, "decode", "5 3 1/x");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 x"),
+        this, "decode", "5 3 x");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1 12"),
+        this, "decode", "5 3 1 12");
+    // moves that would not pack into a long, or are not in the palette
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1 12:300"),
+        this, "decode", "5 3 1 12:300");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1 12:3"),
+        this, "decode", "5 3 1 12:3");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1 12:-1"),
+        this, "decode", "5 3 1 12:-1");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1 -1:0"),
+        this, "decode", "5 3 1 -1:0");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1 36028797018963968:0"),
+        this, "decode", "5 3 1 36028797018963968:0");
+    t.checkException(new IllegalArgumentException("Not a move log: 5 3 1 12:1:2"),
+        this, "decode", "5 3 1 12:1:2");
+    t.checkExpect(MoveLog.decode("5 3 1 36028797018963967:2").tick(0),
+        36028797018963967L);
+    t.checkExpect(MoveLog.decode("5 3 1 36028797018963967:2").move(0), 2);
+  }
+
+  // returns the log written as the given text
+  MoveLog decode(String text) {
+    return MoveLog.decode(text);
+  }
+
+  // testing that the world logs its moves and that a replay rebuilds the game
+  void testReplayWorld(Tester t) {
+    FloodItWorld world = this.play(21);
+    MoveLog log = world.log;
+    t.checkExpect(log.seeded, true);
+    // the board of a seeded game is not copied, since the seed makes it again
+    t.checkExpect(log.start, null);
+    t.checkExpect(log.size > 3, true);
+    t.checkExpect(log.tick(0), 0L);
+    t.checkExpect(log.tick(1) > log.tick(0), true);
+    // from the starting board, and from the seed alone
+    Replay replay = new Replay(log, 4);
+    replay.toEnd();
+    t.checkExpect(replay.game.grid.colors, world.game.grid.colors);
+    t.checkExpect(replay.game.turnsLeft, world.game.turnsLeft);
+    t.checkExpect(replay.game.isWon(), world.game.isWon());
+    Replay fromSeed = new Replay(MoveLog.decode(log.encode()));
+    fromSeed.toEnd();
+    t.checkExpect(fromSeed.game.grid.colors, world.game.grid.colors);
+    t.checkExpect(fromSeed.game.grid.hash, world.game.grid.hash);
+  }
+
+  // testing that the logs of many games replay to the same boards
+  void testReplayMany(Tester t) {
+    for (long seed = 100; seed < 140; seed++) {
+      FloodItWorld world = this.play(seed);
+      Replay replay = new Replay(MoveLog.decode(world.log.encode()), 3);
+      replay.toEnd();
+      t.checkExpect(replay.game.grid.hash, world.game.grid.hash);
+      t.checkExpect(replay.game.turnsLeft, world.game.turnsLeft);
+    }
+  }
+
+  // testing seek and the checkpoints
+  void testSeek(Tester t) {
+    MoveLog log = this.play(5).log;
+    Replay replay = new Replay(log, 2);
+    t.checkExpect(replay.checkpoints.size(), 1);
+    replay.seek(log.size);
+    t.checkExpect(replay.position, log.size);
+    t.checkExpect(replay.checkpoints.size(), log.size / 2 + 1);
+    byte[] end = Arrays.copyOf(replay.game.grid.colors, 100);
+
+    // every move matches a replay from the start
+    for (int k = log.size; k >= 0; k--) {
+      replay.seek(k);
+      Replay fresh = new Replay(log, 1000);
+      fresh.seek(k);
+      t.checkExpect(replay.game.grid.colors, fresh.game.grid.colors);
+      t.checkExpect(replay.game.turnsLeft, fresh.game.turnsLeft);
+      t.checkExpect(replay.position, k);
+    }
+    // going back restores the closest checkpoint instead of starting over
+    replay.seek(log.size);
+    replay.seek(3);
+    t.checkExpect(replay.game.turnsLeft, log.start().turnsLeft - 3);
+    replay.seek(log.size);
+    t.checkExpect(replay.game.grid.colors, end);
+
+    t.checkException(new IllegalArgumentException("No move -1 in the log"),
+        replay, "seek", -1);
+    t.checkException(new IllegalArgumentException("No moves left to replay"),
+        replay, "step");
+    t.checkException(new IllegalArgumentException("Checkpoints must be at least one move apart"),
+        this, "replay", log);
+  }
+
+  // makes a replay with checkpoints zero moves apart
+  Replay replay(MoveLog log) {
+    return new Replay(log, 0);
+  }
+
+  // testing that seeded worlds make each game from a seed of its own
+  void testSeededWorld(Tester t) {
+    FloodItWorld world = new FloodItWorld(3, 6, 3, 60);
+    world.resetBoard();
+    long first = world.log.seed;
+    t.checkExpect(world.game.grid.colors, FloodItWorld.seededGame(first, 6, 3).grid.colors);
+    world.resetBoard();
+    t.checkExpect(world.log.seed != first, true);
+    t.checkExpect(world.game.grid.colors,
+        FloodItWorld.seededGame(world.log.seed, 6, 3).grid.colors);
+    t.checkExpect(world.palette, this.paletteOf(world.log.seed, 6, 3));
+    // worlds given their own random still log their moves, from the starting board
+    FloodItWorld fixture = new FloodItWorld(new Random(10), 2, 2, 60);
+    fixture.resetBoard();
+    t.checkExpect(fixture.log.seeded, false);
+    t.checkExpect(fixture.log.start.grid.colors, fixture.game.grid.colors);
+  }
+
+  // returns the palette a world seeded with the given seed would make
+  Palette paletteOf(long seed, int boardSize, int numOfColors) {
+    FloodItWorld world = new FloodItWorld(new Random(seed), boardSize, numOfColors, 60);
+    world.generateColors();
+    return world.palette;
+  }
+}
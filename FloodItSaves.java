@@ -0,0 +1,269 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+class ExamplesGameFile {
+
+  // saves the given game to a new temporary file and opens it again
+  SavedGame roundTrip(FloodItGame game, Palette palette, double stopwatch, String state) {
+    try {
+      Path path = Files.createTempFile("floodit", ".sav");
+      path.toFile().deleteOnExit();
+      GameFile.save(path, game, palette, stopwatch, state);
+      return GameFile.open(path);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // returns a palette of the given number of colors
+  Palette palette(int numOfColors) {
+    Palette palette = new Palette();
+    for (int c = 0; c < numOfColors; c++) {
+      palette.colors.add(new Color(c, 255 - c, c / 2));
+    }
+    return palette;
+  }
+
+  // testing bitsPerCell, colorsOffset, and saveSize
+  void testBitsPerCell(Tester t) {
+    t.checkExpect(GameFile.bitsPerCell(1), 0);
+    t.checkExpect(GameFile.bitsPerCell(2), 1);
+    t.checkExpect(GameFile.bitsPerCell(6), 3);
+    t.checkExpect(GameFile.bitsPerCell(8), 3);
+    t.checkExpect(GameFile.bitsPerCell(9), 4);
+    t.checkExpect(GameFile.bitsPerCell(256), 8);
+    t.checkExpect(GameFile.colorsOffset(1), 48);
+    t.checkExpect(GameFile.colorsOffset(4), 56);
+    t.checkExpect(GameFile.colorsOffset(2), 48);
+    t.checkExpect(GameFile.saveSize(6, 4), 72L);
+    t.checkExpect(GameFile.saveSize(1, 1), 48L);
+  }
+
+  // testing save and open
+  void testSaveAndOpen(Tester t) {
+    FloodItGame game = new FloodItGame(6, 4, 3);
+    game.applyMove((game.floodColorIndex + 1) % 4);
+    SavedGame saved = this.roundTrip(game, this.palette(4), 12.5, "stagnant");
+    t.checkExpect(saved.boardSize, 6);
+    t.checkExpect(saved.numOfColors, 4);
+    t.checkExpect(saved.bits, 2);
+    t.checkExpect(saved.turnsLeft, game.turnsLeft);
+    t.checkExpect(saved.floodColorIndex, game.floodColorIndex);
+    t.checkInexact(saved.stopwatch, 12.5, 0.0001);
+    t.checkExpect(saved.gameState, "stagnant");
+    t.checkExpect(saved.regionSize, game.regions.regionSize);
+    t.checkExpect(saved.palette, this.palette(4));
+    t.checkExpect(saved.buffer.capacity(), 56 + 16);
+    for (int index = 0; index < 36; index++) {
+      t.checkExpect(saved.colorAt(index), game.grid.colorAt(index));
+    }
+    FloodItGame loaded = saved.toGame();
+    t.checkExpect(loaded.grid.colors, game.grid.colors);
+    t.checkExpect(loaded.grid.counts, game.grid.counts);
+    t.checkExpect(loaded.grid.hash, game.grid.hash);
+    t.checkExpect(loaded.regions.regionSize, game.regions.regionSize);
+    t.checkExpect(loaded.turnsLeft, game.turnsLeft);
+  }
+
+  // testing that every width of packed colors reads back, including ones that cross
+  // from one long to the next
+  void testPacking(Tester t) {
+    int[] colorCounts = {1, 2, 3, 5, 6, 20, 100, 256};
+    for (int numOfColors : colorCounts) {
+      FloodItGame game = new FloodItGame(37, numOfColors,
+          new BoardGenerator(numOfColors, numOfColors));
+      SavedGame saved = this.roundTrip(game, this.palette(numOfColors), 0, "stagnant");
+      t.checkExpect(saved.toBoard().colors, game.grid.colors);
+      t.checkExpect(saved.colorAt(1368), game.grid.colorAt(1368));
+    }
+  }
+
+  // testing saves of a flood still animating
+  void testSaveFlooding(Tester t) {
+    FloodItGame game = new FloodItGame(6, 4, 3);
+    int move = (game.floodColorIndex + 1) % 4;
+    game.startMove(move);
+    SavedGame saved = this.roundTrip(game, this.palette(4), 0, "flooding");
+    t.checkExpect(saved.gameState, "stagnant");
+    FloodItGame finished = new FloodItGame(6, 4, 3);
+    finished.applyMove(move);
+    t.checkExpect(saved.toBoard().colors, finished.grid.colors);
+    t.checkExpect(saved.toGame().regions.regionSize, finished.regions.regionSize);
+
+    // a flood that takes the whole board
+    FloodItGame last = new FloodItGame(2, 2, 10);
+    last.startMove(0);
+    t.checkExpect(this.roundTrip(last, this.palette(2), 0, "flooding").gameState, "won");
+
+    // the last turn's flood of a game that is not won then
+    FloodBoard board = new FloodBoard(6);
+    for (int index = 1; index < 36; index++) {
+      board.setColor(index, index % 4);
+    }
+    FloodItGame lost = new FloodItGame(board, 4, 1);
+    lost.startMove(1);
+    SavedGame lostSave = this.roundTrip(lost, this.palette(4), 0, "flooding");
+    t.checkExpect(lostSave.gameState, "lost");
+    t.checkExpect(lostSave.turnsLeft, 0);
+
+    // the loaded game is over, so the player can start a new one
+    FloodItWorld world = new FloodItWorld(new Random(4), 6, 4, 60);
+    world.resetBoard();
+    world.load(lostSave);
+    t.checkExpect(world.gameState, "lost");
+    world.onKeyEvent("r");
+    t.checkExpect(world.gameState, "stagnant");
+    t.checkExpect(world.game.turnsLeft, 12);
+  }
+
+  // testing FloodItWorld's save and load
+  void testWorldSaveAndLoad(Tester t) {
+    FloodItWorld world = new FloodItWorld(new Random(4), 6, 3, 60);
+    world.resetBoard();
+    world.stopwatch = 42;
+    int index = world.game.regions.cellOrder[
+        world.game.regions.cellStart[world.game.regions.frontierRegion()]];
+    world.onMouseClicked(new Posn((index % 6) * 40 + 20, (index / 6) * 40 + 20));
+    FloodItWorld loaded = new FloodItWorld(new Random(1), 2, 2, 60);
+    try {
+      Path path = Files.createTempFile("floodit", ".sav");
+      path.toFile().deleteOnExit();
+      world.save(path);
+      loaded.load(GameFile.open(path));
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    // the flood is loaded as finished
+    while (world.gameState.equals("flooding")) {
+      world.onTick();
+    }
+    t.checkExpect(loaded.boardSize, 6);
+    t.checkExpect(loaded.dimension, 240);
+    t.checkExpect(loaded.gameState, world.gameState);
+    t.checkInexact(loaded.stopwatch, 42.0, 0.0001);
+    t.checkExpect(loaded.palette, world.palette);
+    t.checkExpect(loaded.game.grid.colors, world.game.grid.colors);
+    t.checkExpect(loaded.game.turnsLeft, world.game.turnsLeft);
+    t.checkExpect(loaded.game.regions.regionSize, world.game.regions.regionSize);
+    t.checkExpect(loaded.board.size(), 6);
+    t.checkExpect(loaded.origin.colorIndex(), world.origin.colorIndex());
+    t.checkExpect(loaded.floodColor, world.floodColor);
+
+    // a save loaded in the middle of a flood leaves nothing of the flood to animate
+    FloodItWorld flooding = new FloodItWorld(new Random(4), 6, 3, 60);
+    flooding.resetBoard();
+    flooding.onMouseClicked(new Posn((index % 6) * 40 + 20, (index / 6) * 40 + 20));
+    t.checkExpect(flooding.gameState, "flooding");
+    flooding.load(this.roundTrip(new FloodItGame(2, 2, 10), this.palette(2), 0, "stagnant"));
+    t.checkExpect(flooding.animation.finished(), true);
+    t.checkExpect(flooding.animation.total, 0);
+    flooding.onTick();
+    t.checkExpect(flooding.gameState, "stagnant");
+  }
+
+  // testing a board too big for Cells, which is only unpacked when it is played
+  void testLargeSave(Tester t) {
+    FloodItGame game = new FloodItGame(1000, 6, new BoardGenerator(8, 6));
+    SavedGame saved = this.roundTrip(game, this.palette(6), 0, "stagnant");
+    t.checkExpect(saved.buffer.capacity(), 64 + 375000);
+    t.checkExpect(saved.colorAt(999999), game.grid.colorAt(999999));
+    t.checkExpect(saved.colorAt(123457), game.grid.colorAt(123457));
+    t.checkExpect(saved.toGame().grid.hash, game.grid.hash);
+  }
+
+  // testing SavedGame's checks
+  void testSavedGameChecks(Tester t) {
+    ByteBuffer wrongVersion = ByteBuffer.allocate(64);
+    wrongVersion.putInt(GameFile.MAGIC).putShort((short) 2);
+    t.checkException(new IllegalArgumentException("Unsupported save version 2"),
+        this, "open", wrongVersion);
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", ByteBuffer.allocate(64));
+    ByteBuffer cut = ByteBuffer.allocate(56);
+    cut.putInt(GameFile.MAGIC).putShort((short) GameFile.VERSION).putShort((short) 1).putInt(100)
+        .putInt(2);
+    t.checkException(new IllegalArgumentException("The save is cut short"),
+        this, "open", cut);
+    t.checkException(new IllegalArgumentException("Unknown game state paused"),
+        this, "save", "paused");
+
+    // sizes and colors no save can have
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(0, 2));
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(-3, 2));
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(6, 0));
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(6, -1));
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(6, 257));
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(Integer.MAX_VALUE, 256));
+    // one color takes no bits, so only the number of cells can be too big
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(46341, 1));
+    t.checkExpect(this.open(this.header(46340, 1)).boardSize, 46340);
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", this.header(200000, 2));
+    t.checkExpect(GameFile.saveSize(Integer.MAX_VALUE, 256) > Integer.MAX_VALUE, true);
+    // a flood with a color the palette does not have
+    ByteBuffer floodColor = this.header(6, 3);
+    floodColor.putInt(20, 3);
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", floodColor);
+    // a state no save can have: floods are saved as finished
+    ByteBuffer flooding = this.header(2, 2);
+    flooding.putInt(36, GameFile.STATES.indexOf("flooding"));
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", flooding);
+    ByteBuffer unknown = this.header(2, 2);
+    unknown.putInt(36, GameFile.STATES.size());
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this, "open", unknown);
+    ByteBuffer lost = this.header(2, 2);
+    lost.putInt(36, GameFile.STATES.indexOf("lost"));
+    t.checkExpect(this.open(lost).gameState, "lost");
+
+    // a cell with an index that fits in its bits but is not in the palette
+    ByteBuffer cellColor = this.header(2, 3);
+    cellColor.putLong(GameFile.colorsOffset(3), 3L << 2);
+    t.checkExpect(this.open(cellColor).colorAt(0), 0);
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this.open(cellColor), "colorAt", 1);
+    t.checkException(new IllegalArgumentException("Not a Flood-It save"),
+        this.open(cellColor), "toBoard");
+
+    // the most colors a save can have still opens, if the save is all there
+    t.checkException(new IllegalArgumentException("The save is cut short"),
+        this, "open", this.header(6, 256));
+  }
+
+  // returns the header of a save with the given board size and number of colors, and
+  // room for nothing else
+  ByteBuffer header(int boardSize, int numOfColors) {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    buffer.putInt(GameFile.MAGIC).putShort((short) GameFile.VERSION)
+        .putShort((short) GameFile.bitsPerCell(numOfColors)).putInt(boardSize)
+        .putInt(numOfColors);
+    return buffer;
+  }
+
+  // opens the given bytes as a save
+  SavedGame open(ByteBuffer buffer) {
+    return new SavedGame(buffer);
+  }
+
+  // saves a small game with the given state
+  SavedGame save(String state) {
+    return this.roundTrip(new FloodItGame(2, 2, 10), this.palette(2), 0, state);
+  }
+}
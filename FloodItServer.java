@@ -0,0 +1,668 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import tester.Tester;
+
+// One game played through the server: the board and turns, the state, and the time,
+// without a canvas or a tick loop. Moves of one session are made one at a time, even if
+// it is played from two connections.
+class GameSession {
+  long id;
+  // the seed the board was made from, as FloodItWorld.seededGame makes it
+  long seed;
+  FloodItGame game;
+  // The current state of the game: "stagnant", "won" or "lost"
+  String gameState;
+  // the nanoTime the game started, the time it was won or lost, and the last time it was
+  // used, which only the store changes
+  long started;
+  long finished;
+  long lastUsed;
+
+  GameSession(long id, long seed, int boardSize, int numOfColors, long now) {
+    this.id = id;
+    this.seed = seed;
+    this.game = FloodItWorld.seededGame(seed, boardSize, numOfColors);
+    this.gameState = "stagnant";
+    this.started = now;
+    this.lastUsed = now;
+  }
+
+  // floods with the given palette index, at the given time
+  synchronized void move(int colorIndex, long now) {
+    game.applyMove(colorIndex);
+    if (game.isWon()) {
+      this.gameState = "won";
+    }
+    else if (game.isLost()) {
+      this.gameState = "lost";
+    }
+    if (!gameState.equals("stagnant")) {
+      this.finished = now;
+    }
+  }
+
+  // returns the seconds the game has been played at the given time, which stop counting
+  // once it is won or lost
+  synchronized double stopwatch(long now) {
+    return ((gameState.equals("stagnant") ? now : finished) - started) / 1e9;
+  }
+
+  // returns the turns left, the color of the flood, and the state
+  synchronized String status() {
+    return game.turnsLeft + " " + game.floodColorIndex + " " + gameState;
+  }
+}
+
+// The sessions of the server, at most a given number of them. The sessions are kept in
+// the order they were last used, so the one to evict when the store is full, and the
+// ones idle for too long, are always at the front.
+class SessionStore {
+  // the most sessions kept at once
+  int capacity;
+  // the nanoseconds a session can go unused before it is evicted
+  long idleNanos;
+  // the sessions by id, least recently used first
+  LinkedHashMap<Long, GameSession> sessions;
+  // the number of sessions evicted for being idle, or to make room
+  long idleEvictions;
+  long capacityEvictions;
+
+  SessionStore(int capacity, long idleNanos) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The store must hold at least one session");
+    }
+    this.capacity = capacity;
+    this.idleNanos = idleNanos;
+    this.sessions = new LinkedHashMap<Long, GameSession>(16, 0.75f, true);
+  }
+
+  // adds the given session, evicting the least recently used one if the store is full
+  synchronized void add(GameSession session) {
+    if (sessions.size() == capacity) {
+      Iterator<GameSession> eldest = sessions.values().iterator();
+      eldest.next();
+      eldest.remove();
+      capacityEvictions++;
+    }
+    sessions.put(session.id, session);
+  }
+
+  // returns the session with the given id, marking it as used at the given time
+  synchronized GameSession get(long id, long now) {
+    GameSession session = sessions.get(id);
+    if (session == null) {
+      throw new IllegalArgumentException("No session " + id);
+    }
+    session.lastUsed = now;
+    return session;
+  }
+
+  // removes the session with the given id, if there is one
+  synchronized void remove(long id) {
+    sessions.remove(id);
+  }
+
+  // evicts every session not used since the idle time before the given time, and
+  // returns how many there were
+  synchronized int evictIdle(long now) {
+    int evicted = 0;
+    Iterator<GameSession> eldest = sessions.values().iterator();
+    while (eldest.hasNext() && now - eldest.next().lastUsed > idleNanos) {
+      eldest.remove();
+      evicted++;
+    }
+    idleEvictions += evicted;
+    return evicted;
+  }
+
+  // returns the number of sessions
+  synchronized int size() {
+    return sessions.size();
+  }
+}
+
+// Hosts many games at once over a line-based protocol on a local socket. Each request is
+// one line, and each answer is one line starting with OK or ERR:
+//   NEW size colors [seed]   -> OK id turnsLeft floodColor state
+//   MOVE id color            -> OK turnsLeft floodColor state
+//   STATE id                 -> OK turnsLeft floodColor state seconds
+//   BOARD id                 -> OK the palette index of every cell, row by row
+//   END id                   -> OK
+//   STATS                    -> OK sessions moves p50 p99 max, the last three being the
+//                               nanoseconds the server took to make a move
+// Every connection is served by a thread of its own, a virtual one where the JVM has them.
+class FloodItServer {
+  static final int MAX_BOARD_SIZE = 100;
+  static final int MAX_COLORS = 16;
+
+  SessionStore store;
+  // gives each new session its id
+  AtomicLong nextId;
+  // the latency of the moves, in nanoseconds: each connection records its own, under its
+  // own lock, and they are only added up for STATS, under the server's lock. The moves of
+  // connections since closed are kept together, as are the moves handled outside of any
+  // connection.
+  Set<Histogram> openLatencies;
+  Histogram closedLatency;
+  Histogram unconnectedLatency;
+  ServerSocket socket;
+  // the connections open, closed along with the server
+  Set<Socket> clients;
+  // runs the handler of every connection, and the accept loop
+  ExecutorService connections;
+  // evicts the idle sessions every second
+  java.util.concurrent.ScheduledExecutorService evictor;
+
+  FloodItServer(SessionStore store) {
+    this.store = store;
+    this.nextId = new AtomicLong(1);
+    this.openLatencies = ConcurrentHashMap.newKeySet();
+    this.closedLatency = new Histogram();
+    this.unconnectedLatency = this.connect();
+    this.clients = ConcurrentHashMap.newKeySet();
+  }
+
+  // returns an executor that runs each task on a new virtual thread, or on a thread of
+  // its own from a cached pool on JVMs without virtual threads
+  static ExecutorService threadPerTask() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "floodit-connection");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  // starts listening on the given port of the loopback address, 0 for any free port,
+  // and returns the port
+  int start(int port) throws IOException {
+    this.socket = new ServerSocket();
+    socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+    this.connections = threadPerTask();
+    this.evictor = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "floodit-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    evictor.scheduleWithFixedDelay(() -> store.evictIdle(System.nanoTime()), 1, 1,
+        TimeUnit.SECONDS);
+    connections.execute(this::acceptAll);
+    return socket.getLocalPort();
+  }
+
+  // hands every connection to a thread of its own until the server is closed
+  void acceptAll() {
+    try {
+      while (true) {
+        Socket client = socket.accept();
+        clients.add(client);
+        connections.execute(() -> this.serve(client));
+      }
+    }
+    catch (IOException e) {
+      // the socket was closed
+    }
+  }
+
+  // answers the requests of one connection until it is closed
+  void serve(Socket client) {
+    Histogram latency = this.connect();
+    try (Socket open = client;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(open.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(open.getOutputStream(), true,
+            StandardCharsets.UTF_8)) {
+      String line = in.readLine();
+      while (line != null) {
+        out.println(this.handle(line, latency));
+        line = in.readLine();
+      }
+    }
+    catch (IOException e) {
+      // the client went away, or the server was closed
+    }
+    finally {
+      clients.remove(client);
+      this.disconnect(latency);
+    }
+  }
+
+  // stops taking connections and closes the ones open. Closing their sockets is what
+  // wakes the threads reading from them, since a thread blocked reading a socket does
+  // not notice being interrupted.
+  void close() throws IOException {
+    socket.close();
+    for (Socket client : clients) {
+      client.close();
+    }
+    evictor.shutdownNow();
+    connections.shutdownNow();
+  }
+
+  // returns the histogram the moves of a new connection are recorded in
+  Histogram connect() {
+    Histogram latency = new Histogram();
+    openLatencies.add(latency);
+    return latency;
+  }
+
+  // keeps the moves of the connection with the given histogram after it is closed
+  void disconnect(Histogram latency) {
+    synchronized (this) {
+      synchronized (latency) {
+        closedLatency.add(latency);
+      }
+      openLatencies.remove(latency);
+    }
+  }
+
+  // returns the latency of every move made so far
+  synchronized Histogram moveLatency() {
+    Histogram all = new Histogram();
+    all.add(closedLatency);
+    for (Histogram latency : openLatencies) {
+      synchronized (latency) {
+        all.add(latency);
+      }
+    }
+    return all;
+  }
+
+  // returns the answer to the given request, made outside of any connection
+  String handle(String line) {
+    return this.handle(line, unconnectedLatency);
+  }
+
+  // returns the answer to the given request, recording the latency of a move in the
+  // given histogram of its connection
+  String handle(String line, Histogram latency) {
+    String[] parts = line.trim().split(" +");
+    long now = System.nanoTime();
+    try {
+      switch (parts[0]) {
+        case "NEW":
+          return this.newGame(parts, now);
+        case "MOVE": {
+          GameSession session = store.get(this.number(parts, 1), now);
+          session.move(this.smallNumber(parts, 2), now);
+          long nanos = System.nanoTime() - now;
+          synchronized (latency) {
+            latency.record(nanos);
+          }
+          return "OK " + session.status();
+        }
+        case "STATE": {
+          GameSession session = store.get(this.number(parts, 1), now);
+          return "OK " + session.status()
+              + String.format(Locale.ROOT, " %.3f", session.stopwatch(now));
+        }
+        case "BOARD": {
+          GameSession session = store.get(this.number(parts, 1), now);
+          StringBuilder cells = new StringBuilder("OK");
+          synchronized (session) {
+            for (int index = 0; index < session.game.grid.colors.length; index++) {
+              cells.append(' ').append(session.game.grid.colorAt(index));
+            }
+          }
+          return cells.toString();
+        }
+        case "END":
+          store.remove(this.number(parts, 1));
+          return "OK";
+        case "STATS":
+          return "OK " + store.size() + " " + this.latencies();
+        default:
+          return "ERR Unknown request " + parts[0];
+      }
+    }
+    catch (IllegalArgumentException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+
+  // starts a new session from the given request
+  String newGame(String[] parts, long now) {
+    int boardSize = this.smallNumber(parts, 1);
+    int numOfColors = this.smallNumber(parts, 2);
+    if (boardSize < 2 || boardSize > MAX_BOARD_SIZE) {
+      throw new IllegalArgumentException("Board size must be 2 to " + MAX_BOARD_SIZE);
+    }
+    if (numOfColors < 2 || numOfColors > MAX_COLORS) {
+      throw new IllegalArgumentException("Colors must be 2 to " + MAX_COLORS);
+    }
+    long seed = parts.length > 3 ? this.number(parts, 3)
+        : ThreadLocalRandom.current().nextLong();
+    GameSession session =
+        new GameSession(nextId.getAndIncrement(), seed, boardSize, numOfColors, now);
+    store.add(session);
+    return "OK " + session.id + " " + session.status();
+  }
+
+  // returns the number at the given position of the request
+  long number(String[] parts, int position) {
+    if (position >= parts.length) {
+      throw new IllegalArgumentException(parts[0] + " is missing an argument");
+    }
+    try {
+      return Long.parseLong(parts[position]);
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a number: " + parts[position]);
+    }
+  }
+
+  // returns the number at the given position of the request, which must fit in an int
+  int smallNumber(String[] parts, int position) {
+    long number = this.number(parts, position);
+    if (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Out of range: " + parts[position]);
+    }
+    return (int) number;
+  }
+
+  // returns the number of moves made and the p50, p99, and largest of their latencies
+  String latencies() {
+    Histogram moveLatency = this.moveLatency();
+    return moveLatency.count + " " + moveLatency.percentile(0.5) + " "
+        + moveLatency.percentile(0.99) + " " + moveLatency.max;
+  }
+
+  // Serves games until it is stopped. Run it with
+  //   java FloodItServer [port] [sessions] [idle seconds]
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+    int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+    long idle = args.length > 2 ? Long.parseLong(args[2]) : 300;
+    FloodItServer server =
+        new FloodItServer(new SessionStore(capacity, TimeUnit.SECONDS.toNanos(idle)));
+    System.out.println("Serving Flood-It on port " + server.start(port));
+  }
+}
+
+// Plays games against a server from many connections at once, each playing its games
+// one after the other with random legal moves, and measures how long each move takes
+// from the client's side
+class LoadGenerator {
+  int port;
+  // the number of connections, and the games each one plays
+  int clients;
+  int gamesPerClient;
+  int boardSize;
+  int numOfColors;
+  // the round trip of every move, in nanoseconds
+  Histogram latency;
+  // the number of games finished, and of answers that were not OK
+  long games;
+  long errors;
+
+  LoadGenerator(int port, int clients, int gamesPerClient, int boardSize,
+      int numOfColors) {
+    this.port = port;
+    this.clients = clients;
+    this.gamesPerClient = gamesPerClient;
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+    this.latency = new Histogram();
+  }
+
+  // plays every game and waits for them to finish
+  void run() throws InterruptedException {
+    ExecutorService pool = FloodItServer.threadPerTask();
+    for (int c = 0; c < clients; c++) {
+      long seed = c;
+      pool.execute(() -> this.play(seed));
+    }
+    pool.shutdown();
+    pool.awaitTermination(10, TimeUnit.MINUTES);
+  }
+
+  // plays the games of one connection
+  void play(long seed) {
+    Random rand = new Random(seed);
+    Histogram mine = new Histogram();
+    long finished = 0;
+    long failed = 0;
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true,
+            StandardCharsets.UTF_8)) {
+      for (int g = 0; g < gamesPerClient; g++) {
+        out.println("NEW " + boardSize + " " + numOfColors);
+        String[] answer = in.readLine().split(" ");
+        long id = Long.parseLong(answer[1]);
+        int floodColor = Integer.parseInt(answer[3]);
+        String state = answer[4];
+        while (state.equals("stagnant")) {
+          int colorIndex = (floodColor + 1 + rand.nextInt(numOfColors - 1)) % numOfColors;
+          long start = System.nanoTime();
+          out.println("MOVE " + id + " " + colorIndex);
+          answer = in.readLine().split(" ");
+          mine.record(System.nanoTime() - start);
+          if (!answer[0].equals("OK")) {
+            failed++;
+            break;
+          }
+          floodColor = Integer.parseInt(answer[2]);
+          state = answer[3];
+        }
+        out.println("END " + id);
+        in.readLine();
+        finished++;
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      failed++;
+    }
+    this.add(mine, finished, failed);
+  }
+
+  // adds the results of one connection
+  synchronized void add(Histogram moves, long finished, long failed) {
+    latency.add(moves);
+    this.games += finished;
+    this.errors += failed;
+  }
+
+  // Plays games against a server and prints the move latency. Run it with
+  //   java LoadGenerator [port] [connections] [games each] [board size] [colors]
+  // or with port 0 to start a server in the same JVM first
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int games = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    int boardSize = args.length > 3 ? Integer.parseInt(args[3]) : 14;
+    int numOfColors = args.length > 4 ? Integer.parseInt(args[4]) : 6;
+    FloodItServer server = null;
+    if (port == 0) {
+      server = new FloodItServer(new SessionStore(100000, TimeUnit.MINUTES.toNanos(5)));
+      port = server.start(0);
+    }
+    LoadGenerator load = new LoadGenerator(port, clients, games, boardSize, numOfColors);
+    long start = System.nanoTime();
+    load.run();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format(
+        "%d connections, %d games, %d moves in %.2fs (%.0f moves/s), %d errors: "
+            + "move p50 %.0fus, p99 %.0fus, max %.0fus",
+        clients, load.games, load.latency.count, seconds, load.latency.count / seconds,
+        load.errors, load.latency.percentile(0.5) / 1000.0,
+        load.latency.percentile(0.99) / 1000.0, load.latency.max / 1000.0));
+    if (server != null) {
+      server.close();
+    }
+  }
+}
+
+class ExamplesFloodItServer {
+
+  // testing GameSession
+  void testGameSession(Tester t) {
+    GameSession session = new GameSession(1, 10, 2, 2, 0);
+    t.checkExpect(session.game.grid.colors, new byte[] {0, 1, 0, 0});
+    t.checkExpect(session.status(), "2 0 stagnant");
+    t.checkInexact(session.stopwatch(1500000000L), 1.5, 0.001);
+    session.move(1, 2000000000L);
+    t.checkExpect(session.status(), "1 1 won");
+    // only the store marks a session as used
+    t.checkExpect(session.lastUsed, 0L);
+    // the time stops once the game is won
+    t.checkInexact(session.stopwatch(2500000000L), 2.0, 0.001);
+    GameSession lost = new GameSession(2, 10, 4, 3, 0);
+    lost.game.turnsLeft = 1;
+    lost.move((lost.game.floodColorIndex + 1) % 3, 3000000000L);
+    t.checkExpect(lost.gameState, "lost");
+    t.checkInexact(lost.stopwatch(9000000000L), 3.0, 0.001);
+    t.checkException(new IllegalArgumentException("Cannot flood with color 0"),
+        session, "move", 0, 0L);
+  }
+
+  // testing SessionStore
+  void testSessionStore(Tester t) {
+    SessionStore store = new SessionStore(3, 100);
+    for (long id = 1; id <= 3; id++) {
+      store.add(new GameSession(id, id, 4, 3, id));
+    }
+    // using 1 makes 2 the least recently used
+    store.get(1, 10);
+    store.add(new GameSession(4, 4, 4, 3, 20));
+    t.checkExpect(store.size(), 3);
+    t.checkExpect(store.capacityEvictions, 1L);
+    t.checkExpect(store.sessions.containsKey(2L), false);
+    t.checkException(new IllegalArgumentException("No session 2"), store, "get", 2L, 30L);
+    // 3 was last used at 3, 1 at 10, and 4 at 20
+    t.checkExpect(store.evictIdle(105), 1);
+    t.checkExpect(store.sessions.containsKey(3L), false);
+    t.checkExpect(store.evictIdle(115), 1);
+    t.checkExpect(store.evictIdle(115), 0);
+    t.checkExpect(store.idleEvictions, 2L);
+    store.remove(4);
+    t.checkExpect(store.size(), 0);
+    t.checkException(new IllegalArgumentException("The store must hold at least one session"),
+        this, "makeStore", 0);
+  }
+
+  // returns a store of the given capacity
+  SessionStore makeStore(int capacity) {
+    return new SessionStore(capacity, 100);
+  }
+
+  // testing the protocol, without a socket
+  void testHandle(Tester t) {
+    FloodItServer server = new FloodItServer(new SessionStore(10, Long.MAX_VALUE));
+    t.checkExpect(server.handle("NEW 2 2 10"), "OK 1 2 0 stagnant");
+    t.checkExpect(server.handle("BOARD 1"), "OK 0 1 0 0");
+    t.checkExpect(server.handle("MOVE 1 0"), "ERR Cannot flood with color 0");
+    t.checkExpect(server.handle("MOVE 1 1"), "OK 1 1 won");
+    t.checkExpect(server.handle("STATE 1").startsWith("OK 1 1 won "), true);
+    t.checkExpect(server.moveLatency().count, 1L);
+    t.checkExpect(server.handle("END 1"), "OK");
+    t.checkExpect(server.handle("STATE 1"), "ERR No session 1");
+    t.checkExpect(server.handle("NEW 2 2").startsWith("OK 2 2 "), true);
+    t.checkExpect(server.handle("NEW 1 2"), "ERR Board size must be 2 to 100");
+    t.checkExpect(server.handle("NEW 4 17"), "ERR Colors must be 2 to 16");
+    t.checkExpect(server.handle("NEW 4"), "ERR NEW is missing an argument");
+    t.checkExpect(server.handle("MOVE x 1"), "ERR Not a number: x");
+    t.checkExpect(server.handle("JUMP"), "ERR Unknown request JUMP");
+    // numbers too big for an int are not cut down to one that is in range
+    t.checkExpect(server.handle("NEW 2 2 10").startsWith("OK 3 2 0 "), true);
+    t.checkExpect(server.handle("MOVE 3 4294967297"), "ERR Out of range: 4294967297");
+    t.checkExpect(server.handle("STATE 3").startsWith("OK 2 0 stagnant "), true);
+    t.checkExpect(server.handle("NEW 4294967298 2"), "ERR Out of range: 4294967298");
+    t.checkExpect(server.handle("NEW 4 -4294967294"), "ERR Out of range: -4294967294");
+  }
+
+  // testing STATS
+  void testStats(Tester t) {
+    FloodItServer server = new FloodItServer(new SessionStore(10, Long.MAX_VALUE));
+    t.checkExpect(server.handle("STATS"), "OK 0 0 0 0 0");
+    server.handle("NEW 2 2 10");
+    server.handle("NEW 4 3 10");
+    server.handle("MOVE 1 1");
+    String[] stats = server.handle("STATS").split(" ");
+    t.checkExpect(stats[0], "OK");
+    t.checkExpect(stats[1], "2");
+    t.checkExpect(stats[2], "1");
+    t.checkExpect(Long.parseLong(stats[5]), server.moveLatency().max);
+    t.checkExpect(Long.parseLong(stats[3]) <= Long.parseLong(stats[5]), true);
+
+    // the moves of each connection, open or closed, are added up
+    Histogram open = server.connect();
+    Histogram closed = server.connect();
+    int floodColor = Integer.parseInt(server.handle("STATE 2").split(" ")[2]);
+    t.checkExpect(server.handle("MOVE 2 " + (floodColor + 1) % 3, open).startsWith("OK "),
+        true);
+    t.checkExpect(server.handle("MOVE 2 " + (floodColor + 2) % 3, closed).startsWith("OK "),
+        true);
+    server.disconnect(closed);
+    t.checkExpect(open.count, 1L);
+    t.checkExpect(server.openLatencies.contains(closed), false);
+    t.checkExpect(server.handle("STATS").split(" ")[2], "3");
+  }
+
+  // testing the server under the load of many connections
+  void testLoad(Tester t) {
+    FloodItServer server = new FloodItServer(new SessionStore(1000, Long.MAX_VALUE));
+    try {
+      int port = server.start(0);
+      LoadGenerator load = new LoadGenerator(port, 50, 4, 8, 4);
+      load.run();
+      t.checkExpect(load.errors, 0L);
+      t.checkExpect(load.games, 200L);
+      t.checkExpect(load.latency.count > 200, true);
+      t.checkExpect(load.latency.percentile(0.99) > 0, true);
+      t.checkExpect(server.moveLatency().count, load.latency.count);
+      // every session was ended
+      t.checkExpect(server.store.size(), 0);
+      server.close();
+    }
+    catch (IOException | InterruptedException e) {
+      t.checkExpect(e, null);
+    }
+  }
+
+  // testing that closing the server closes the connections still open
+  void testClose(Tester t) {
+    FloodItServer server = new FloodItServer(new SessionStore(10, Long.MAX_VALUE));
+    try {
+      int port = server.start(0);
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+          BufferedReader in = new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+          PrintWriter out = new PrintWriter(socket.getOutputStream(), true,
+              StandardCharsets.UTF_8)) {
+        out.println("NEW 2 2 10");
+        t.checkExpect(in.readLine(), "OK 1 2 0 stagnant");
+        t.checkExpect(server.clients.size(), 1);
+        server.close();
+        // the server's end of the connection is closed, waking the thread reading it
+        t.checkExpect(in.readLine(), null);
+        server.connections.awaitTermination(10, TimeUnit.SECONDS);
+        t.checkExpect(server.connections.isTerminated(), true);
+        t.checkExpect(server.clients.size(), 0);
+      }
+    }
+    catch (IOException | InterruptedException e) {
+      t.checkExpect(e, null);
+    }
+  }
+}
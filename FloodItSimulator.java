@@ -0,0 +1,244 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import tester.Tester;
+
+// A way of picking the next move of a game; used by many threads at once, so it must not
+// keep state between calls
+interface IMovePolicy {
+  // returns the palette index to flood with next, which must be a legal move
+  public int pickMove(FloodItGame game, Random rand);
+}
+
+// Always floods with the smallest palette index of a region bordering the flood
+class FirstFrontierPolicy implements IMovePolicy {
+  public int pickMove(FloodItGame game, Random rand) {
+    return game.regions.componentColor[game.regions.frontierRegion()];
+  }
+}
+
+// Floods with the color of a random region bordering the flood
+class RandomFrontierPolicy implements IMovePolicy {
+  public int pickMove(FloodItGame game, Random rand) {
+    int[] frontierSize = game.regions.frontierSize;
+    int total = 0;
+    for (int size : frontierSize) {
+      total += size;
+    }
+    int pick = rand.nextInt(total);
+    int colorIndex = 0;
+    while (pick >= frontierSize[colorIndex]) {
+      pick -= frontierSize[colorIndex++];
+    }
+    return colorIndex;
+  }
+}
+
+// The combined results of a batch of simulated games
+class SimulationResults {
+  // the number of games played
+  int games;
+  // the number of games won
+  int wins;
+  // the total number of moves made
+  long moves;
+  // the total nanoseconds spent playing, summed over the threads
+  long nanos;
+
+  // adds the results of one game
+  void add(boolean won, int gameMoves, long gameNanos) {
+    this.games++;
+    this.wins += won ? 1 : 0;
+    this.moves += gameMoves;
+    this.nanos += gameNanos;
+  }
+
+  // adds the results of another batch to these ones
+  SimulationResults merge(SimulationResults other) {
+    this.games += other.games;
+    this.wins += other.wins;
+    this.moves += other.moves;
+    this.nanos += other.nanos;
+    return this;
+  }
+
+  // returns the fraction of the games that were won
+  double winRate() {
+    return games == 0 ? 0 : (double) wins / games;
+  }
+
+  // returns the average number of moves made in a game
+  double averageMoves() {
+    return games == 0 ? 0 : (double) moves / games;
+  }
+
+  // returns the average microseconds a game took on one thread
+  double averageMicros() {
+    return games == 0 ? 0 : nanos / 1000.0 / games;
+  }
+}
+
+// Plays the games of a range of seeds, splitting the range in half until it is small
+// enough for one thread. ForkJoinTask is Serializable, but a task is never written out.
+@SuppressWarnings("serial")
+class SimulationTask extends RecursiveTask<SimulationResults> {
+  FloodItSimulator simulator;
+  // the first seed, and one past the last seed, to play
+  long from;
+  long to;
+
+  SimulationTask(FloodItSimulator simulator, long from, long to) {
+    this.simulator = simulator;
+    this.from = from;
+    this.to = to;
+  }
+
+  protected SimulationResults compute() {
+    if (to - from <= simulator.gamesPerTask) {
+      SimulationResults results = new SimulationResults();
+      for (long seed = from; seed < to; seed++) {
+        simulator.play(seed, results);
+      }
+      return results;
+    }
+    long middle = from + (to - from) / 2;
+    SimulationTask left = new SimulationTask(simulator, from, middle);
+    left.fork();
+    SimulationResults right = new SimulationTask(simulator, middle, to).compute();
+    return left.join().merge(right);
+  }
+}
+
+// Plays many seeded games at once on a fork-join pool, with the board of each game made
+// exactly as a FloodItWorld made with new Random(seed) would make it, and collects how
+// often the policy wins and how many moves it needs
+class FloodItSimulator {
+  // The number of cells in each row or column
+  int boardSize;
+  // Number of colors in the game
+  int numOfColors;
+  // picks the moves of every game
+  IMovePolicy policy;
+  // the number of games one task plays before it is worth splitting
+  int gamesPerTask;
+
+  FloodItSimulator(int boardSize, int numOfColors, IMovePolicy policy) {
+    this.boardSize = boardSize;
+    this.numOfColors = numOfColors;
+    this.policy = policy;
+    this.gamesPerTask = 16;
+  }
+
+  // returns the game a FloodItWorld seeded with the given seed would start with
+  FloodItGame makeGame(long seed) {
+    return FloodItWorld.seededGame(seed, boardSize, numOfColors);
+  }
+
+  // plays the game of the given seed to the end and adds its results
+  void play(long seed, SimulationResults results) {
+    long start = System.nanoTime();
+    FloodItGame game = this.makeGame(seed);
+    // the policy gets its own random so that a seed always plays the same game
+    Random rand = new Random(seed);
+    int moves = 0;
+    while (!game.isOver()) {
+      game.applyMove(policy.pickMove(game, rand));
+      moves++;
+    }
+    results.add(game.isWon(), moves, System.nanoTime() - start);
+  }
+
+  // plays the games of seeds from the first seed up to, but not including, the last,
+  // on the given pool
+  SimulationResults run(long from, long to, ForkJoinPool pool) {
+    return pool.invoke(new SimulationTask(this, from, to));
+  }
+
+  // plays the games of seeds from the first seed up to, but not including, the last,
+  // using every core
+  SimulationResults run(long from, long to) {
+    return this.run(from, to, ForkJoinPool.commonPool());
+  }
+
+  // Plays a batch of games and prints the results. Run it with
+  //   java FloodItSimulator [games] [board size] [colors]
+  public static void main(String[] args) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    int boardSize = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+    int numOfColors = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+    FloodItSimulator simulator =
+        new FloodItSimulator(boardSize, numOfColors, new RandomFrontierPolicy());
+    long start = System.nanoTime();
+    SimulationResults results = simulator.run(0, games);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format(
+        "%d games on %d threads in %.2fs (%.0f games/s): won %.1f%%, %.1f moves, %.1fus/game",
+        results.games, ForkJoinPool.commonPool().getParallelism(), seconds,
+        results.games / seconds, results.winRate() * 100, results.averageMoves(),
+        results.averageMicros()));
+  }
+}
+
+class ExamplesFloodItSimulator {
+
+  // testing makeGame
+  void testMakeGame(Tester t) {
+    FloodItSimulator simulator = new FloodItSimulator(2, 2, new FirstFrontierPolicy());
+    // the same board as the world seeded with 10
+    FloodItWorld world = new FloodItWorld(new Random(10), 2, 2, 60);
+    world.generateColors();
+    world.generateBoard();
+    t.checkExpect(simulator.makeGame(10).grid.colors, world.game.grid.colors);
+    t.checkExpect(simulator.makeGame(10).grid.colors, new byte[] {0, 1, 0, 0});
+  }
+
+  // testing play
+  void testPlay(Tester t) {
+    FloodItSimulator simulator = new FloodItSimulator(2, 2, new FirstFrontierPolicy());
+    SimulationResults results = new SimulationResults();
+    simulator.play(10, results);
+    t.checkExpect(results.games, 1);
+    t.checkExpect(results.wins, 1);
+    t.checkExpect(results.moves, 1L);
+  }
+
+  // testing the policies
+  void testPolicies(Tester t) {
+    FloodItGame game = new FloodItGame(6, 4, 3);
+    int first = new FirstFrontierPolicy().pickMove(game, new Random(1));
+    t.checkExpect(first, game.regions.componentColor[game.regions.frontierRegion()]);
+    for (int c = 0; c < first; c++) {
+      t.checkExpect(game.regions.frontierSize[c], 0);
+    }
+    t.checkExpect(game.canMove(first), true);
+    t.checkExpect(game.canMove(new RandomFrontierPolicy().pickMove(game, new Random(1))), true);
+  }
+
+  // testing SimulationResults
+  void testSimulationResults(Tester t) {
+    SimulationResults a = new SimulationResults();
+    t.checkExpect(a.winRate(), 0.0);
+    a.add(true, 10, 2000);
+    a.add(false, 20, 4000);
+    SimulationResults b = new SimulationResults();
+    b.add(true, 30, 6000);
+    a.merge(b);
+    t.checkExpect(a.games, 3);
+    t.checkInexact(a.winRate(), 2.0 / 3, 0.001);
+    t.checkInexact(a.averageMoves(), 20.0, 0.001);
+    t.checkInexact(a.averageMicros(), 4.0, 0.001);
+  }
+
+  // testing run
+  void testRun(Tester t) {
+    FloodItSimulator simulator = new FloodItSimulator(14, 6, new RandomFrontierPolicy());
+    // the results do not depend on how many threads play the games
+    SimulationResults parallel = simulator.run(0, 200);
+    ForkJoinPool pool = new ForkJoinPool(1);
+    SimulationResults single = simulator.run(0, 200, pool);
+    pool.shutdown();
+    t.checkExpect(parallel.games, 200);
+    t.checkExpect(parallel.wins, single.wins);
+    t.checkExpect(parallel.moves, single.moves);
+  }
+}
@@ -0,0 +1,295 @@
+import java.util.*;
+import tester.Tester;
+
+// Always floods with the color that absorbs the most cells
+class GreedyPolicy implements IMovePolicy {
+  public int pickMove(FloodItGame game, Random rand) {
+    return new FloodItSolver(game.regions, game.numOfColors).greedyMove();
+  }
+}
+
+class ExamplesFloodItSolver {
+
+  // returns the fewest moves that win from the given position, by trying every sequence
+  // of moves up to the given limit
+  int bruteForce(FloodItSolver solver, long[] position, int depth, int limit) {
+    if (solver.isSolved(position)) {
+      return depth;
+    }
+    if (depth == limit) {
+      return Integer.MAX_VALUE;
+    }
+    int best = Integer.MAX_VALUE;
+    for (int c = 0; c < solver.numOfColors; c++) {
+      long[] next = Arrays.copyOf(position, position.length);
+      if (solver.expand(next, c) > 0) {
+        best = Math.min(best, this.bruteForce(solver, next, depth + 1, limit));
+      }
+    }
+    return best;
+  }
+
+  // plays the given moves on the given game and determines if they won it
+  boolean wins(FloodItGame game, int[] moves) {
+    game.turnsLeft = moves.length;
+    for (int move : moves) {
+      game.applyMove(move);
+    }
+    return game.isWon();
+  }
+
+  // testing expand and gains
+  void testExpand(Tester t) {
+    FloodItGame game = new FloodItGame(2, 2, 10);
+    FloodItSolver solver = new FloodItSolver(game.regions, 2);
+    long[] position = solver.start();
+    t.checkExpect(solver.size(position), 1);
+    int[] gain = new int[2];
+    solver.gains(position, gain);
+    t.checkExpect(gain, new int[] {3, 0});
+    t.checkExpect(solver.expand(position, 1), 0);
+    t.checkExpect(solver.expand(position, 0), 3);
+    t.checkExpect(solver.isSolved(position), true);
+    t.checkExpect(solver.size(position), 4);
+
+    // a solver made partway through a game starts from the regions flooded so far
+    game.applyMove(0);
+    FloodItSolver later = new FloodItSolver(game.regions, 2);
+    t.checkExpect(later.isSolved(later.start()), true);
+    t.checkExpect(later.greedyMove(), -1);
+  }
+
+  // testing lowerBound
+  void testLowerBound(Tester t) {
+    FloodItGame game = new FloodItGame(2, 2, 10);
+    FloodItSolver solver = new FloodItSolver(game.regions, 2);
+    t.checkExpect(solver.lowerBound(solver.start()), 1);
+
+    // never more than the moves actually needed
+    for (int seed = 0; seed < 20; seed++) {
+      FloodItSolver small = new FloodItSolver(new FloodItGame(5, 4, seed).regions, 4);
+      int best = this.bruteForce(small, small.start(), 0, 12);
+      t.checkExpect(small.lowerBound(small.start()) <= best, true);
+    }
+
+    // the walk by bitsets, and the walk from the components next to a position, find
+    // the same bound as the walk from the position
+    Random rand = new Random(5);
+    for (int seed = 0; seed < 20; seed++) {
+      FloodItSolver bits = new FloodItSolver(new FloodItGame(14, 6, seed).regions, 6);
+      bits.makeBitsets();
+      long[] position = bits.start();
+      int[] frontier = new int[bits.components];
+      while (!bits.isSolved(position)) {
+        int size = bits.frontier(position, frontier);
+        int bound = bits.lowerBound(position);
+        t.checkExpect(bits.lowerBound(frontier, size, position), bound);
+        t.checkExpect(bits.lowerBoundBits(frontier, size, position), bound);
+        bits.expand(position, bits.componentColor[frontier[rand.nextInt(size)]]);
+      }
+      t.checkExpect(bits.lowerBoundBits(frontier, 0, position), 0);
+    }
+  }
+
+  // testing frontier and gains
+  void testFrontier(Tester t) {
+    FloodItGame game = new FloodItGame(6, 4, 3);
+    FloodItSolver solver = new FloodItSolver(game.regions, 4);
+    long[] position = solver.start();
+    int[] frontier = new int[solver.components];
+    int size = solver.frontier(position, frontier);
+    t.checkExpect(size, game.regions.frontierSize[0] + game.regions.frontierSize[1]
+        + game.regions.frontierSize[2] + game.regions.frontierSize[3]);
+    int[] gain = new int[4];
+    int[] fromFrontier = new int[4];
+    solver.gains(position, gain);
+    solver.gains(frontier, size, fromFrontier);
+    t.checkExpect(fromFrontier, gain);
+  }
+
+  // testing greedyMove and GreedyPolicy
+  void testGreedyMove(Tester t) {
+    FloodItGame game = new FloodItGame(6, 4, 3);
+    FloodItSolver solver = new FloodItSolver(game.regions, 4);
+    int move = solver.greedyMove();
+    int[] gain = new int[4];
+    solver.gains(solver.start(), gain);
+    for (int c = 0; c < 4; c++) {
+      t.checkExpect(gain[move] >= gain[c], true);
+    }
+    t.checkExpect(new GreedyPolicy().pickMove(game, new Random(1)), move);
+
+    // greedy play always finishes the board
+    FloodItGame played = new FloodItGame(14, 6, 5);
+    played.turnsLeft = 1000;
+    while (!played.isWon()) {
+      played.applyMove(new GreedyPolicy().pickMove(played, new Random(1)));
+    }
+    t.checkExpect(played.isWon(), true);
+    t.checkExpect(new FloodItSolver(played.regions, 6).greedyMove(), -1);
+  }
+
+  // testing solveExact
+  void testSolveExact(Tester t) {
+    // matches trying every sequence of moves on small boards
+    for (int seed = 0; seed < 20; seed++) {
+      FloodItGame game = new FloodItGame(5, 4, seed);
+      FloodItSolver solver = new FloodItSolver(game.regions, 4);
+      int best = this.bruteForce(solver, solver.start(), 0, 12);
+      int[] moves = solver.solveExact();
+      t.checkExpect(moves.length, best);
+      t.checkExpect(this.wins(game, moves), true);
+    }
+
+    // a board where the move after a color is cleared must not be skipped
+    FloodItGame cleared = new FloodItGame(6, 4, 4);
+    FloodItSolver clearedSolver = new FloodItSolver(cleared.regions, 4);
+    t.checkExpect(clearedSolver.solveExact().length, 6);
+    t.checkExpect(this.bruteForce(clearedSolver, clearedSolver.start(), 0, 6), 6);
+
+    // a table too small to help much finds the same number of moves
+    FloodItSolver small = new FloodItSolver(new FloodItGame(14, 6, 3).regions, 6);
+    small.tableSize = 4;
+    t.checkExpect(small.solveExact().length, 18);
+    t.checkExpect(small.table.size, 4);
+    t.checkExpect(small.table.evictions > 0, true);
+
+    // full size boards
+    for (int seed = 2; seed < 5; seed++) {
+      FloodItGame game = new FloodItGame(14, 6, seed);
+      FloodItSolver solver = new FloodItSolver(game.regions, 6);
+      int[] moves = solver.solveExact();
+      t.checkExpect(moves.length <= solver.solveBeam(16).length, true);
+      t.checkExpect(this.wins(game, moves), true);
+    }
+
+    // the walk from the edges of each position, without bitsets, searches the same way
+    FloodItSolver withBits = new FloodItSolver(new FloodItGame(14, 6, 3).regions, 6);
+    FloodItSolver withoutBits = new FloodItSolver(new FloodItGame(14, 6, 3).regions, 6);
+    withoutBits.maxBitsetComponents = 0;
+    t.checkExpect(withoutBits.solveExact(), withBits.solveExact());
+    t.checkExpect(withoutBits.neighbourBits, null);
+    t.checkExpect(withoutBits.nodes, withBits.nodes);
+
+    // more colors than there are bits in a long
+    for (int seed = 0; seed < 20; seed++) {
+      Random colors = new Random(seed);
+      FloodBoard grid = new FloodBoard(4);
+      for (int index = 0; index < 16; index++) {
+        grid.setColor(index, new int[] {0, 1, 64, 65}[colors.nextInt(4)]);
+      }
+      FloodItGame game = new FloodItGame(grid, 70, 20);
+      FloodItSolver solver = new FloodItSolver(game.regions, 70);
+      int[] moves = solver.solveExact();
+      t.checkExpect(moves.length, this.bruteForce(solver, solver.start(), 0, 12));
+      t.checkExpect(this.wins(game, moves), true);
+    }
+
+    // giving up
+    FloodItSolver limited = new FloodItSolver(new FloodItGame(14, 6, 2).regions, 6);
+    limited.maxNodes = 10;
+    t.checkExpect(limited.solveExact(), null);
+  }
+
+  // testing movesNeeded
+  void testMovesNeeded(Tester t) {
+    FloodItSolver solver = new FloodItSolver(new FloodItGame(14, 6, 3).regions, 6);
+    t.checkExpect(solver.movesNeeded(16), 18);
+    // falls back on the beam search
+    solver.maxNodes = 10;
+    t.checkExpect(solver.movesNeeded(16), 19);
+  }
+
+  // testing TranspositionTable
+  void testTranspositionTable(Tester t) {
+    TranspositionTable table = new TranspositionTable(8);
+    t.checkExpect(table.keys.length, 8);
+    t.checkExpect(table.get(5L, -1), -1);
+    table.put(5L, 3);
+    table.put(-7L, 4);
+    t.checkExpect(table.get(5L, -1), 3);
+    t.checkExpect(table.get(-7L, -1), 4);
+    table.put(5L, 6);
+    t.checkExpect(table.get(5L, -1), 6);
+    t.checkExpect(table.size, 2);
+    t.checkExpect(table.hits, 3L);
+    t.checkExpect(table.misses, 1L);
+
+    // a full bucket evicts the entry used least recently
+    TranspositionTable bucket = new TranspositionTable(4);
+    for (long key = 1; key <= 4; key++) {
+      bucket.put(key, (int) key);
+    }
+    t.checkExpect(bucket.get(1L, -1), 1);
+    bucket.put(5L, 5);
+    t.checkExpect(bucket.size, 4);
+    t.checkExpect(bucket.evictions, 1L);
+    t.checkExpect(bucket.get(2L, -1), -1);
+    t.checkExpect(bucket.get(1L, -1), 1);
+    t.checkExpect(bucket.get(5L, -1), 5);
+
+    bucket.clear();
+    t.checkExpect(bucket.size, 0);
+    t.checkExpect(bucket.get(1L, -1), -1);
+  }
+
+  // testing solveBeam
+  void testSolveBeam(Tester t) {
+    FloodItGame game = new FloodItGame(100, 6, 1);
+    FloodItSolver solver = new FloodItSolver(game.regions, 6);
+    int[] moves = solver.solveBeam(4);
+    long made = solver.nodes;
+
+    // with a budget, the search gives up once it has made more positions than that
+    t.checkExpect(solver.solveBeam(4, made), moves);
+    t.checkExpect(solver.solveBeam(4, 1000), null);
+    t.checkExpect(solver.nodes <= 1000 + 6, true);
+    t.checkExpect(this.wins(game, moves), true);
+  }
+
+  // testing the hint key
+  void testHint(Tester t) {
+    FloodItWorld world = new FloodItWorld(new Random(7), 14, 6, 60);
+    world.resetBoard();
+    world.makeScene();
+    t.checkExpect(world.hint, -1);
+    world.onKeyEvent("h");
+    int[] beam = new FloodItSolver(world.game.regions, 6)
+        .solveBeam(FloodItWorld.HINT_BEAM_WIDTH);
+    t.checkExpect(world.hint, beam[0]);
+    t.checkExpect(world.game.canMove(world.hint), true);
+    t.checkExpect(world.changes.hud, true);
+
+    // a move or an undo takes the hint away, and none is given while a flood animates
+    world.history.record(new MoveDelta(world.game, world.hint));
+    world.move(world.hint);
+    t.checkExpect(world.hint, -1);
+    world.onKeyEvent("h");
+    t.checkExpect(world.hint, -1);
+    while (world.gameState.equals("flooding")) {
+      world.onTick();
+    }
+    world.onKeyEvent("h");
+    t.checkExpect(world.hint != -1, true);
+    world.undo();
+    t.checkExpect(world.hint, -1);
+
+    // boards whose search would take too long get the greedy move, whatever their size:
+    // a beam search of this one makes tens of thousands of positions of 2000 components
+    FloodItWorld big = new FloodItWorld(new Random(7), 50, 20, 60);
+    big.resetBoard();
+    big.showHint();
+    t.checkExpect(big.hint, new FloodItSolver(big.game.regions, 20).greedyMove());
+    // and the search stops within its budget
+    FloodItSolver bounded = new FloodItSolver(big.game.regions, 20);
+    long budget = FloodItWorld.HINT_MAX_WORK / big.game.regions.components;
+    t.checkExpect(bounded.solveBeam(FloodItWorld.HINT_BEAM_WIDTH, budget), null);
+    t.checkExpect(bounded.nodes <= budget + 20, true);
+    t.checkExpect(bounded.nodes * big.game.regions.components
+        <= FloodItWorld.HINT_MAX_WORK + 20 * big.game.regions.components, true);
+    FloodItWorld huge = new FloodItWorld(new Random(7), 120, 4, 60);
+    huge.resetBoard();
+    huge.showHint();
+    t.checkExpect(huge.hint, new FloodItSolver(huge.game.regions, 4).greedyMove());
+  }
+}
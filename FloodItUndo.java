@@ -0,0 +1,176 @@
+import java.util.*;
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+class ExamplesFloodItUndo {
+
+  // checks that the given game is just like a new game on the given board that made the
+  // given moves
+  void checkSameGame(Tester t, FloodItGame game, FloodBoard start, int[] moves, int count) {
+    FloodItGame fresh = new FloodItGame(start.copy(), game.numOfColors,
+        game.turnsLeft + count);
+    for (int k = 0; k < count; k++) {
+      fresh.applyMove(moves[k]);
+    }
+    RegionGraph a = game.regions;
+    RegionGraph b = fresh.regions;
+    t.checkExpect(game.grid.colors, fresh.grid.colors);
+    t.checkExpect(game.grid.hash, fresh.grid.hash);
+    t.checkExpect(game.floodColorIndex, fresh.floodColorIndex);
+    t.checkExpect(a.hash, b.hash);
+    t.checkExpect(a.regionSize, b.regionSize);
+    t.checkExpect(a.floodedCount, b.floodedCount);
+    t.checkExpect(a.flooded, b.flooded);
+    t.checkExpect(a.onFrontier, b.onFrontier);
+    for (int c = 0; c < game.numOfColors; c++) {
+      // the same regions border the flood, though not always in the same order
+      int[] left = Arrays.copyOf(a.frontier[c], a.frontierSize[c]);
+      int[] right = Arrays.copyOf(b.frontier[c], b.frontierSize[c]);
+      Arrays.sort(left);
+      Arrays.sort(right);
+      t.checkExpect(left, right);
+    }
+  }
+
+  // testing undoMove on one move
+  void testUndoMove(Tester t) {
+    FloodItGame game = new FloodItGame(2, 2, 10);
+    t.checkExpect(game.grid.colors, new byte[] {1, 0, 0, 0});
+    MoveDelta delta = new MoveDelta(game, 0);
+    t.checkExpect(delta.previousColorIndex, 1);
+    t.checkExpect(delta.regionSize, 1);
+    game.applyMove(0);
+    t.checkExpect(game.isWon(), true);
+    t.checkExpect(game.turnsLeft, 1);
+    game.undoMove(delta);
+    t.checkExpect(game.grid.colors, new byte[] {1, 0, 0, 0});
+    t.checkExpect(game.turnsLeft, 2);
+    t.checkExpect(game.floodColorIndex, 1);
+    t.checkExpect(game.regions.regionSize, 1);
+    t.checkExpect(game.regions.frontierSize, new int[] {1, 0});
+    t.checkExpect(game.isWon(), false);
+    // the move can be made again
+    game.applyMove(0);
+    t.checkExpect(game.isWon(), true);
+    t.checkException(new IllegalArgumentException("Can only undo the last move"),
+        game, "undoMove", new MoveDelta(game, 1));
+  }
+
+  // testing that undoing moves, in any order with new moves, gives the same game as
+  // never having made them
+  void testUndoMany(Tester t) {
+    Random rand = new Random(7);
+    for (int seed = 0; seed < 30; seed++) {
+      FloodItGame game = new FloodItGame(12, 3 + seed % 4, (long) seed);
+      FloodBoard start = game.grid.copy();
+      int[] moves = new int[game.turnsLeft];
+      ArrayList<MoveDelta> deltas = new ArrayList<MoveDelta>();
+      while (!game.isOver()) {
+        if (!deltas.isEmpty() && rand.nextInt(3) == 0) {
+          game.undoMove(deltas.remove(deltas.size() - 1));
+          this.checkSameGame(t, game, start, moves, deltas.size());
+        }
+        else {
+          int colorIndex = new RandomFrontierPolicy().pickMove(game, rand);
+          moves[deltas.size()] = colorIndex;
+          deltas.add(new MoveDelta(game, colorIndex));
+          game.applyMove(colorIndex);
+        }
+      }
+      this.checkSameGame(t, game, start, moves, deltas.size());
+      while (!deltas.isEmpty()) {
+        game.undoMove(deltas.remove(deltas.size() - 1));
+      }
+      this.checkSameGame(t, game, start, moves, 0);
+    }
+  }
+
+  // testing MoveHistory
+  void testMoveHistory(Tester t) {
+    FloodItGame game = new FloodItGame(6, 3, 1);
+    MoveHistory history = new MoveHistory();
+    t.checkExpect(history.canUndo(), false);
+    t.checkException(new IllegalArgumentException("No moves to undo"), history, "undo");
+    t.checkException(new IllegalArgumentException("No moves to redo"), history, "redo");
+    MoveDelta a = new MoveDelta(game, 0);
+    MoveDelta b = new MoveDelta(game, 1);
+    history.record(a);
+    history.record(b);
+    t.checkExpect(history.undo(), b);
+    t.checkExpect(history.canRedo(), true);
+    t.checkExpect(history.redo(), b);
+    t.checkExpect(history.canRedo(), false);
+    history.undo();
+    // a new move drops the moves undone
+    history.record(a);
+    t.checkExpect(history.canRedo(), false);
+    t.checkExpect(history.done.size(), 2);
+  }
+
+  // lets the flood of the given world finish
+  void finish(FloodItWorld world) {
+    while (world.gameState.equals("flooding")) {
+      world.onTick();
+    }
+  }
+
+  // testing undo and redo in the world
+  void testWorldUndo(Tester t) {
+    FloodItWorld world = new FloodItWorld(new Random(10), 2, 2, 60);
+    world.resetBoard();
+    t.checkExpect(world.game.grid.colors, new byte[] {0, 1, 0, 0});
+    // nothing to undo or redo yet
+    world.onKeyEvent("z");
+    world.onKeyEvent("y");
+    t.checkExpect(world.game.turnsLeft, 2);
+    world.onMouseClicked(new Posn(60, 20));
+    t.checkExpect(world.gameState, "flooding");
+    // a flood has to finish before it is undone
+    world.onKeyEvent("z");
+    t.checkExpect(world.game.turnsLeft, 1);
+    this.finish(world);
+    t.checkExpect(world.gameState, "won");
+    t.checkExpect(world.log.size, 1);
+
+    world.onKeyEvent("z");
+    t.checkExpect(world.gameState, "stagnant");
+    t.checkExpect(world.game.turnsLeft, 2);
+    t.checkExpect(world.game.grid.colors, new byte[] {0, 1, 0, 0});
+    t.checkExpect(world.board.get(0).get(0).colorIndex(), 0);
+    t.checkExpect(world.floodColor, world.palette.get(0));
+    t.checkExpect(world.changes.board, true);
+    t.checkExpect(world.log.size, 0);
+
+    world.onKeyEvent("y");
+    t.checkExpect(world.gameState, "flooding");
+    t.checkExpect(world.game.turnsLeft, 1);
+    t.checkExpect(world.log.size, 1);
+    this.finish(world);
+    t.checkExpect(world.gameState, "won");
+    t.checkExpect(world.board.get(0).get(0).colorIndex(), 1);
+    t.checkExpect(world.history.canRedo(), false);
+  }
+
+  // testing that the log of a world replays to the game left after undoing moves
+  void testUndoReplay(Tester t) {
+    FloodItWorld world = new FloodItWorld(11L, 10, 5, 60);
+    world.fixedStep = true;
+    world.resetBoard();
+    Random rand = new Random(3);
+    for (int k = 0; k < 12 && world.gameState.equals("stagnant"); k++) {
+      if (k % 3 == 2) {
+        world.onKeyEvent("z");
+      }
+      else {
+        int colorIndex = new RandomFrontierPolicy().pickMove(world.game, rand);
+        world.history.record(new MoveDelta(world.game, colorIndex));
+        world.move(colorIndex);
+        this.finish(world);
+      }
+    }
+    Replay replay = new Replay(MoveLog.decode(world.log.encode()));
+    replay.toEnd();
+    t.checkExpect(replay.game.grid.colors, world.game.grid.colors);
+    t.checkExpect(replay.game.turnsLeft, world.game.turnsLeft);
+  }
+}